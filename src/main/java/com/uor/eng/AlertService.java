@@ -4,16 +4,26 @@ import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 /**
- * Displays alerts for high latency or errors in the application.
+ * Displays alerts for high latency or errors in the application. In headless mode, where there
+ * is no JavaFX toolkit, alerts are written to stderr instead.
  */
 public class AlertService {
   private static final long DEFAULT_THRESHOLD_LATENCY = 2000;
+  private static volatile boolean headless = false;
+
+  public static void setHeadless(boolean headless) {
+    AlertService.headless = headless;
+  }
 
   /**
    * Shows a warning alert if latency is above a default threshold.
    */
   public static void showLatencyAlert(String siteAddress, double latency) {
     if (latency > DEFAULT_THRESHOLD_LATENCY) {
+      if (headless) {
+        System.err.printf("High latency alert: %s exceeded threshold: %.1f ms%n", siteAddress, latency);
+        return;
+      }
       Platform.runLater(() -> {
         Alert alert = new Alert(Alert.AlertType.WARNING);
         alert.setTitle("High Latency Alert");
@@ -29,6 +39,10 @@ public class AlertService {
    * Displays a generic error alert with a title and message.
    */
   public static void showError(String title, String message) {
+    if (headless) {
+      System.err.println(title + ": " + message);
+      return;
+    }
     Platform.runLater(() -> {
       Alert alert = new Alert(Alert.AlertType.ERROR);
       alert.setTitle(title);
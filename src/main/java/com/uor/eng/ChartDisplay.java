@@ -1,84 +1,480 @@
 package com.uor.eng;
 
-import javafx.scene.chart.LineChart;
-import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
-import lombok.Getter;
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.MinMaxPyramid;
+import com.uor.eng.store.SiteMetricsStore;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
- * A chart to display selected metrics (latency, throughput, quality) over time.
+ * A chart of latency, throughput and quality over time, drawn on a {@link Canvas} straight from
+ * a site's {@link SiteMetricsStore}. Each redraw decimates the rows in view to one min/max pair
+ * per pixel column, so the cost depends on the chart's width, not on how many samples it covers,
+ * and a spike shorter than a pixel still shows.
+ *
+ * <p>Zoomed out beyond a few samples per pixel, or back past the oldest row the store still
+ * holds, it draws from the site's {@link MinMaxPyramid} instead, whose buckets carry the same
+ * min/max pairs, so a multi-day view costs about as much as a two-minute one.
+ *
+ * <p>The chart follows the newest sample until the user pans. Scrolling zooms the time axis
+ * around the pointer, dragging pans through the whole stored history, and a double-click goes
+ * back to following the newest {@value #DEFAULT_SPAN_MS}ms.
  */
 public class ChartDisplay {
-  @Getter
-  private final LineChart<Number, Number> chart;
-  private final XYChart.Series<Number, Number> latencySeries;
-  private final XYChart.Series<Number, Number> throughputSeries;
-  private final XYChart.Series<Number, Number> qualitySeries;
+  static final long DEFAULT_SPAN_MS = 120_000;
+  private static final long MIN_SPAN_MS = 5_000;
+  private static final double ZOOM_STEP = 1.25;
+  private static final double RAW_MILLIS_PER_PIXEL = 4000;
+  private static final double HEIGHT = 300;
+  private static final double LEFT = 50;
+  private static final double RIGHT = 10;
+  private static final double TOP = 40;
+  private static final double BOTTOM = 22;
+  private static final int Y_TICKS = 5;
+  private static final int X_TICKS = 4;
+  private static final DateTimeFormatter TIME_FORMAT =
+      DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+  private static final MetricColumn[] SERIES = {
+      MetricColumn.LATENCY, MetricColumn.THROUGHPUT, MetricColumn.CONNECTION_QUALITY};
+  private static final String[] SERIES_NAMES = {"Latency (ms)", "Throughput (KB/s)", "Quality Score (%)"};
+  // Throughput is stored in B/s but shown in KB/s
+  private static final double[] SERIES_SCALES = {1, 1 / 1024.0, 1};
+  private static final Color[] SERIES_COLORS = {
+      Color.rgb(0xe0, 0x5a, 0x2b), Color.rgb(0x2b, 0x7b, 0xe0), Color.rgb(0x3a, 0xa8, 0x4a)};
+
+  private final Pane pane;
+  private final Canvas canvas;
+  private String title = "Network Metrics Over Time";
+  private SiteMetricsStore store;
+  private MinMaxPyramid pyramid;
+
+  private long spanMillis = DEFAULT_SPAN_MS;
+  private long viewEnd;
+  private boolean following = true;
+  private double dragStartX;
+  private long dragStartEnd;
 
-  private int sampleCount = 0;
-  private static final int MAX_DATA_POINTS = 50;
+  // Decimated points per series: pixel x and value, with a NaN x marking a break in the line
+  private double[][] pointX = new double[SERIES.length][0];
+  private double[][] pointValue = new double[SERIES.length][0];
+  private final int[] pointCount = new int[SERIES.length];
+  private double low;
+  private double high;
+
+  // Decimation state of the series being reduced
+  private int series;
+  private long seriesFrom;
+  private double seriesMillisPerPixel;
+  private int points;
+  private long column;
+  private double columnMin;
+  private double columnMax;
+  private long minSeq;
+  private long maxSeq;
+  private long seq;
+  private boolean gap;
+
+  // Buckets read from the pyramid, reused across redraws
+  private long[] bucketStarts = new long[0];
+  private double[] bucketFirst = new double[0];
+  private double[] bucketSecond = new double[0];
 
   public ChartDisplay() {
-    NumberAxis xAxis = new NumberAxis();
-    NumberAxis yAxis = new NumberAxis();
-    xAxis.setLabel("Time (s)");
-    yAxis.setLabel("Values");
-    yAxis.setAutoRanging(true);
+    canvas = new Canvas();
+    pane = new Pane(canvas);
+    // Explicit sizes, so the pane is not sized from the canvas it resizes
+    pane.setMinSize(0, 0);
+    pane.setPrefSize(400, HEIGHT);
+    pane.setStyle("-fx-background-color: #f5f5f5;");
+    canvas.widthProperty().bind(pane.widthProperty());
+    canvas.heightProperty().bind(pane.heightProperty());
+    canvas.widthProperty().addListener((obs, old, width) -> refresh());
+    canvas.heightProperty().addListener((obs, old, height) -> refresh());
 
-    chart = new LineChart<>(xAxis, yAxis);
-    chart.setTitle("Network Metrics Over Time");
-    chart.setCreateSymbols(false);
-    chart.setAnimated(false);
+    canvas.setOnScroll(event -> {
+      event.consume();
+      double factor = event.getDeltaY() > 0 ? 1 / ZOOM_STEP : ZOOM_STEP;
+      zoom(factor, event.getX());
+    });
+    canvas.setOnMousePressed(event -> {
+      dragStartX = event.getX();
+      dragStartEnd = viewEnd;
+    });
+    canvas.setOnMouseDragged(event -> pan(event.getX() - dragStartX));
+    canvas.setOnMouseClicked(event -> {
+      if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+        spanMillis = DEFAULT_SPAN_MS;
+        following = true;
+        refresh();
+      }
+    });
+  }
 
-    // Set a fixed height for the chart
-    chart.setPrefHeight(300);
+  public Node getNode() {
+    return pane;
+  }
 
-    latencySeries = new XYChart.Series<>();
-    throughputSeries = new XYChart.Series<>();
-    qualitySeries = new XYChart.Series<>();
+  /**
+   * Takes effect with the next redraw.
+   */
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  /**
+   * Shows the history in {@code store}, and beyond it or zoomed out the summary in
+   * {@code pyramid}, following the newest sample. Either may be null.
+   */
+  public void show(SiteMetricsStore store, MinMaxPyramid pyramid) {
+    this.store = store;
+    this.pyramid = pyramid;
+    spanMillis = DEFAULT_SPAN_MS;
+    following = true;
+    refresh();
+  }
 
-    latencySeries.setName("Latency (ms)");
-    throughputSeries.setName("Throughput (KB/s)");
-    qualitySeries.setName("Quality Score (%)");
+  /**
+   * Redraws from the store, e.g. after a sample was added to it.
+   */
+  public void refresh() {
+    GraphicsContext gc = canvas.getGraphicsContext2D();
+    double width = canvas.getWidth();
+    double height = canvas.getHeight();
+    gc.clearRect(0, 0, width, height);
+    int plotWidth = (int) (width - LEFT - RIGHT);
+    double plotHeight = height - TOP - BOTTOM;
+    if (plotWidth <= 0 || plotHeight <= 0) {
+      return;
+    }
 
-    chart.getData().addAll(latencySeries, throughputSeries, qualitySeries);
+    drawTitleAndLegend(gc);
+    SiteMetricsStore.SeriesView[] views = new SiteMetricsStore.SeriesView[SERIES.length];
+    int rows = 0;
+    if (store != null) {
+      for (int s = 0; s < SERIES.length; s++) {
+        views[s] = store.view(SERIES[s]);
+      }
+      rows = views[0].size();
+    }
+    long newest = newestTimestamp();
+    if (newest == Long.MIN_VALUE) {
+      gc.setFill(Color.GRAY);
+      gc.setTextAlign(TextAlignment.CENTER);
+      gc.setTextBaseline(VPos.CENTER);
+      gc.fillText("Waiting for samples...", LEFT + plotWidth / 2.0, TOP + plotHeight / 2);
+      return;
+    }
 
-    chart.setStyle("-fx-background-color: #f5f5f5;");
+    if (following) {
+      viewEnd = newest;
+    }
+    long from = viewEnd - spanMillis;
+    double millisPerPixel = (double) spanMillis / plotWidth;
+    // Raw rows while they cover the view and are not much denser than the pixels
+    boolean raw = pyramid == null
+        || (rows > 0 && views[0].getTimestamp(0) <= from && millisPerPixel < RAW_MILLIS_PER_PIXEL);
+    int level = raw ? -1 : pyramid.levelFor(millisPerPixel, from);
+    if (!raw) {
+      int buckets = (int) Math.min(pyramid.getCapacity(), spanMillis / pyramid.getBucketMillis(level) + 8);
+      if (bucketStarts.length < buckets) {
+        bucketStarts = new long[buckets];
+        bucketFirst = new double[buckets];
+        bucketSecond = new double[buckets];
+      }
+    }
 
-    // Enable chart zooming and panning (simple example)
-    chart.setOnScroll(event -> {
-      event.consume();
-      if (event.getDeltaY() > 0) {
-        yAxis.setAutoRanging(false);
-        yAxis.setLowerBound(yAxis.getLowerBound() * 0.9);
-        yAxis.setUpperBound(yAxis.getUpperBound() * 0.9);
+    low = Double.POSITIVE_INFINITY;
+    high = Double.NEGATIVE_INFINITY;
+    for (int s = 0; s < SERIES.length; s++) {
+      beginSeries(s, from, millisPerPixel, plotWidth);
+      if (raw) {
+        decimateRows(views[s], from, viewEnd);
       } else {
-        yAxis.setAutoRanging(false);
-        yAxis.setLowerBound(yAxis.getLowerBound() * 1.1);
-        yAxis.setUpperBound(yAxis.getUpperBound() * 1.1);
+        decimateBuckets(s, level, from, viewEnd);
       }
-    });
+      endSeries();
+    }
+    if (low > high) {
+      low = 0;
+      high = 1;
+    }
+    // Like an auto-ranging axis that keeps zero in range, plus some headroom
+    low = Math.min(0, low);
+    high = high > low ? high + (high - low) * 0.05 : low + 1;
+
+    drawAxes(gc, from, plotWidth, plotHeight);
+    gc.save();
+    gc.beginPath();
+    gc.rect(LEFT, TOP, plotWidth, plotHeight);
+    gc.clip();
+    gc.setLineWidth(1.5);
+    for (int s = 0; s < SERIES.length; s++) {
+      drawSeries(gc, s, plotHeight);
+    }
+    gc.restore();
+
+    if (!following) {
+      gc.setFill(Color.GRAY);
+      gc.setTextAlign(TextAlignment.RIGHT);
+      gc.setTextBaseline(VPos.TOP);
+      gc.fillText("Paused, double-click for live", LEFT + plotWidth - 4, TOP + 4);
+    }
+  }
+
+  /**
+   * Reduces the rows between {@code from} and {@code to}, plus one on either side so the line
+   * runs to the edges.
+   */
+  private void decimateRows(SiteMetricsStore.SeriesView view, long from, long to) {
+    int first = Math.max(0, view.indexOf(from) - 1);
+    int last = Math.min(view.size() - 1, view.indexOf(to + 1));
+    for (int i = first; i <= last; i++) {
+      accept(view.getTimestamp(i), view.get(i));
+    }
+  }
+
+  /**
+   * Same as {@link #decimateRows}, from the pyramid's buckets on {@code level}. Each bucket's
+   * minimum and maximum go in as two values at the bucket's midpoint, in the order they occurred.
+   */
+  private void decimateBuckets(int s, int level, long from, long to) {
+    long width = pyramid.getBucketMillis(level);
+    int n = pyramid.read(level, pyramid.columnIndex(SERIES[s]), from - width, to + width,
+        bucketStarts, bucketFirst, bucketSecond);
+    for (int i = 0; i < n; i++) {
+      long middle = bucketStarts[i] + width / 2;
+      accept(middle, bucketFirst[i]);
+      if (!Double.isNaN(bucketSecond[i])) {
+        accept(middle, bucketSecond[i]);
+      }
+    }
+  }
+
+  private void beginSeries(int s, long from, double millisPerPixel, int plotWidth) {
+    int capacity = 3 * (plotWidth + 4);
+    if (pointX[s].length < capacity) {
+      pointX[s] = new double[capacity];
+      pointValue[s] = new double[capacity];
+    }
+    series = s;
+    seriesFrom = from;
+    seriesMillisPerPixel = millisPerPixel;
+    points = 0;
+    column = Long.MIN_VALUE;
+    columnMin = Double.POSITIVE_INFINITY;
+    columnMax = Double.NEGATIVE_INFINITY;
+    minSeq = -1;
+    maxSeq = -1;
+    seq = 0;
+    gap = false;
+  }
+
+  /**
+   * Adds one value of the current series, in time order. Values are reduced to at most two points
+   * per pixel column: the column's minimum and maximum, in the order they occurred. NaN (a failed
+   * sample) breaks the line.
+   */
+  private void accept(long timestampMillis, double value) {
+    long c = (long) Math.floor((timestampMillis - seriesFrom) / seriesMillisPerPixel);
+    if (c != column) {
+      flushColumn();
+      column = c;
+    }
+    if (Double.isNaN(value)) {
+      gap = true;
+      return;
+    }
+    value *= SERIES_SCALES[series];
+    seq++;
+    if (value < columnMin) {
+      columnMin = value;
+      minSeq = seq;
+    }
+    if (value > columnMax) {
+      columnMax = value;
+      maxSeq = seq;
+    }
+  }
+
+  private void flushColumn() {
+    if (minSeq >= 0) {
+      double[] xs = pointX[series];
+      double[] values = pointValue[series];
+      if (gap && points > 0) {
+        xs[points++] = Double.NaN;
+      }
+      gap = false;
+      double x = LEFT + (column + 0.5);
+      if (minSeq == maxSeq) {
+        xs[points] = x;
+        values[points++] = columnMin;
+      } else {
+        xs[points] = x;
+        values[points++] = minSeq < maxSeq ? columnMin : columnMax;
+        xs[points] = x;
+        values[points++] = minSeq < maxSeq ? columnMax : columnMin;
+      }
+      low = Math.min(low, columnMin);
+      high = Math.max(high, columnMax);
+    }
+    columnMin = Double.POSITIVE_INFINITY;
+    columnMax = Double.NEGATIVE_INFINITY;
+    minSeq = -1;
+    maxSeq = -1;
+  }
+
+  private void endSeries() {
+    flushColumn();
+    pointCount[series] = points;
+  }
+
+  private void drawSeries(GraphicsContext gc, int s, double plotHeight) {
+    double[] xs = pointX[s];
+    double[] values = pointValue[s];
+    int n = pointCount[s];
+    gc.setStroke(SERIES_COLORS[s]);
+    gc.beginPath();
+    boolean penDown = false;
+    for (int i = 0; i < n; i++) {
+      if (Double.isNaN(xs[i])) {
+        penDown = false;
+        continue;
+      }
+      double y = toY(values[i], plotHeight);
+      if (penDown) {
+        gc.lineTo(xs[i], y);
+      } else {
+        gc.moveTo(xs[i], y);
+        penDown = true;
+      }
+    }
+    gc.stroke();
+  }
+
+  private double toY(double value, double plotHeight) {
+    return TOP + plotHeight - (value - low) / (high - low) * plotHeight;
+  }
+
+  private void drawAxes(GraphicsContext gc, long from, int plotWidth, double plotHeight) {
+    gc.setLineWidth(1);
+    gc.setStroke(Color.rgb(0xdd, 0xdd, 0xdd));
+    gc.setFill(Color.DIMGRAY);
+    gc.setTextAlign(TextAlignment.RIGHT);
+    gc.setTextBaseline(VPos.CENTER);
+    String format = high - low >= 10 ? "%.0f" : "%.1f";
+    for (int t = 0; t <= Y_TICKS; t++) {
+      double value = low + (high - low) * t / Y_TICKS;
+      double y = Math.round(toY(value, plotHeight)) + 0.5;
+      gc.strokeLine(LEFT, y, LEFT + plotWidth, y);
+      gc.fillText(String.format(format, value), LEFT - 4, y);
+    }
+    gc.setTextAlign(TextAlignment.CENTER);
+    gc.setTextBaseline(VPos.TOP);
+    for (int t = 0; t <= X_TICKS; t++) {
+      double x = Math.round(LEFT + (double) plotWidth * t / X_TICKS) + 0.5;
+      gc.strokeLine(x, TOP, x, TOP + plotHeight);
+      long time = from + spanMillis * t / X_TICKS;
+      gc.fillText(TIME_FORMAT.format(Instant.ofEpochMilli(time)), x, TOP + plotHeight + 4);
+    }
+  }
+
+  private void drawTitleAndLegend(GraphicsContext gc) {
+    gc.setFill(Color.BLACK);
+    gc.setTextAlign(TextAlignment.LEFT);
+    gc.setTextBaseline(VPos.TOP);
+    gc.fillText(title, LEFT, 4);
+    double x = LEFT;
+    for (int s = 0; s < SERIES.length; s++) {
+      gc.setFill(SERIES_COLORS[s]);
+      gc.fillRect(x, 24, 10, 10);
+      gc.setFill(Color.DIMGRAY);
+      gc.fillText(SERIES_NAMES[s], x + 14, 22);
+      x += 150;
+    }
   }
 
   /**
-   * Update the chart with fresh NetworkMetrics data.
+   * Scales the time span by {@code factor}, keeping the time under {@code pointerX} in place.
    */
-  public void update(NetworkMetrics metrics) {
-    if (!metrics.isSuccessful()) {
-      return; // Skip errors
+  private void zoom(double factor, double pointerX) {
+    double plotWidth = canvas.getWidth() - LEFT - RIGHT;
+    if (plotWidth <= 0) {
+      return;
     }
+    long newSpan = (long) Math.max(MIN_SPAN_MS, Math.min(maxSpan(), spanMillis * factor));
+    if (!following) {
+      double fraction = Math.max(0, Math.min(1, (pointerX - LEFT) / plotWidth));
+      long pointerTime = viewEnd - spanMillis + (long) (fraction * spanMillis);
+      viewEnd = pointerTime + (long) ((1 - fraction) * newSpan);
+    }
+    spanMillis = newSpan;
+    refresh();
+  }
 
-    sampleCount++;
+  /**
+   * Moves the view by {@code dx} pixels from where the drag started; dragging right goes back in
+   * time. Reaching the newest sample resumes following it.
+   */
+  private void pan(double dx) {
+    double plotWidth = canvas.getWidth() - LEFT - RIGHT;
+    long oldest = oldestTimestamp();
+    long newest = newestTimestamp();
+    if (oldest > newest || plotWidth <= 0) {
+      return;
+    }
+    long end = dragStartEnd - (long) (dx * spanMillis / plotWidth);
+    end = Math.max(oldest + Math.min(spanMillis, newest - oldest), end);
+    following = end >= newest;
+    viewEnd = following ? newest : end;
+    refresh();
+  }
 
-    if (latencySeries.getData().size() > MAX_DATA_POINTS) {
-      latencySeries.getData().remove(0);
-      throughputSeries.getData().remove(0);
-      qualitySeries.getData().remove(0);
+  /**
+   * The whole history held, so zooming out never goes past the oldest sample.
+   */
+  private long maxSpan() {
+    long oldest = oldestTimestamp();
+    long newest = newestTimestamp();
+    return oldest < newest ? Math.max(DEFAULT_SPAN_MS, newest - oldest) : DEFAULT_SPAN_MS;
+  }
+
+  /**
+   * Oldest time held by the store or the pyramid, {@link Long#MAX_VALUE} when both are empty.
+   */
+  private long oldestTimestamp() {
+    long oldest = Long.MAX_VALUE;
+    if (store != null && store.size() > 0) {
+      oldest = store.view(SERIES[0]).getTimestamp(0);
     }
+    if (pyramid != null) {
+      oldest = Math.min(oldest, pyramid.getOldestTimestamp(MinMaxPyramid.LEVELS - 1));
+    }
+    return oldest;
+  }
 
-    latencySeries.getData().add(new XYChart.Data<>(sampleCount, metrics.getLatency()));
-    // Convert throughput from B/s to KB/s
-    throughputSeries.getData().add(new XYChart.Data<>(sampleCount, metrics.getThroughput() / 1024.0));
-    qualitySeries.getData().add(new XYChart.Data<>(sampleCount, metrics.getConnectionQuality()));
+  /**
+   * Newest time held by the store or the pyramid, {@link Long#MIN_VALUE} when both are empty.
+   */
+  private long newestTimestamp() {
+    long newest = Long.MIN_VALUE;
+    if (store != null && store.size() > 0) {
+      SiteMetricsStore.SeriesView view = store.view(SERIES[0]);
+      newest = view.getTimestamp(view.size() - 1);
+    }
+    if (pyramid != null) {
+      newest = Math.max(newest, pyramid.getNewestTimestamp());
+    }
+    return newest;
   }
 }
@@ -0,0 +1,48 @@
+package com.uor.eng;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Selects which kind of thread runs each {@link MonitoringTask} and the blocking probe calls.
+ * Chosen at startup with {@code -Dmonitor.execution.mode=platform|virtual}.
+ */
+public enum ExecutionMode {
+  /** One platform thread per site, as before. */
+  PLATFORM {
+    @Override
+    public ExecutorService newExecutor() {
+      return Executors.newCachedThreadPool();
+    }
+  },
+  /**
+   * One virtual thread per task, so a site parked in sleep or socket I/O costs a few hundred bytes
+   * of heap instead of a native stack. Virtual threads need a Java 21 runtime; the build still
+   * targets 17, so they are looked up reflectively and we fall back to platform threads without them.
+   */
+  VIRTUAL {
+    @Override
+    public ExecutorService newExecutor() {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        System.err.println("Virtual threads not available on this runtime, using platform threads");
+        return PLATFORM.newExecutor();
+      }
+    }
+  };
+
+  public abstract ExecutorService newExecutor();
+
+  public static ExecutionMode fromSystemProperty() {
+    String value = System.getProperty("monitor.execution.mode", PLATFORM.name());
+    try {
+      return valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown execution mode '" + value + "', falling back to " + PLATFORM);
+      return PLATFORM;
+    }
+  }
+}
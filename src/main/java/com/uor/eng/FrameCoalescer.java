@@ -0,0 +1,193 @@
+package com.uor.eng;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies sample updates to the UI once per frame instead of once per sample. Each site keeps
+ * only its newest pending sample and, when that slot goes from empty to full, puts itself on a
+ * dirty queue. An {@link AnimationTimer} drains the queue on every pulse, applying at most one
+ * update per site, and stops once the frame has used up its budget; whatever is left waits for
+ * the next pulse, still keeping only its newest sample. So however fast the probes run, the FX
+ * thread does at most one update per site per frame and a bounded amount of work per frame.
+ *
+ * <p>The budget is {@code monitor.ui.frame.budget.ms} (default 8, half a 60 Hz frame). At least
+ * one site is applied per frame, so a single slow update cannot stall the rest.
+ */
+public class FrameCoalescer {
+  private static final long DEFAULT_BUDGET_MS = 8;
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * A site whose pending sample the coalescer applies on the FX thread.
+   */
+  public interface Target {
+    /**
+     * Applies the newest pending sample, if any. Called on the FX thread only.
+     */
+    void applyPending();
+  }
+
+  private final Queue<Target> dirty = new ConcurrentLinkedQueue<>();
+  private final long budgetNanos;
+  private final LongAdder offered = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private AnimationTimer timer;
+  private Runnable onReport;
+
+  // Written and read on the FX thread only
+  private long frames;
+  private long applied;
+  private long deferred;
+  private long lastFrameNanos;
+  private long windowMaxFrameNanos;
+  private long maxFrameNanos;
+  private long totalFrameNanos;
+  private long lastReport;
+
+  public FrameCoalescer() {
+    this(TimeUnit.MILLISECONDS.toNanos(Math.max(1, Long.getLong("monitor.ui.frame.budget.ms", DEFAULT_BUDGET_MS))));
+  }
+
+  public FrameCoalescer(long budgetNanos) {
+    this.budgetNanos = budgetNanos;
+  }
+
+  /**
+   * Starts draining on every pulse. Call on the FX thread.
+   */
+  public void start() {
+    if (timer == null) {
+      timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+          drain(now);
+        }
+      };
+    }
+    timer.start();
+  }
+
+  public void stop() {
+    if (timer != null) {
+      timer.stop();
+    }
+  }
+
+  /**
+   * Runs on the FX thread about once a second, after a frame, e.g. to show the frame statistics.
+   */
+  public void setOnReport(Runnable onReport) {
+    this.onReport = onReport;
+  }
+
+  /**
+   * Notes a new sample for {@code target}. {@code wasEmpty} tells whether its slot held no
+   * pending sample before, in which case it is queued; otherwise the older sample was replaced.
+   * Safe to call from any thread.
+   */
+  public void offer(Target target, boolean wasEmpty) {
+    offered.increment();
+    if (wasEmpty) {
+      dirty.add(target);
+    } else {
+      coalesced.increment();
+    }
+  }
+
+  /**
+   * One frame's worth of updates; package-private so it can be driven without a running toolkit.
+   */
+  void drain(long now) {
+    long start = System.nanoTime();
+    long deadline = start + budgetNanos;
+    int count = 0;
+    Target target;
+    while ((target = dirty.poll()) != null) {
+      try {
+        target.applyPending();
+      } catch (RuntimeException e) {
+        System.err.println("UI update failed: " + e.getMessage());
+      }
+      count++;
+      if (System.nanoTime() - deadline >= 0) {
+        break;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    frames++;
+    applied += count;
+    lastFrameNanos = elapsed;
+    windowMaxFrameNanos = Math.max(windowMaxFrameNanos, elapsed);
+    totalFrameNanos += elapsed;
+    if (!dirty.isEmpty()) {
+      deferred++;
+    }
+
+    if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+      lastReport = now;
+      maxFrameNanos = windowMaxFrameNanos;
+      windowMaxFrameNanos = 0;
+      if (onReport != null) {
+        onReport.run();
+      }
+    }
+  }
+
+  /**
+   * Number of sites waiting for a frame right now.
+   */
+  public int getPendingCount() {
+    return dirty.size();
+  }
+
+  public long getOfferedCount() {
+    return offered.sum();
+  }
+
+  /**
+   * Samples that were replaced by a newer one before a frame applied them.
+   */
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  public long getFrameCount() {
+    return frames;
+  }
+
+  public long getAppliedCount() {
+    return applied;
+  }
+
+  /**
+   * Frames that ran out of budget and left sites for the next frame.
+   */
+  public long getDeferredFrameCount() {
+    return deferred;
+  }
+
+  public double getLastFrameMillis() {
+    return lastFrameNanos / 1_000_000.0;
+  }
+
+  /**
+   * Slowest frame in the last report interval.
+   */
+  public double getMaxFrameMillis() {
+    return maxFrameNanos / 1_000_000.0;
+  }
+
+  public double getAverageFrameMillis() {
+    return frames == 0 ? 0 : totalFrameNanos / 1_000_000.0 / frames;
+  }
+
+  public double getBudgetMillis() {
+    return budgetNanos / 1_000_000.0;
+  }
+}
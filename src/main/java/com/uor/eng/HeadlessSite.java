@@ -0,0 +1,30 @@
+package com.uor.eng;
+
+import lombok.Getter;
+
+/**
+ * A site monitored without a UI. Samples only go to the controller's sample listeners.
+ */
+public class HeadlessSite implements SiteHandle {
+  @Getter
+  private final String siteAddress;
+  private volatile boolean running = true;
+
+  public HeadlessSite(String siteAddress) {
+    this.siteAddress = siteAddress;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void updateMetrics(NetworkMetrics metrics) {
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+  }
+}
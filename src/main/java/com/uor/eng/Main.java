@@ -22,7 +22,7 @@ public class Main extends Application {
 
   @Override
   public void stop() {
-    controller.stopAllMonitoring();
+    controller.shutdown();
   }
 
   public static void main(String[] args) {
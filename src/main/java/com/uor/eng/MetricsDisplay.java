@@ -14,6 +14,7 @@ public class MetricsDisplay {
   private final GridPane grid;
 
   private final Label latencyLabel;
+  private final Label percentilesLabel;
   private final Label dnsTimeLabel;
   private final Label tcpTimeLabel;
   private final Label tlsTimeLabel;
@@ -27,6 +28,7 @@ public class MetricsDisplay {
   private final Label downloadSpeedLabel;
   private final Label uploadSpeedLabel;
   private final Label pingStatsLabel;
+  private final Label connectionReuseLabel;
   private final Label connectionStatusLabel;
 
   public MetricsDisplay() {
@@ -34,6 +36,7 @@ public class MetricsDisplay {
 
     // Initialize labels with a consistent style
     this.latencyLabel         = createMetricLabel("Latency");
+    this.percentilesLabel     = createMetricLabel("Latency Percentiles");
     this.dnsTimeLabel         = createMetricLabel("DNS Resolution");
     this.tcpTimeLabel         = createMetricLabel("TCP Connection");
     this.tlsTimeLabel         = createMetricLabel("TLS Handshake");
@@ -47,6 +50,7 @@ public class MetricsDisplay {
     this.downloadSpeedLabel   = createMetricLabel("Download Speed");
     this.uploadSpeedLabel     = createMetricLabel("Upload Speed");
     this.pingStatsLabel       = createMetricLabel("Ping Statistics");
+    this.connectionReuseLabel = createMetricLabel("Connection Reuse");
     this.connectionStatusLabel= createMetricLabel("Status");
 
     setupGrid();
@@ -66,11 +70,11 @@ public class MetricsDisplay {
 
     // Column 1
     grid.add(createMetricGroup("Latency Metrics",
-        latencyLabel, dnsTimeLabel, tcpTimeLabel, tlsTimeLabel, ttfbLabel), 0, 0);
+        latencyLabel, percentilesLabel, dnsTimeLabel, tcpTimeLabel, tlsTimeLabel, ttfbLabel), 0, 0);
 
     // Column 2
     grid.add(createMetricGroup("Performance Metrics",
-        throughputLabel, jitterLabel, packetLossLabel, pingStatsLabel), 1, 0);
+        throughputLabel, jitterLabel, packetLossLabel, pingStatsLabel, connectionReuseLabel), 1, 0);
 
     // Column 3
     grid.add(createMetricGroup("Quality Metrics",
@@ -101,6 +105,7 @@ public class MetricsDisplay {
 
   private void setupTooltips() {
     Tooltip.install(latencyLabel, new Tooltip("Round-trip time for network packets"));
+    Tooltip.install(percentilesLabel, new Tooltip("Latency percentiles over the last minute"));
     Tooltip.install(dnsTimeLabel, new Tooltip("Time taken to resolve domain name"));
     Tooltip.install(tcpTimeLabel, new Tooltip("Time to establish TCP connection"));
     Tooltip.install(tlsTimeLabel, new Tooltip("Time for SSL/TLS handshake"));
@@ -108,23 +113,52 @@ public class MetricsDisplay {
     // Add more tooltips for other metrics if desired
   }
 
+  /**
+   * Puts every label back to "Pending...", for a site that has no sample yet.
+   */
+  public void clear() {
+    for (Label label : new Label[]{latencyLabel, percentilesLabel, dnsTimeLabel, tcpTimeLabel, tlsTimeLabel,
+        ttfbLabel, packetLossLabel, throughputLabel, jitterLabel, qualityLabel, mosLabel, errorRateLabel,
+        downloadSpeedLabel, uploadSpeedLabel, pingStatsLabel, connectionReuseLabel, connectionStatusLabel}) {
+      label.setText("Pending...");
+    }
+    connectionStatusLabel.getStyleClass().removeAll("status-good", "status-warning", "status-error");
+  }
+
   /**
    * Called when we have fresh metrics to display.
    */
   public void update(NetworkMetrics metrics) {
+    update(metrics, 0);
+  }
+
+  /**
+   * Like {@link #update(NetworkMetrics)}, also showing how many probe deadlines the scheduler
+   * skipped for the site so far.
+   */
+  public void update(NetworkMetrics metrics, long missedDeadlines) {
     if (!metrics.isSuccessful()) {
-      updateError(metrics.getErrorMessage());
+      updateError(metrics.getErrorMessage(), missedDeadlines);
       return;
     }
-    updateMetrics(metrics);
+    updateMetrics(metrics, missedDeadlines);
   }
 
-  private void updateMetrics(NetworkMetrics metrics) {
+  private void updateMetrics(NetworkMetrics metrics, long missedDeadlines) {
     latencyLabel.setText(String.format("Latency: %.1f ms", metrics.getLatency()));
+    percentilesLabel.setText(String.format("p50/p90/p99/p99.9: %.1f/%.1f/%.1f/%.1f ms",
+        metrics.getP50Latency(), metrics.getP90Latency(), metrics.getP99Latency(), metrics.getP999Latency()));
     dnsTimeLabel.setText(String.format("DNS: %.1f ms", metrics.getDnsTime()));
     tcpTimeLabel.setText(String.format("TCP: %.1f ms", metrics.getTcpTime()));
     tlsTimeLabel.setText(String.format("TLS: %.1f ms", metrics.getTlsTime()));
-    ttfbLabel.setText(String.format("TTFB: %.1f ms", metrics.getTtfb()));
+    if (metrics.getColdTtfb() > 0) {
+      ttfbLabel.setText(String.format("TTFB: %.1f ms (cold %.1f / warm %.1f)",
+          metrics.getTtfb(), metrics.getColdTtfb(), metrics.getWarmTtfb()));
+      connectionReuseLabel.setText(String.format("Connection Reuse: %.0f%%", metrics.getConnectionReuseRatio()));
+    } else {
+      ttfbLabel.setText(String.format("TTFB: %.1f ms", metrics.getTtfb()));
+      connectionReuseLabel.setText("Connection Reuse: N/A");
+    }
     packetLossLabel.setText(String.format("Packet Loss: %.2f%%", metrics.getPacketLoss()));
     throughputLabel.setText(String.format("Throughput: %.2f KB/s", metrics.getThroughput() / 1024));
     jitterLabel.setText(String.format("Jitter: %.2f ms", metrics.getJitter()));
@@ -132,15 +166,17 @@ public class MetricsDisplay {
     mosLabel.setText(String.format("MOS: %.1f", metrics.getMos()));
     errorRateLabel.setText(String.format("Error Rate: %.2f%%", metrics.getErrorRate()));
     downloadSpeedLabel.setText(String.format("Download: %.2f Mbps", metrics.getDownloadSpeed()));
-    uploadSpeedLabel.setText(String.format("Upload: %.2f Mbps", metrics.getUploadSpeed()));
-    pingStatsLabel.setText(String.format("Ping min/avg/max: %.1f/%.1f/%.1f ms",
-        metrics.getMinPing(), metrics.getAvgPing(), metrics.getMaxPing()));
+    uploadSpeedLabel.setText(metrics.getUploadSpeed() > 0
+        ? String.format("Upload: %.2f Mbps", metrics.getUploadSpeed())
+        : "Upload: N/A");
+    pingStatsLabel.setText(String.format("Ping min/avg/max/stddev: %.1f/%.1f/%.1f/%.1f ms",
+        metrics.getMinPing(), metrics.getAvgPing(), metrics.getMaxPing(), metrics.getPingStdDev()));
 
     // Update connection status
-    updateConnectionStatus(metrics);
+    updateConnectionStatus(metrics, missedDeadlines);
   }
 
-  private void updateConnectionStatus(NetworkMetrics metrics) {
+  private void updateConnectionStatus(NetworkMetrics metrics, long missedDeadlines) {
     String status = "Connected";
     String styleClass = "status-good";
 
@@ -153,7 +189,7 @@ public class MetricsDisplay {
       styleClass = "status-warning";
     }
 
-    connectionStatusLabel.setText("Status: " + status);
+    connectionStatusLabel.setText("Status: " + status + missedSuffix(missedDeadlines));
     connectionStatusLabel.getStyleClass().removeAll("status-good", "status-warning", "status-error");
     connectionStatusLabel.getStyleClass().add(styleClass);
   }
@@ -161,9 +197,10 @@ public class MetricsDisplay {
   /**
    * Called when there's an error (unsuccessful metrics retrieval).
    */
-  private void updateError(String error) {
+  private void updateError(String error, long missedDeadlines) {
     // Label all metrics as error or "N/A"
     latencyLabel.setText("Error: " + error);
+    percentilesLabel.setText("p50/p90/p99/p99.9: N/A");
     dnsTimeLabel.setText("DNS: N/A");
     tcpTimeLabel.setText("TCP: N/A");
     tlsTimeLabel.setText("TLS: N/A");
@@ -177,9 +214,14 @@ public class MetricsDisplay {
     downloadSpeedLabel.setText("Download: N/A");
     uploadSpeedLabel.setText("Upload: N/A");
     pingStatsLabel.setText("Ping: N/A");
+    connectionReuseLabel.setText("Connection Reuse: N/A");
 
-    connectionStatusLabel.setText("Status: Error");
+    connectionStatusLabel.setText("Status: Error" + missedSuffix(missedDeadlines));
     connectionStatusLabel.getStyleClass().removeAll("status-good", "status-warning", "status-error");
     connectionStatusLabel.getStyleClass().add("status-error");
   }
+
+  private static String missedSuffix(long missedDeadlines) {
+    return missedDeadlines > 0 ? " (" + missedDeadlines + " missed deadlines)" : "";
+  }
 }
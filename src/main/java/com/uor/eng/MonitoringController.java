@@ -1,48 +1,228 @@
 package com.uor.eng;
 
+import com.uor.eng.export.OpenMetricsEndpoint;
+import com.uor.eng.export.SampleExporter;
+import com.uor.eng.store.CompressedStore;
+import com.uor.eng.store.MetricsJournal;
+import com.uor.eng.store.MetricsPersister;
+import com.uor.eng.store.MetricsQueryEngine;
+import com.uor.eng.store.MetricsStore;
+import com.uor.eng.store.RollupEngine;
+import com.uor.eng.store.RowListener;
+import com.uor.eng.store.SampleListener;
+import com.uor.eng.store.SiteMetricsStore;
+import lombok.Getter;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.Map;
 
 public class MonitoringController {
-  private final Map<String, MonitoringSite> monitoringSites = new ConcurrentHashMap<>();
+  private final Map<String, SiteHandle> monitoringSites = new ConcurrentHashMap<>();
   private ExecutorService executorService;
+  private final ExecutionMode executionMode;
   private final NetworkMetricsService metricsService;
+  private final ProbeScheduler scheduler;
+  @Getter
+  private final MetricsStore metricsStore = new MetricsStore();
+  @Getter
+  private final RollupEngine rollups = new RollupEngine();
+  @Getter
+  private final CompressedStore coldStore = CompressedStore.fromSystemProperties();
+  @Getter
+  private final MetricsQueryEngine queryEngine = new MetricsQueryEngine(metricsStore, rollups, coldStore);
+  private final List<SampleListener> sampleListeners = new CopyOnWriteArrayList<>();
+  private final MetricsPersister persister;
+  private final MetricsJournal journal;
+  private final OpenMetricsEndpoint metricsEndpoint;
+  private final SampleExporter exporter;
+  @Getter
+  private final List<String> restoredSites;
   private static final long DEFAULT_THRESHOLD_LATENCY = 1000;
+  private static final long DEFAULT_INTERVAL_MS = 1000;
   private volatile boolean isShutdown = false;
 
   public MonitoringController() {
-    this.executorService = Executors.newCachedThreadPool();
-    this.metricsService = new NetworkMetricsService(DEFAULT_THRESHOLD_LATENCY);
+    this(ExecutionMode.fromSystemProperty());
+  }
+
+  public MonitoringController(ExecutionMode executionMode) {
+    this(executionMode, SchedulingMode.fromSystemProperty());
   }
 
-  public void startMonitoring(String siteAddress, MonitoringSite site) {
+  public MonitoringController(ExecutionMode executionMode, SchedulingMode schedulingMode) {
+    this.executionMode = executionMode;
+    this.executorService = executionMode.newExecutor();
+    this.metricsService = new NetworkMetricsService(
+        DEFAULT_THRESHOLD_LATENCY, ProbeMode.fromSystemProperty(), executionMode);
+    this.scheduler = schedulingMode == SchedulingMode.WHEEL ? new ProbeScheduler(executionMode) : null;
+    this.persister = MetricsPersister.fromSystemProperties();
+    this.journal = MetricsJournal.fromSystemProperties();
+    this.metricsEndpoint = OpenMetricsEndpoint.fromSystemProperties();
+    this.exporter = SampleExporter.fromSystemProperties();
+    this.restoredSites = replayJournal();
+
+    sampleListeners.add((siteAddress, timestampMillis, metrics) -> {
+      // A late sample from a site that was just stopped finds no store and is dropped
+      SiteMetricsStore store = metricsStore.get(siteAddress);
+      if (store != null) {
+        store.append(timestampMillis, metrics);
+      }
+    });
+    sampleListeners.add(rollups);
+    if (coldStore != null) {
+      sampleListeners.add(coldStore);
+    }
+    if (journal != null) {
+      sampleListeners.add(journal);
+    }
+    if (persister != null) {
+      sampleListeners.add(persister);
+    }
+    if (metricsEndpoint != null) {
+      sampleListeners.add(metricsEndpoint);
+    }
+    if (exporter != null) {
+      sampleListeners.add(exporter);
+    }
+  }
+
+  /**
+   * Rebuilds the sample stores and rollups from the journal and returns the sites it knew about.
+   */
+  private List<String> replayJournal() {
+    if (journal == null) {
+      return List.of();
+    }
+    try {
+      long start = System.nanoTime();
+      List<String> sites = journal.replay(new RowListener() {
+        @Override
+        public void onRow(String siteAddress, long timestampMillis, double[] values) {
+          metricsStore.onRow(siteAddress, timestampMillis, values);
+          rollups.onRow(siteAddress, timestampMillis, values);
+          if (coldStore != null) {
+            coldStore.onRow(siteAddress, timestampMillis, values);
+          }
+        }
+
+        @Override
+        public void onRemoved(String siteAddress) {
+          metricsStore.onRemoved(siteAddress);
+          rollups.onRemoved(siteAddress);
+          if (coldStore != null) {
+            coldStore.onRemoved(siteAddress);
+          }
+        }
+      });
+      System.out.printf("Replayed journal for %d site(s) in %.1f ms%n",
+          sites.size(), (System.nanoTime() - start) / 1_000_000.0);
+      return List.copyOf(sites);
+    } catch (IOException e) {
+      System.err.println("Journal replay failed: " + e.getMessage());
+      return List.of();
+    }
+  }
+
+  /**
+   * Records that the user removed a site, so it is not restored on the next start.
+   */
+  public void forgetSite(String siteAddress) {
+    if (journal != null) {
+      journal.markRemoved(siteAddress);
+    }
+  }
+
+  /**
+   * Registers a listener that sees every sample on the probe thread, after the store.
+   */
+  public void addSampleListener(SampleListener listener) {
+    sampleListeners.add(listener);
+  }
+
+  private void dispatchSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    for (SampleListener listener : sampleListeners) {
+      try {
+        listener.onSample(siteAddress, timestampMillis, metrics);
+      } catch (RuntimeException e) {
+        System.err.println("Sample listener failed for " + siteAddress + ": " + e.getMessage());
+      }
+    }
+  }
+
+  public void startMonitoring(String siteAddress, SiteHandle site) {
+    startMonitoring(siteAddress, site, DEFAULT_INTERVAL_MS);
+  }
+
+  /**
+   * Starts monitoring a site. The interval is only honoured by the timer-wheel scheduler;
+   * per-site loops always sample once a second.
+   */
+  public void startMonitoring(String siteAddress, SiteHandle site, long intervalMs) {
     synchronized (this) {
       if (isShutdown) {
-        executorService = Executors.newCachedThreadPool();
+        executorService = executionMode.newExecutor();
         isShutdown = false;
       }
 
       if (!monitoringSites.containsKey(siteAddress)) {
-        site.setMonitoringTask(createMonitoringTask(siteAddress, site));
-        executorService.submit(site.getMonitoringTask());
+        MonitoringTask task = createMonitoringTask(siteAddress, site);
+        site.setMonitoringTask(task);
+        if (scheduler != null) {
+          scheduler.schedule(siteAddress, task, intervalMs);
+        } else {
+          executorService.submit(task);
+        }
         monitoringSites.put(siteAddress, site);
       }
     }
   }
 
-  private Runnable createMonitoringTask(String siteAddress, MonitoringSite site) {
-    return new MonitoringTask(siteAddress, metricsService, site);
+  /**
+   * Deadlines skipped for a site because its previous probe overran. Always 0 without the scheduler.
+   */
+  public long getMissedDeadlines(String siteAddress) {
+    return scheduler == null ? 0 : scheduler.getMissedDeadlines(siteAddress);
+  }
+
+  private MonitoringTask createMonitoringTask(String siteAddress, SiteHandle site) {
+    SiteMetricsStore store = metricsStore.forSite(siteAddress);
+    site.setStore(store);
+    rollups.forSite(siteAddress);
+    if (coldStore != null) {
+      coldStore.forSite(siteAddress);
+    }
+    if (metricsEndpoint != null) {
+      metricsEndpoint.register(siteAddress, () -> getMissedDeadlines(siteAddress));
+    }
+    if (store.size() > 0) {
+      site.restoreHistory(store);
+    }
+    return new MonitoringTask(siteAddress, metricsService, site, this::dispatchSample);
   }
 
   public void stopMonitoring(String siteAddress) {
     synchronized (this) {
-      MonitoringSite site = monitoringSites.get(siteAddress);
+      SiteHandle site = monitoringSites.get(siteAddress);
       if (site != null) {
+        if (scheduler != null) {
+          scheduler.cancel(siteAddress);
+        }
         site.stop();
         monitoringSites.remove(siteAddress);
+        metricsService.forgetTarget(siteAddress);
+        metricsStore.remove(siteAddress);
+        rollups.remove(siteAddress);
+        if (coldStore != null) {
+          coldStore.remove(siteAddress);
+        }
+        if (metricsEndpoint != null) {
+          metricsEndpoint.remove(siteAddress);
+        }
       }
     }
   }
@@ -61,9 +241,36 @@ public class MonitoringController {
   public void restart() {
     synchronized (this) {
       if (isShutdown) {
-        executorService = Executors.newCachedThreadPool();
+        executorService = executionMode.newExecutor();
         isShutdown = false;
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Stops every site, flushes pending persistence and releases the probe engines.
+   * The controller cannot be restarted afterwards.
+   */
+  public void shutdown() {
+    stopAllMonitoring();
+    if (scheduler != null) {
+      scheduler.close();
+    }
+    if (coldStore != null) {
+      coldStore.close();
+    }
+    if (journal != null) {
+      journal.close();
+    }
+    if (persister != null) {
+      persister.close();
+    }
+    if (metricsEndpoint != null) {
+      metricsEndpoint.close();
+    }
+    if (exporter != null) {
+      exporter.close();
+    }
+    metricsService.shutdown();
+  }
+}
@@ -0,0 +1,90 @@
+package com.uor.eng;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless entry point: monitors the sites listed in a file with the same controller and probe
+ * pipeline as the JavaFX app, but without creating any UI objects or starting the toolkit.
+ * Samples go to the controller's sample listeners: the journal, database and other sinks enabled
+ * through system properties, plus a one-line-per-sample log on stdout unless
+ * {@code -Dmonitor.daemon.log=false}. With the timer wheel, log lines also carry the deadlines a
+ * site has missed because its probes overran.
+ *
+ * <p>The targets file has one site per line, optionally followed by its interval in ms (only
+ * honoured with {@code -Dmonitor.scheduling.mode=wheel}). Blank lines and lines starting with
+ * {@code #} are ignored. Runs until the process is stopped.
+ *
+ * <p>The heap is mostly per-site history, so size {@code -Xmx} by the number of targets. Measured
+ * with one sample per second, a site costs about 160 KB as soon as it starts (115 KB for the
+ * recent rows, {@code monitor.store.capacity}, 600 by default; the rest is its latency state),
+ * 270 KB after an hour and 610 KB after a day, as its rollups fill. The rollups keep growing
+ * slowly to about 1.2 MB after a year; {@code monitor.rollup.minutes}, {@code .hours} and
+ * {@code .days} cap them. A thousand sites thus need about 600 MB after a day. The compressed
+ * cold tier is off unless {@code monitor.cold.blocks} or {@code monitor.archive.dir} is set, and
+ * then adds up to about 250 KB per site per block.
+ *
+ * <p>Usage: {@code MonitoringDaemon <targets-file>}
+ */
+public class MonitoringDaemon {
+  private static final long DEFAULT_INTERVAL_MS = 1000;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length != 1) {
+      System.err.println("Usage: MonitoringDaemon <targets-file>");
+      System.exit(2);
+    }
+    Map<String, Long> targets = readTargets(Paths.get(args[0]));
+    if (targets.isEmpty()) {
+      System.err.println("No targets in " + args[0]);
+      System.exit(2);
+    }
+
+    AlertService.setHeadless(true);
+    MonitoringController controller = new MonitoringController();
+    if (Boolean.parseBoolean(System.getProperty("monitor.daemon.log", "true"))) {
+      controller.addSampleListener(new SampleLogger(System.out, controller::getMissedDeadlines));
+    }
+
+    CountDownLatch stopped = new CountDownLatch(1);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      controller.shutdown();
+      stopped.countDown();
+    }, "daemon-shutdown"));
+
+    targets.forEach((address, interval) ->
+        controller.startMonitoring(address, new HeadlessSite(address), interval));
+    System.out.println("Monitoring " + targets.size() + " site(s)");
+    stopped.await();
+  }
+
+  /**
+   * Reads the targets file into site address to interval, in file order.
+   */
+  static Map<String, Long> readTargets(Path file) throws IOException {
+    Map<String, Long> targets = new LinkedHashMap<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      String[] fields = trimmed.split("\\s+");
+      long interval = DEFAULT_INTERVAL_MS;
+      if (fields.length > 1) {
+        try {
+          interval = Math.max(1, Long.parseLong(fields[1]));
+        } catch (NumberFormatException e) {
+          System.err.println("Ignoring bad interval '" + fields[1] + "' for " + fields[0]);
+        }
+      }
+      targets.put(fields[0], interval);
+    }
+    return targets;
+  }
+}
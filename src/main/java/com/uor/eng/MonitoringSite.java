@@ -1,15 +1,24 @@
 package com.uor.eng;
 
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.MinMaxPyramid;
+import com.uor.eng.store.SiteMetricsStore;
 import javafx.application.Platform;
-import javafx.scene.Node;
-import javafx.scene.control.Button;
-import javafx.scene.layout.VBox;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
-public class MonitoringSite {
+/**
+ * One monitored site in the JavaFX UI. It holds only data: the newest sample, plus the store and
+ * the min/max pyramid the chart reads its history from. Nodes come from a {@link SiteView}, which
+ * is bound to the site only while it is visible in the list.
+ */
+public class MonitoringSite implements SiteHandle, FrameCoalescer.Target {
   @Getter
   private final String siteAddress;
 
@@ -17,55 +26,119 @@ public class MonitoringSite {
   private Runnable monitoringTask;
 
   @Getter
-  private boolean running = true;
-  private final VBox rootLayout;
-  private final Button stopButton;
-  private final MetricsDisplay metricsDisplay;
-  private final ChartDisplay chartDisplay;
+  private volatile boolean running = true;
+  // Newest sample not yet shown; older ones are overwritten, not queued
+  private final AtomicReference<NetworkMetrics> pending = new AtomicReference<>();
+  private final FrameCoalescer coalescer;
+
+  @Getter @Setter
+  private volatile SiteMetricsStore store;
+  // Fed with every sample on the probe thread, before coalescing drops any
+  @Getter
+  private final MinMaxPyramid pyramid = new MinMaxPyramid(
+      MetricColumn.LATENCY, MetricColumn.THROUGHPUT, MetricColumn.CONNECTION_QUALITY);
+
+  // Written and read on the FX thread only
+  @Getter
+  private NetworkMetrics latest;
+  // Normally one; the list can briefly bind a site to a second, off-screen cell while measuring
+  private final List<SiteView> views = new ArrayList<>(1);
+
+  // Deadlines the scheduler skipped for this site, shown next to its status
+  @Setter
+  private LongSupplier missedDeadlinesSource = () -> 0;
 
   // Add callbacks for metrics updates and site removal
   private Consumer<NetworkMetrics> onMetricsUpdated;
   @Setter
   private Runnable onSiteRemoved;
+  // Only fired when the user presses Stop, not when monitoring is stopped programmatically
+  @Setter
+  private Runnable onStopRequested;
 
-  public MonitoringSite(String siteAddress) {
+  public MonitoringSite(String siteAddress, FrameCoalescer coalescer) {
     this.siteAddress = siteAddress;
-    this.stopButton = new Button("Stop");
-    stopButton.setOnAction(e -> stop());
-    this.metricsDisplay = new MetricsDisplay();
-    this.chartDisplay = new ChartDisplay();
-    chartDisplay.getChart().setTitle("Metrics for " + siteAddress);
-
-    this.rootLayout = new VBox(10, stopButton, metricsDisplay.getGrid(), chartDisplay.getChart());
+    this.coalescer = coalescer;
   }
 
   public void setOnMetricsUpdated(Consumer<NetworkMetrics> callback) {
     this.onMetricsUpdated = callback;
   }
 
+  /**
+   * Adds the sample to the pyramid and leaves it for the next frame; see {@link FrameCoalescer}.
+   */
+  @Override
   public void updateMetrics(NetworkMetrics metrics) {
+    pyramid.append(System.currentTimeMillis(), metrics);
+    coalescer.offer(this, pending.getAndSet(metrics) == null);
+  }
+
+  @Override
+  public void applyPending() {
+    NetworkMetrics metrics = pending.getAndSet(null);
+    if (metrics == null || !running) return;
+
+    latest = metrics;
+    for (SiteView view : views) {
+      view.show(metrics);
+    }
+    if (onMetricsUpdated != null) {
+      onMetricsUpdated.accept(metrics);
+    }
+  }
+
+  public long getMissedDeadlines() {
+    return missedDeadlinesSource.getAsLong();
+  }
+
+  /**
+   * Sends new samples to {@code view} too. FX thread only.
+   */
+  void attach(SiteView view) {
+    if (!views.contains(view)) {
+      views.add(view);
+    }
+  }
+
+  void detach(SiteView view) {
+    views.remove(view);
+  }
+
+  /**
+   * Shows the newest stored sample, so a restored site starts with its figures instead of
+   * "Pending...". The chart reads the rest of the history from the store itself; the stored rows
+   * also seed the pyramid.
+   */
+  @Override
+  public void restoreHistory(SiteMetricsStore store) {
+    pyramid.appendAll(store);
+    NetworkMetrics newest = store.getMetrics(store.size() - 1);
     Platform.runLater(() -> {
       if (!running) return;
 
-      metricsDisplay.update(metrics);
-      chartDisplay.update(metrics);
-      if (onMetricsUpdated != null) {
-        onMetricsUpdated.accept(metrics);
-      }
+      latest = newest;
+      views.forEach(SiteView::redraw);
     });
   }
 
+  /**
+   * The user pressed Stop on this site's view.
+   */
+  void requestStop() {
+    if (onStopRequested != null) {
+      onStopRequested.run();
+    }
+    stop();
+  }
+
+  @Override
   public void stop() {
     running = false;
-    stopButton.setDisable(true);
 
     // Notify that this site should be removed
     if (onSiteRemoved != null) {
       Platform.runLater(() -> onSiteRemoved.run());
     }
   }
-
-  public Node getView() {
-    return rootLayout;
-  }
-}
\ No newline at end of file
+}
@@ -1,28 +1,38 @@
 package com.uor.eng;
 
+import com.uor.eng.store.SampleListener;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * A background task that continuously measures metrics for a single site.
  * It stops when the site is no longer running or the thread is interrupted.
+ * When sites are driven by a {@link ProbeScheduler}, only {@link #runAsync(Executor)} is used.
  */
 public class MonitoringTask implements Runnable {
   private final String siteAddress;
   private final NetworkMetricsService metricsService;
-  private final MonitoringSite site;
+  private final SiteHandle site;
+  private final SampleListener listener;
+
+  public MonitoringTask(String siteAddress, NetworkMetricsService metricsService, SiteHandle site) {
+    this(siteAddress, metricsService, site, null);
+  }
 
-  public MonitoringTask(String siteAddress, NetworkMetricsService metricsService, MonitoringSite site) {
+  public MonitoringTask(String siteAddress, NetworkMetricsService metricsService, SiteHandle site,
+                        SampleListener listener) {
     this.siteAddress = siteAddress;
     this.metricsService = metricsService;
     this.site = site;
+    this.listener = listener;
   }
 
   @Override
   public void run() {
     while (site.isRunning() && !Thread.currentThread().isInterrupted()) {
       try {
-        // Fetch fresh metrics
-        NetworkMetrics metrics = metricsService.measureMetrics(siteAddress);
-        // Update the site's UI
-        site.updateMetrics(metrics);
+        runOnce();
 
         // Sleep 1 second before the next measurement
         Thread.sleep(1000);
@@ -30,11 +40,48 @@ public class MonitoringTask implements Runnable {
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
         break; // Stop gracefully if interrupted
-
-      } catch (Exception e) {
-        // If there's any exception, show error metrics and keep going
-        site.updateMetrics(NetworkMetrics.error(e.getMessage()));
       }
     }
   }
+
+  /**
+   * Takes one sample and hands it to the site.
+   */
+  public void runOnce() {
+    try {
+      // Fetch fresh metrics
+      NetworkMetrics metrics = metricsService.measureMetrics(siteAddress);
+      // Update the site's UI
+      publish(metrics);
+    } catch (Exception e) {
+      // If there's any exception, show error metrics and keep going
+      publish(NetworkMetrics.error(e.getMessage()));
+    }
+  }
+
+  /**
+   * Takes one sample without holding a thread if the probe mode supports it,
+   * otherwise runs {@link #runOnce()} on the given executor.
+   */
+  public CompletableFuture<Void> runAsync(Executor executor) {
+    if (metricsService.supportsAsync()) {
+      return metricsService.measureMetricsAsync(siteAddress)
+          .thenAccept(this::publish);
+    }
+    return CompletableFuture.runAsync(this::runOnce, executor);
+  }
+
+  /**
+   * Hands the sample to the listener (store, persistence) on the probe thread, then to the UI.
+   */
+  private void publish(NetworkMetrics metrics) {
+    if (listener != null) {
+      listener.onSample(siteAddress, System.currentTimeMillis(), metrics);
+    }
+    site.updateMetrics(metrics);
+  }
+
+  public boolean isActive() {
+    return site.isRunning();
+  }
 }
@@ -1,10 +1,13 @@
 package com.uor.eng;
 
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
@@ -12,34 +15,28 @@ import javafx.stage.Stage;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * The main window: an input for new sites and a virtualized list of the monitored ones. The list
+ * only creates {@link SiteCell}s for the rows on screen, so thousands of sites cost their data
+ * but not thousands of charts.
+ */
 public class MonitoringView {
   private final MonitoringController controller;
-  private final GridPane sitesGrid;
+  private final ObservableList<MonitoringSite> sites = FXCollections.observableArrayList();
+  private final ListView<MonitoringSite> sitesList;
   private final TextField siteInput;
   private final Map<String, MonitoringSite> activeSites;
-
-  private int currentRow = 0;
-  private int currentCol = 0;
-  private static final int MAX_COLUMNS = 2;
-
-  private final ScrollPane scrollPane;
+  private final FrameCoalescer coalescer = new FrameCoalescer();
+  private final Label frameStatsLabel = new Label();
 
   public MonitoringView(MonitoringController controller) {
     this.controller = controller;
-    this.sitesGrid = new GridPane();
     this.siteInput = new TextField();
     this.activeSites = new HashMap<>();
 
-    // Configure GridPane
-    sitesGrid.setHgap(10);
-    sitesGrid.setVgap(10);
-    sitesGrid.setPadding(new Insets(10));
-
-    // Configure ScrollPane
-    this.scrollPane = new ScrollPane(sitesGrid);
-    scrollPane.setFitToWidth(true);
-    scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
-    scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
+    this.sitesList = new ListView<>(sites);
+    sitesList.setCellFactory(list -> new SiteCell());
+    sitesList.setFocusTraversable(false);
   }
 
   public void initialize(Stage primaryStage) {
@@ -49,21 +46,25 @@ public class MonitoringView {
     primaryStage.setScene(scene);
     primaryStage.show();
 
+    coalescer.setOnReport(this::showFrameStats);
+    coalescer.start();
+
     // Stop all monitoring when window closes
-    primaryStage.setOnCloseRequest(event -> controller.stopAllMonitoring());
+    primaryStage.setOnCloseRequest(event -> {
+      coalescer.stop();
+      controller.stopAllMonitoring();
+    });
+
+    // Bring back the sites that were being monitored before the last exit
+    controller.getRestoredSites().forEach(this::addSite);
   }
 
   private VBox createMainLayout() {
     VBox controlBox = createControlBox();
 
-    // Make 2 columns, each 50% width
-    ColumnConstraints column = new ColumnConstraints();
-    column.setPercentWidth(50);
-    sitesGrid.getColumnConstraints().addAll(column, column);
-
-    VBox root = new VBox(10, controlBox, scrollPane);
+    VBox root = new VBox(10, controlBox, sitesList);
     root.setPadding(new Insets(10));
-    VBox.setVgrow(scrollPane, Priority.ALWAYS);
+    VBox.setVgrow(sitesList, Priority.ALWAYS);
     return root;
   }
 
@@ -78,17 +79,18 @@ public class MonitoringView {
 
     Button stopAllButton = new Button("Stop All Monitoring");
     stopAllButton.setOnAction(e -> {
+      activeSites.keySet().forEach(controller::forgetSite);
       controller.stopAllMonitoring();
-      sitesGrid.getChildren().clear();
+      sites.clear();
       activeSites.clear();
-      currentRow = 0;
-      currentCol = 0;
     });
 
     HBox controls = new HBox(10, siteInput, addButton, stopAllButton);
     controls.setAlignment(Pos.CENTER);
 
-    VBox controlBox = new VBox(10, controls);
+    frameStatsLabel.getStyleClass().add("metric-label");
+
+    VBox controlBox = new VBox(10, controls, frameStatsLabel);
     controlBox.setAlignment(Pos.CENTER);
     return controlBox;
   }
@@ -109,48 +111,28 @@ public class MonitoringView {
     controller.restart();
 
     // Create a new MonitoringSite
-    MonitoringSite site = new MonitoringSite(siteAddress);
+    MonitoringSite site = new MonitoringSite(siteAddress, coalescer);
+
+    site.setOnStopRequested(() -> controller.forgetSite(siteAddress));
+    site.setMissedDeadlinesSource(() -> controller.getMissedDeadlines(siteAddress));
 
     // Set up removal callback
     site.setOnSiteRemoved(() -> {
       controller.stopMonitoring(siteAddress);
       activeSites.remove(siteAddress);
-      sitesGrid.getChildren().remove(site.getView());
-      reorganizeGrid();
+      sites.remove(site);
     });
 
-    // Optional: set site UI size
-    ((Region) site.getView()).setPrefWidth(550);
-    ((Region) site.getView()).setMaxWidth(550);
-
-    // Add the site's UI to the grid
-    sitesGrid.add(site.getView(), currentCol, currentRow);
-
-    currentCol++;
-    if (currentCol >= MAX_COLUMNS) {
-      currentCol = 0;
-      currentRow++;
-    }
-
-    // Keep track
+    // Keep track; the list shows it once it scrolls into view
     activeSites.put(siteAddress, site);
+    sites.add(site);
     controller.startMonitoring(siteAddress, site);
   }
 
-  private void reorganizeGrid() {
-    var remainingSites = new HashMap<>(activeSites);
-
-    sitesGrid.getChildren().clear();
-    currentRow = 0;
-    currentCol = 0;
-
-    remainingSites.forEach((address, site) -> {
-      sitesGrid.add(site.getView(), currentCol, currentRow);
-      currentCol++;
-      if (currentCol >= MAX_COLUMNS) {
-        currentCol = 0;
-        currentRow++;
-      }
-    });
+  private void showFrameStats() {
+    frameStatsLabel.setText(String.format(
+        "UI frames: %.2f ms avg / %.2f ms max (budget %.0f ms), %d updates, %d coalesced, %d pending",
+        coalescer.getAverageFrameMillis(), coalescer.getMaxFrameMillis(), coalescer.getBudgetMillis(),
+        coalescer.getAppliedCount(), coalescer.getCoalescedCount(), coalescer.getPendingCount()));
   }
-}
\ No newline at end of file
+}
@@ -1,44 +1,106 @@
 package com.uor.eng;
 
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
 /**
  * Holds all measured fields for network metrics.
+ *
+ * <p>Instances are immutable. Every field is final, so a sample handed from a probe thread to
+ * the store, the listeners or the FX thread is safely published however the reference travels,
+ * without locks or volatile fields. Samples are put together with a {@link Builder}; a hot loop
+ * can keep one builder and {@link Builder#reset() reset} it between samples, so the sample itself
+ * is the only allocation.
  */
-@Data
-public class NetworkMetrics {
-  private boolean successful;
-  private String errorMessage;
-
-  private double latency;         // ms
-  private double dnsTime;         // ms
-  private double tcpTime;         // ms
-  private double tlsTime;         // ms
-  private double ttfb;            // ms
-  private double packetLoss;      // %
-  private double throughput;      // B/s
-  private double jitter;          // ms
-  private double connectionQuality; // %
-  private double mos;             // mean opinion score
-  private double errorRate;       // %
-  private double downloadSpeed;   // Mbps
-  private double uploadSpeed;     // Mbps
-  private double minPing;         // ms
-  private double avgPing;         // ms
-  private double maxPing;         // ms
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class NetworkMetrics {
+  private final boolean successful;
+  private final String errorMessage;
+
+  private final double latency;         // ms
+  private final double dnsTime;         // ms
+  private final double tcpTime;         // ms
+  private final double tlsTime;         // ms
+  private final double ttfb;            // ms
+  private final double packetLoss;      // %
+  private final double throughput;      // B/s
+  private final double jitter;          // ms
+  private final double connectionQuality; // %
+  private final double mos;             // mean opinion score
+  private final double errorRate;       // %
+  private final double downloadSpeed;   // Mbps
+  private final double uploadSpeed;     // Mbps
+  private final double minPing;         // ms
+  private final double avgPing;         // ms
+  private final double maxPing;         // ms
+  private final double pingStdDev;      // ms
+
+  // Latency percentiles over the site's rolling histogram window
+  private final double p50Latency;      // ms
+  private final double p90Latency;      // ms
+  private final double p99Latency;      // ms
+  private final double p999Latency;     // ms
+
+  // Only filled in by the keep-alive probe mode
+  private final double coldTtfb;        // ms, includes DNS/TCP/TLS of a fresh connection
+  private final double warmTtfb;        // ms, on a reused connection
+  private final double connectionReuseRatio; // %
+
+  private NetworkMetrics(Builder builder) {
+    this.successful = builder.successful;
+    this.errorMessage = builder.errorMessage;
+    this.latency = builder.latency;
+    this.dnsTime = builder.dnsTime;
+    this.tcpTime = builder.tcpTime;
+    this.tlsTime = builder.tlsTime;
+    this.ttfb = builder.ttfb;
+    this.packetLoss = builder.packetLoss;
+    this.throughput = builder.throughput;
+    this.jitter = builder.jitter;
+    this.connectionQuality = builder.connectionQuality;
+    this.mos = builder.mos;
+    this.errorRate = builder.errorRate;
+    this.downloadSpeed = builder.downloadSpeed;
+    this.uploadSpeed = builder.uploadSpeed;
+    this.minPing = builder.minPing;
+    this.avgPing = builder.avgPing;
+    this.maxPing = builder.maxPing;
+    this.pingStdDev = builder.pingStdDev;
+    this.p50Latency = builder.p50Latency;
+    this.p90Latency = builder.p90Latency;
+    this.p99Latency = builder.p99Latency;
+    this.p999Latency = builder.p999Latency;
+    this.coldTtfb = builder.coldTtfb;
+    this.warmTtfb = builder.warmTtfb;
+    this.connectionReuseRatio = builder.connectionReuseRatio;
+  }
+
+  /**
+   * Starts an empty, unsuccessful sample.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Starts a builder holding a copy of this sample's fields.
+   */
+  public Builder toBuilder() {
+    return new Builder().copyOf(this);
+  }
 
   /**
    * Creates a failed metrics object with a given error message.
    */
   public static NetworkMetrics error(String message) {
-    NetworkMetrics metrics = new NetworkMetrics();
-    metrics.setSuccessful(false);
-    metrics.setErrorMessage(message);
-    return metrics;
+    return new Builder().errorMessage(message).build();
   }
 
   /**
-   * Creates a successful metrics object with all fields.
+   * Creates a successful metrics object with the core fields; the rest stay 0.
    */
   public static NetworkMetrics success(
       double latency,
@@ -58,26 +120,260 @@ public class NetworkMetrics {
       double avgPing,
       double maxPing
   ) {
-    NetworkMetrics metrics = new NetworkMetrics();
-    metrics.setSuccessful(true);
-
-    metrics.setLatency(latency);
-    metrics.setDnsTime(dnsTime);
-    metrics.setTcpTime(tcpTime);
-    metrics.setTlsTime(tlsTime);
-    metrics.setTtfb(ttfb);
-    metrics.setPacketLoss(packetLoss);
-    metrics.setThroughput(throughput);
-    metrics.setJitter(jitter);
-    metrics.setConnectionQuality(connectionQuality);
-    metrics.setMos(mos);
-    metrics.setErrorRate(errorRate);
-    metrics.setDownloadSpeed(downloadSpeed);
-    metrics.setUploadSpeed(uploadSpeed);
-    metrics.setMinPing(minPing);
-    metrics.setAvgPing(avgPing);
-    metrics.setMaxPing(maxPing);
-
-    return metrics;
+    return new Builder()
+        .successful(true)
+        .latency(latency)
+        .dnsTime(dnsTime)
+        .tcpTime(tcpTime)
+        .tlsTime(tlsTime)
+        .ttfb(ttfb)
+        .packetLoss(packetLoss)
+        .throughput(throughput)
+        .jitter(jitter)
+        .connectionQuality(connectionQuality)
+        .mos(mos)
+        .errorRate(errorRate)
+        .downloadSpeed(downloadSpeed)
+        .uploadSpeed(uploadSpeed)
+        .minPing(minPing)
+        .avgPing(avgPing)
+        .maxPing(maxPing)
+        .build();
+  }
+
+  /**
+   * Mutable staging area for a {@link NetworkMetrics}. Not thread-safe: keep one per thread.
+   * {@link #build()} copies the fields out, so the builder can be reused straight away.
+   */
+  public static final class Builder {
+    private boolean successful;
+    private String errorMessage;
+    private double latency;
+    private double dnsTime;
+    private double tcpTime;
+    private double tlsTime;
+    private double ttfb;
+    private double packetLoss;
+    private double throughput;
+    private double jitter;
+    private double connectionQuality;
+    private double mos;
+    private double errorRate;
+    private double downloadSpeed;
+    private double uploadSpeed;
+    private double minPing;
+    private double avgPing;
+    private double maxPing;
+    private double pingStdDev;
+    private double p50Latency;
+    private double p90Latency;
+    private double p99Latency;
+    private double p999Latency;
+    private double coldTtfb;
+    private double warmTtfb;
+    private double connectionReuseRatio;
+
+    private Builder() {
+    }
+
+    public NetworkMetrics build() {
+      return new NetworkMetrics(this);
+    }
+
+    /**
+     * Clears every field back to an empty, unsuccessful sample.
+     */
+    public Builder reset() {
+      successful = false;
+      errorMessage = null;
+      latency = 0;
+      dnsTime = 0;
+      tcpTime = 0;
+      tlsTime = 0;
+      ttfb = 0;
+      packetLoss = 0;
+      throughput = 0;
+      jitter = 0;
+      connectionQuality = 0;
+      mos = 0;
+      errorRate = 0;
+      downloadSpeed = 0;
+      uploadSpeed = 0;
+      minPing = 0;
+      avgPing = 0;
+      maxPing = 0;
+      pingStdDev = 0;
+      p50Latency = 0;
+      p90Latency = 0;
+      p99Latency = 0;
+      p999Latency = 0;
+      coldTtfb = 0;
+      warmTtfb = 0;
+      connectionReuseRatio = 0;
+      return this;
+    }
+
+    /**
+     * Overwrites every field with those of {@code metrics}.
+     */
+    public Builder copyOf(NetworkMetrics metrics) {
+      successful = metrics.successful;
+      errorMessage = metrics.errorMessage;
+      latency = metrics.latency;
+      dnsTime = metrics.dnsTime;
+      tcpTime = metrics.tcpTime;
+      tlsTime = metrics.tlsTime;
+      ttfb = metrics.ttfb;
+      packetLoss = metrics.packetLoss;
+      throughput = metrics.throughput;
+      jitter = metrics.jitter;
+      connectionQuality = metrics.connectionQuality;
+      mos = metrics.mos;
+      errorRate = metrics.errorRate;
+      downloadSpeed = metrics.downloadSpeed;
+      uploadSpeed = metrics.uploadSpeed;
+      minPing = metrics.minPing;
+      avgPing = metrics.avgPing;
+      maxPing = metrics.maxPing;
+      pingStdDev = metrics.pingStdDev;
+      p50Latency = metrics.p50Latency;
+      p90Latency = metrics.p90Latency;
+      p99Latency = metrics.p99Latency;
+      p999Latency = metrics.p999Latency;
+      coldTtfb = metrics.coldTtfb;
+      warmTtfb = metrics.warmTtfb;
+      connectionReuseRatio = metrics.connectionReuseRatio;
+      return this;
+    }
+
+    public Builder successful(boolean successful) {
+      this.successful = successful;
+      return this;
+    }
+
+    public Builder errorMessage(String errorMessage) {
+      this.errorMessage = errorMessage;
+      return this;
+    }
+
+    public Builder latency(double latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    public Builder dnsTime(double dnsTime) {
+      this.dnsTime = dnsTime;
+      return this;
+    }
+
+    public Builder tcpTime(double tcpTime) {
+      this.tcpTime = tcpTime;
+      return this;
+    }
+
+    public Builder tlsTime(double tlsTime) {
+      this.tlsTime = tlsTime;
+      return this;
+    }
+
+    public Builder ttfb(double ttfb) {
+      this.ttfb = ttfb;
+      return this;
+    }
+
+    public Builder packetLoss(double packetLoss) {
+      this.packetLoss = packetLoss;
+      return this;
+    }
+
+    public Builder throughput(double throughput) {
+      this.throughput = throughput;
+      return this;
+    }
+
+    public Builder jitter(double jitter) {
+      this.jitter = jitter;
+      return this;
+    }
+
+    public Builder connectionQuality(double connectionQuality) {
+      this.connectionQuality = connectionQuality;
+      return this;
+    }
+
+    public Builder mos(double mos) {
+      this.mos = mos;
+      return this;
+    }
+
+    public Builder errorRate(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    public Builder downloadSpeed(double downloadSpeed) {
+      this.downloadSpeed = downloadSpeed;
+      return this;
+    }
+
+    public Builder uploadSpeed(double uploadSpeed) {
+      this.uploadSpeed = uploadSpeed;
+      return this;
+    }
+
+    public Builder minPing(double minPing) {
+      this.minPing = minPing;
+      return this;
+    }
+
+    public Builder avgPing(double avgPing) {
+      this.avgPing = avgPing;
+      return this;
+    }
+
+    public Builder maxPing(double maxPing) {
+      this.maxPing = maxPing;
+      return this;
+    }
+
+    public Builder pingStdDev(double pingStdDev) {
+      this.pingStdDev = pingStdDev;
+      return this;
+    }
+
+    public Builder p50Latency(double p50Latency) {
+      this.p50Latency = p50Latency;
+      return this;
+    }
+
+    public Builder p90Latency(double p90Latency) {
+      this.p90Latency = p90Latency;
+      return this;
+    }
+
+    public Builder p99Latency(double p99Latency) {
+      this.p99Latency = p99Latency;
+      return this;
+    }
+
+    public Builder p999Latency(double p999Latency) {
+      this.p999Latency = p999Latency;
+      return this;
+    }
+
+    public Builder coldTtfb(double coldTtfb) {
+      this.coldTtfb = coldTtfb;
+      return this;
+    }
+
+    public Builder warmTtfb(double warmTtfb) {
+      this.warmTtfb = warmTtfb;
+      return this;
+    }
+
+    public Builder connectionReuseRatio(double connectionReuseRatio) {
+      this.connectionReuseRatio = connectionReuseRatio;
+      return this;
+    }
   }
 }
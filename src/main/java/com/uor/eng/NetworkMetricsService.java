@@ -1,35 +1,97 @@
 package com.uor.eng;
 
+import com.uor.eng.probe.BodyDrain;
+import com.uor.eng.probe.BodyMode;
+import com.uor.eng.probe.DnsCache;
+import com.uor.eng.probe.KeepAliveProbe;
+import com.uor.eng.probe.NioProbeEngine;
+import com.uor.eng.probe.PingEngine;
+import com.uor.eng.probe.PingStatistics;
+import com.uor.eng.probe.ProbeResult;
+import com.uor.eng.probe.SingleConnectionProbe;
+import com.uor.eng.probe.UploadProbe;
+import com.uor.eng.stats.HistogramSnapshot;
+import com.uor.eng.stats.TargetLatencyState;
+
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
 public class NetworkMetricsService {
   private final long thresholdLatency;
-  private final BlockingQueue<Long> latencyHistory;
+  private final Map<String, TargetLatencyState> targetStates = new ConcurrentHashMap<>();
   private final ExecutorService executorService;
-
-  private static final int HISTORY_SIZE = 10;
+  private final ProbeMode probeMode;
+  private final DnsCache dnsCache;
+  private final BodyMode bodyMode;
+  private final long bodyBudget;
+  private final NioProbeEngine nioEngine;
+  private final SingleConnectionProbe singleConnectionProbe;
+  private final KeepAliveProbe keepAliveProbe;
+  private final PingEngine pingEngine;
+  private final UploadProbe uploadProbe;
+  // p50, p90, p99 and p99.9 of the current sample, filled in place on each probe thread
+  private final ThreadLocal<double[]> percentileValues = ThreadLocal.withInitial(() -> new double[PERCENTILES.length]);
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
   private static final int BUFFER_SIZE = 8192;
   private static final int TIMEOUT_MS = 5000;
   private static final int PING_COUNT = 10;
+  private static final long PING_INTERVAL_MS = 50;
+  private static final long PING_BUDGET_MS = 1500;
   private static final int CONCURRENT_THREADS = 4;
 
   public NetworkMetricsService(long thresholdLatency) {
+    this(thresholdLatency, ProbeMode.CLASSIC);
+  }
+
+  public NetworkMetricsService(long thresholdLatency, ProbeMode probeMode) {
+    this(thresholdLatency, probeMode, ExecutionMode.PLATFORM);
+  }
+
+  public NetworkMetricsService(long thresholdLatency, ProbeMode probeMode, ExecutionMode executionMode) {
     this.thresholdLatency = thresholdLatency;
-    this.latencyHistory = new ArrayBlockingQueue<>(HISTORY_SIZE);
-    this.executorService = Executors.newFixedThreadPool(CONCURRENT_THREADS);
+    // With virtual threads the blocking probe calls no longer need to share a small fixed pool
+    this.executorService = executionMode == ExecutionMode.VIRTUAL
+        ? executionMode.newExecutor()
+        : Executors.newFixedThreadPool(CONCURRENT_THREADS);
+    this.probeMode = probeMode;
+    this.dnsCache = new DnsCache();
+    this.bodyMode = BodyMode.fromSystemProperty();
+    this.bodyBudget = BodyMode.budgetFromSystemProperty();
+    this.nioEngine = probeMode == ProbeMode.NIO ? new NioProbeEngine(dnsCache, bodyMode, bodyBudget) : null;
+    this.singleConnectionProbe = new SingleConnectionProbe(dnsCache, TIMEOUT_MS, bodyMode, bodyBudget);
+    this.keepAliveProbe = probeMode == ProbeMode.KEEP_ALIVE
+        ? new KeepAliveProbe(dnsCache, TIMEOUT_MS, bodyMode, bodyBudget)
+        : null;
+    this.pingEngine = probeMode == ProbeMode.CLASSIC ? new PingEngine() : null;
+    this.uploadProbe = UploadProbe.fromSystemProperties(dnsCache, TIMEOUT_MS);
   }
 
   public NetworkMetrics measureMetrics(String address) {
+    if (probeMode == ProbeMode.NIO) {
+      try {
+        return measureMetricsAsync(address).get(TIMEOUT_MS * 2L, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return NetworkMetrics.error("Interrupted");
+      } catch (Exception e) {
+        return NetworkMetrics.error(e.getMessage());
+      }
+    }
+    if (probeMode == ProbeMode.SINGLE_CONNECTION || probeMode == ProbeMode.KEEP_ALIVE) {
+      return measureSingleConnection(address);
+    }
+
     String normalizedAddress = normalizeAddress(address);
     long startTime = System.nanoTime();
 
@@ -46,46 +108,148 @@ public class NetworkMetricsService {
       CompletableFuture<MetricsResult> httpFuture = CompletableFuture.supplyAsync(
           () -> measureHttpMetrics(url), executorService);
 
+      // The ping burst runs on the ping engine's own thread, not the pool
+      CompletableFuture<PingStatistics> pingFuture = startPingBurst(url);
+
       // Wait for all measurements to complete
       double dnsTime = dnsFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
       ConnectionTiming connTiming = connectionFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
       MetricsResult metricsResult = httpFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      applyPingStatistics(metricsResult, pingFuture.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
 
       double latency = (System.nanoTime() - startTime) / 1_000_000.0;
-      updateLatencyHistory((long) latency);
+      double jitter = recordLatency(address, latency);
 
       if (latency > thresholdLatency) {
         AlertService.showLatencyAlert(address, latency);
       }
-
-      double jitter = calculateJitter();
       double mos = calculateMOS(latency, jitter, metricsResult.packetLoss);
 
-      return NetworkMetrics.success(
-          latency,
-          dnsTime,
-          connTiming.tcpTime,
-          connTiming.tlsTime,
-          metricsResult.timeToFirstByte,
-          metricsResult.packetLoss,
-          metricsResult.throughput,
-          jitter,
-          metricsResult.quality,
-          mos,
-          metricsResult.errorRate,
-          metricsResult.downloadSpeed,
-          metricsResult.uploadSpeed,
-          metricsResult.minPing,
-          metricsResult.avgPing,
-          metricsResult.maxPing
-      );
+      NetworkMetrics.Builder metrics = NetworkMetrics.builder()
+          .successful(true)
+          .latency(latency)
+          .dnsTime(dnsTime)
+          .tcpTime(connTiming.tcpTime)
+          .tlsTime(connTiming.tlsTime)
+          .ttfb(metricsResult.timeToFirstByte)
+          .packetLoss(metricsResult.packetLoss)
+          .throughput(metricsResult.throughput)
+          .jitter(jitter)
+          .connectionQuality(metricsResult.quality)
+          .mos(mos)
+          .errorRate(metricsResult.errorRate)
+          .downloadSpeed(metricsResult.downloadSpeed)
+          .uploadSpeed(metricsResult.uploadSpeed)
+          .minPing(metricsResult.minPing)
+          .avgPing(metricsResult.avgPing)
+          .maxPing(metricsResult.maxPing)
+          .pingStdDev(metricsResult.pingStdDev);
+      applyLatencyPercentiles(address, metrics);
+      return metrics.build();
+
+    } catch (Exception e) {
+      AlertService.showError("Connection Error", "Failed to measure metrics: " + e.getMessage());
+      return NetworkMetrics.error(e.getMessage());
+    }
+  }
 
+  /**
+   * Takes the whole sample over one connection on the calling thread, instead of three
+   * separate connections on the shared pool. In keep-alive mode that connection comes from the pool.
+   */
+  private NetworkMetrics measureSingleConnection(String address) {
+    try {
+      URL url = new URL(normalizeAddress(address));
+      ProbeResult probe = keepAliveProbe != null ? keepAliveProbe.probe(url) : singleConnectionProbe.probe(url);
+      return toNetworkMetrics(address, probe);
     } catch (Exception e) {
       AlertService.showError("Connection Error", "Failed to measure metrics: " + e.getMessage());
       return NetworkMetrics.error(e.getMessage());
     }
   }
 
+  public boolean supportsAsync() {
+    return nioEngine != null;
+  }
+
+  /**
+   * Starts a non-blocking measurement. Only the NIO probe mode is truly asynchronous; the
+   * returned future completes on one of the engine's selector threads.
+   */
+  public CompletableFuture<NetworkMetrics> measureMetricsAsync(String address) {
+    if (nioEngine == null) {
+      throw new IllegalStateException("Asynchronous probes require probe mode " + ProbeMode.NIO);
+    }
+
+    URL url;
+    try {
+      url = new URL(normalizeAddress(address));
+    } catch (MalformedURLException e) {
+      return CompletableFuture.completedFuture(NetworkMetrics.error(e.getMessage()));
+    }
+
+    return nioEngine.probe(url).handle((probe, error) -> {
+      if (error != null) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return NetworkMetrics.error(cause.getMessage());
+      }
+      return toNetworkMetrics(address, probe);
+    });
+  }
+
+  /**
+   * Turns the raw phase timings of a single-connection probe into a full metrics sample.
+   * The connect time stands in for ping, since raw sockets are not available to the JVM;
+   * on a reused keep-alive connection the request round trip does instead.
+   */
+  private NetworkMetrics toNetworkMetrics(String address, ProbeResult probe) {
+    MetricsResult result = new MetricsResult();
+    result.timeToFirstByte = probe.getTtfb();
+    double transferSeconds = probe.getTransferTime() / 1000.0;
+    result.throughput = transferSeconds > 0 ? probe.getBytesRead() / transferSeconds : 0;
+    result.downloadSpeed = (result.throughput * 8) / (1024 * 1024); // Mbps
+    result.uploadSpeed = currentUploadSpeed();
+    result.errorRate = probe.getStatusCode() >= 400 || probe.getBytesRead() == 0 ? 100.0 : 0.0;
+    result.packetLoss = 0;
+    double rtt = probe.getTcpTime() > 0 ? probe.getTcpTime() : probe.getTtfb();
+    result.minPing = rtt;
+    result.avgPing = rtt;
+    result.maxPing = rtt;
+    result.quality = result.errorRate > 0 ? 0 : calculateQuality(result);
+
+    double latency = probe.getTotalTime();
+    double jitter = recordLatency(address, latency);
+
+    if (latency > thresholdLatency) {
+      AlertService.showLatencyAlert(address, latency);
+    }
+    double mos = calculateMOS(latency, jitter, result.packetLoss);
+
+    NetworkMetrics.Builder metrics = NetworkMetrics.builder()
+        .successful(true)
+        .latency(latency)
+        .dnsTime(probe.getDnsTime())
+        .tcpTime(probe.getTcpTime())
+        .tlsTime(probe.getTlsTime())
+        .ttfb(result.timeToFirstByte)
+        .packetLoss(result.packetLoss)
+        .throughput(result.throughput)
+        .jitter(jitter)
+        .connectionQuality(result.quality)
+        .mos(mos)
+        .errorRate(result.errorRate)
+        .downloadSpeed(result.downloadSpeed)
+        .uploadSpeed(result.uploadSpeed)
+        .minPing(result.minPing)
+        .avgPing(result.avgPing)
+        .maxPing(result.maxPing)
+        .coldTtfb(probe.getColdTtfb())
+        .warmTtfb(probe.getWarmTtfb())
+        .connectionReuseRatio(probe.getReuseRatio() * 100);
+    applyLatencyPercentiles(address, metrics);
+    return metrics.build();
+  }
+
   private static class ConnectionTiming {
     double tcpTime;
     double tlsTime;
@@ -102,16 +266,17 @@ public class NetworkMetricsService {
     double minPing;
     double avgPing;
     double maxPing;
+    double pingStdDev;
   }
 
+  /**
+   * Warms the DNS cache for the host and reports its last uncached resolution time,
+   * which the cache measures on its own schedule.
+   */
   private double measureDNSTime(String hostname) {
-    long dnsStart = System.nanoTime();
     try {
-      InetAddress address = InetAddress.getByName(hostname);
-      if (address == null) {
-        throw new UnknownHostException("DNS resolution failed for " + hostname);
-      }
-      return Math.max((System.nanoTime() - dnsStart) / 1_000_000.0, 1.0);
+      dnsCache.resolve(hostname);
+      return dnsCache.getResolutionTime(hostname);
     } catch (Exception e) {
       return 0.0;
     }
@@ -125,8 +290,10 @@ public class NetworkMetricsService {
       socket.setTcpNoDelay(true);
       socket.setPerformancePreferences(0, 1, 0);
 
+      // Resolved before the clock starts, so a cache miss is not counted as TCP time
+      InetSocketAddress address = new InetSocketAddress(dnsCache.resolveFirst(url.getHost()), port);
       long tcpStart = System.nanoTime();
-      socket.connect(new InetSocketAddress(url.getHost(), port), TIMEOUT_MS);
+      socket.connect(address, TIMEOUT_MS);
       timing.tcpTime = (System.nanoTime() - tcpStart) / 1_000_000.0;
 
       if (url.getProtocol().equalsIgnoreCase("https")) {
@@ -155,6 +322,10 @@ public class NetworkMetricsService {
   }
 
   private MetricsResult measureHttpMetrics(URL url) {
+    if (bodyMode != BodyMode.FULL) {
+      return measureBoundedHttpMetrics(url);
+    }
+
     MetricsResult result = new MetricsResult();
     HttpURLConnection conn = null;
 
@@ -188,7 +359,6 @@ public class NetworkMetricsService {
         }
 
         calculateMetrics(result, bytesRead, errors, buffer.length, startRead);
-        measurePingStatistics(result, url.getHost());
       }
     } catch (Exception e) {
       result.quality = 0;
@@ -202,6 +372,58 @@ public class NetworkMetricsService {
     return result;
   }
 
+  /**
+   * HEAD, Range or budget-capped GET. The raw body is drained into a pooled direct buffer
+   * and never decompressed, so the error rate comes from the status code instead of read sizes.
+   */
+  private MetricsResult measureBoundedHttpMetrics(URL url) {
+    MetricsResult result = new MetricsResult();
+    HttpURLConnection conn = null;
+
+    try {
+      conn = (HttpURLConnection) url.openConnection();
+      conn.setRequestMethod(bodyMode == BodyMode.HEAD ? "HEAD" : "GET");
+      conn.setConnectTimeout(TIMEOUT_MS);
+      conn.setReadTimeout(TIMEOUT_MS);
+      conn.setRequestProperty("Accept-Encoding", "identity");
+      if (bodyMode == BodyMode.RANGE) {
+        conn.setRequestProperty("Range", "bytes=0-" + (bodyBudget - 1));
+      }
+
+      long ttfbStart = System.nanoTime();
+      conn.connect();
+      int status = conn.getResponseCode();
+      long headersReceived = System.nanoTime();
+      result.timeToFirstByte = (headersReceived - ttfbStart) / 1_000_000.0;
+
+      long bytesRead = 0;
+      if (bodyMode != BodyMode.HEAD && status < 400) {
+        BodyDrain drain = BodyDrain.acquire();
+        try (ReadableByteChannel body = Channels.newChannel(conn.getInputStream())) {
+          bytesRead = drain.drain(body, bodyMode.limit(bodyBudget));
+        } finally {
+          BodyDrain.release(drain);
+        }
+      }
+
+      double duration = (System.nanoTime() - headersReceived) / 1_000_000_000.0;
+      result.throughput = duration > 0 ? bytesRead / duration : 0;
+      result.downloadSpeed = (result.throughput * 8) / (1024 * 1024); // Mbps
+      result.uploadSpeed = currentUploadSpeed();
+      result.errorRate = status >= 400 ? 100.0 : 0.0;
+      result.quality = result.errorRate > 0 ? 0 : calculateQuality(result);
+    } catch (Exception e) {
+      result.quality = 0;
+      result.errorRate = 100;
+    } finally {
+      if (conn != null) {
+        conn.disconnect();
+      }
+    }
+
+    return result;
+  }
+
   private InputStream getInputStream(HttpURLConnection conn) throws IOException {
     String encoding = conn.getContentEncoding();
     InputStream inputStream = conn.getInputStream();
@@ -219,84 +441,45 @@ public class NetworkMetricsService {
     double duration = (System.nanoTime() - startRead) / 1_000_000_000.0;
     result.throughput = duration > 0 ? bytesRead / duration : 0;
     result.downloadSpeed = (result.throughput * 8) / (1024 * 1024); // Mbps
-    result.uploadSpeed = result.downloadSpeed * 0.3; // Estimate upload as 30% of download
+    result.uploadSpeed = currentUploadSpeed();
     result.errorRate = calculateErrorRate(bytesRead, errors, bufferSize);
     result.quality = calculateQuality(result);
   }
 
+  /**
+   * Latest measured upload speed, refreshed in the background once it goes stale.
+   * 0 when no upload endpoint is configured.
+   */
+  private double currentUploadSpeed() {
+    if (uploadProbe == null) {
+      return 0;
+    }
+    uploadProbe.refreshIfStale();
+    return uploadProbe.getLatestUploadSpeed();
+  }
+
   private double calculateErrorRate(long bytesRead, int errors, int bufferSize) {
     return bytesRead > 0 ? (errors * bufferSize * 100.0) / bytesRead : 100.0;
   }
 
-  private void measurePingStatistics(MetricsResult result, String host) {
-    List<PingResult> pings = new ArrayList<>();
-    int successfulPings = 0;
-    int totalAttempts = PING_COUNT;
-    boolean anyPingSucceeded = false;
-
-    for (int i = 0; i < totalAttempts; i++) {
-      try {
-        long start = System.nanoTime();
-        boolean reachable = InetAddress.getByName(host).isReachable(1000);
-        double pingTime = (System.nanoTime() - start) / 1_000_000.0;
-
-        if (reachable) {
-          anyPingSucceeded = true;
-          successfulPings++;
-          pings.add(new PingResult(true, pingTime));
-          System.out.println("Ping " + i + ": " + pingTime + " ms");
-        } else {
-          pings.add(new PingResult(false, 0));
-          System.out.println("Ping " + i + ": Failed");
-        }
-
-        // Only sleep between attempts if we haven't detected total failure
-        if (i < totalAttempts - 1 && anyPingSucceeded) {
-          Thread.sleep(50);
-        }
-
-      } catch (Exception e) {
-        System.err.println("Ping " + i + " error: " + e.getMessage());
-        pings.add(new PingResult(false, 0));
-      }
-
-      // If we've tried 3 times and none succeeded, assume total connection loss
-      if (i >= 2 && !anyPingSucceeded) {
-        result.packetLoss = 100.0;
-        result.minPing = 0.0;
-        result.maxPing = 0.0;
-        result.avgPing = 0.0;
-        return; // Exit early - no point continuing
-      }
-    }
-
-    // Calculate final statistics
-    result.packetLoss = ((totalAttempts - successfulPings) * 100.0) / totalAttempts;
-    System.out.println("Packet loss: " + result.packetLoss + "%");
-
-    if (successfulPings > 0) {
-      List<Double> successfulPingTimes = pings.stream()
-          .filter(p -> p.successful)
-          .map(p -> p.time)
-          .toList();
-
-      result.minPing = successfulPingTimes.stream().mapToDouble(d -> d).min().getAsDouble();
-      result.maxPing = successfulPingTimes.stream().mapToDouble(d -> d).max().getAsDouble();
-      result.avgPing = successfulPingTimes.stream().mapToDouble(d -> d).average().getAsDouble();
-    } else {
-      result.minPing = 0;
-      result.maxPing = 0;
-      result.avgPing = 0;
+  private CompletableFuture<PingStatistics> startPingBurst(URL url) {
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    try {
+      InetAddress address = dnsCache.resolveFirst(url.getHost());
+      return pingEngine.burst(address, port, PING_COUNT, PING_INTERVAL_MS, PING_BUDGET_MS);
+    } catch (UnknownHostException e) {
+      return CompletableFuture.completedFuture(PingStatistics.fromLostBurst(PING_COUNT));
     }
   }
 
-  private static class PingResult {
-    final boolean successful;
-    final double time;
-
-    PingResult(boolean successful, double time) {
-      this.successful = successful;
-      this.time = time;
+  private void applyPingStatistics(MetricsResult result, PingStatistics ping) {
+    result.packetLoss = ping.getPacketLoss();
+    result.minPing = ping.getMinPing();
+    result.avgPing = ping.getAvgPing();
+    result.maxPing = ping.getMaxPing();
+    result.pingStdDev = ping.getStdDev();
+    if (result.errorRate < 100) {
+      result.quality = calculateQuality(result);
     }
   }
 
@@ -330,28 +513,67 @@ public class NetworkMetricsService {
     return address;
   }
 
-  private void updateLatencyHistory(long latency) {
-    latencyHistory.offer(latency);
-    while (HISTORY_SIZE < latencyHistory.size()) {
-      latencyHistory.poll();
+  /**
+   * Records a sample in the target's own history and returns its updated jitter, so samples
+   * from different sites never feed each other's estimate.
+   */
+  private double recordLatency(String address, double latency) {
+    return targetStates.computeIfAbsent(address, k -> new TargetLatencyState()).record(latency);
+  }
+
+  private void applyLatencyPercentiles(String address, NetworkMetrics.Builder metrics) {
+    TargetLatencyState state = targetStates.get(address);
+    if (state == null) {
+      return;
     }
+    double[] values = percentileValues.get();
+    state.percentiles(PERCENTILES, values);
+    metrics.p50Latency(values[0])
+        .p90Latency(values[1])
+        .p99Latency(values[2])
+        .p999Latency(values[3]);
   }
 
-  private double calculateJitter() {
-    if (latencyHistory.size() < 2) return 0.0;
+  /**
+   * Latency distribution of one target over its rolling window. Empty for unknown targets.
+   */
+  public HistogramSnapshot getLatencySnapshot(String address) {
+    TargetLatencyState state = targetStates.get(address);
+    return state == null ? new HistogramSnapshot() : state.getHistogram().snapshot();
+  }
 
-    double sum = 0.0;
-    Long previous = null;
-    for (Long current : latencyHistory) {
-      if (previous != null) {
-        sum += Math.abs(current - previous);
-      }
-      previous = current;
+  /**
+   * Latency distribution across every monitored target over the rolling window.
+   */
+  public HistogramSnapshot getAggregateLatencySnapshot() {
+    HistogramSnapshot aggregate = new HistogramSnapshot();
+    for (TargetLatencyState state : targetStates.values()) {
+      aggregate.merge(state.getHistogram().snapshot());
     }
-    return sum / (latencyHistory.size() - 1);
+    return aggregate;
+  }
+
+  /**
+   * Drops the per-target state of a site that is no longer monitored.
+   */
+  public void forgetTarget(String address) {
+    targetStates.remove(address);
   }
 
   public void shutdown() {
+    dnsCache.close();
+    if (pingEngine != null) {
+      pingEngine.close();
+    }
+    if (nioEngine != null) {
+      nioEngine.close();
+    }
+    if (keepAliveProbe != null) {
+      keepAliveProbe.close();
+    }
+    if (uploadProbe != null) {
+      uploadProbe.close();
+    }
     executorService.shutdown();
     try {
       if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
@@ -0,0 +1,26 @@
+package com.uor.eng;
+
+/**
+ * Selects how {@link NetworkMetricsService} takes a sample.
+ * Chosen at startup with {@code -Dmonitor.probe.mode=<name>}.
+ */
+public enum ProbeMode {
+  /** Parallel DNS, connect and HTTP measurements on a small blocking thread pool. */
+  CLASSIC,
+  /** DNS, TCP, TLS, request and response timed back to back on one blocking connection. */
+  SINGLE_CONNECTION,
+  /** Requests sent over a bounded per-target pool of keep-alive connections. */
+  KEEP_ALIVE,
+  /** Non-blocking SocketChannel/SSLEngine probes driven by a few selector threads. */
+  NIO;
+
+  public static ProbeMode fromSystemProperty() {
+    String value = System.getProperty("monitor.probe.mode", CLASSIC.name());
+    try {
+      return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown probe mode '" + value + "', falling back to " + CLASSIC);
+      return CLASSIC;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package com.uor.eng;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Central fixed-rate scheduler for site probes, built on a hierarchical timer wheel.
+ *
+ * <p>Each site has its own interval and a random start offset, so sites added together do not
+ * probe in lockstep. Deadlines are computed from the previous deadline rather than from when the
+ * probe finished, so the period does not drift. A site is never probed twice at once: if its
+ * previous probe is still running when the next deadline comes up, that deadline is counted as
+ * missed and skipped.
+ */
+public class ProbeScheduler implements AutoCloseable {
+  private static final long TICK_MS = 10;
+  private static final int WHEEL_BITS = 8;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;  // 256 slots per level
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int LEVELS = 3;                     // 2.56s, 11min, 46h at 10ms ticks
+  private static final long MAX_DELAY_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+  private final ExecutorService executor;
+  private final Map<String, ScheduledProbe> probes = new ConcurrentHashMap<>();
+  private final Queue<ScheduledProbe> pending = new ConcurrentLinkedQueue<>();
+  private final Thread ticker;
+  private final long startNanos;
+  private final AtomicLong totalMissedDeadlines = new AtomicLong();
+  private volatile boolean running = true;
+
+  // Owned by the ticker thread
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final ArrayDeque<ScheduledProbe>[][] wheels = new ArrayDeque[LEVELS][WHEEL_SIZE];
+  private long currentTick = 0;
+
+  public ProbeScheduler(ExecutionMode executionMode) {
+    this(executionMode.newExecutor());
+    ticker.start();
+  }
+
+  /**
+   * A scheduler whose ticker is not started, so the caller moves the wheel with
+   * {@link #advanceTo(long)}. For tests.
+   */
+  ProbeScheduler(ExecutorService executor) {
+    for (int level = 0; level < LEVELS; level++) {
+      for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+        wheels[level][slot] = new ArrayDeque<>();
+      }
+    }
+    this.executor = executor;
+    this.startNanos = System.nanoTime();
+    this.ticker = new Thread(this::tickLoop, "probe-scheduler");
+    ticker.setDaemon(true);
+  }
+
+  /**
+   * Starts probing a site every {@code intervalMs}, after a random initial offset within one interval.
+   */
+  public void schedule(String siteAddress, MonitoringTask task, long intervalMs) {
+    long intervalTicks = Math.max(1, intervalMs / TICK_MS);
+    ScheduledProbe probe = new ScheduledProbe(siteAddress, task, intervalTicks);
+    ScheduledProbe previous = probes.put(siteAddress, probe);
+    if (previous != null) {
+      previous.cancelled = true;
+    }
+
+    long jitter = ThreadLocalRandom.current().nextLong(intervalTicks);
+    probe.deadlineTick = ticksSinceStart() + 1 + jitter;
+    pending.add(probe);
+  }
+
+  public void cancel(String siteAddress) {
+    ScheduledProbe probe = probes.remove(siteAddress);
+    if (probe != null) {
+      probe.cancelled = true;
+    }
+  }
+
+  public void cancelAll() {
+    probes.keySet().forEach(this::cancel);
+  }
+
+  /**
+   * Number of deadlines skipped for a site because its previous probe was still running
+   * or the scheduler could not keep up.
+   */
+  public long getMissedDeadlines(String siteAddress) {
+    ScheduledProbe probe = probes.get(siteAddress);
+    return probe == null ? 0 : probe.missedDeadlines.get();
+  }
+
+  public long getTotalMissedDeadlines() {
+    return totalMissedDeadlines.get();
+  }
+
+  private long ticksSinceStart() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / TICK_MS;
+  }
+
+  private void tickLoop() {
+    while (running) {
+      advanceTo(ticksSinceStart());
+
+      long nextTickNanos = startNanos + TimeUnit.MILLISECONDS.toNanos((currentTick + 1) * TICK_MS);
+      LockSupport.parkNanos(nextTickNanos - System.nanoTime());
+    }
+  }
+
+  /**
+   * Takes in newly scheduled probes and runs every tick up to {@code targetTick}. Ticker thread only.
+   */
+  void advanceTo(long targetTick) {
+    ScheduledProbe probe;
+    while ((probe = pending.poll()) != null) {
+      insert(probe);
+    }
+    while (currentTick < targetTick) {
+      advance();
+    }
+  }
+
+  long getCurrentTick() {
+    return currentTick;
+  }
+
+  private void insert(ScheduledProbe probe) {
+    if (probe.cancelled) {
+      return;
+    }
+    long delay = probe.deadlineTick - currentTick;
+    if (delay <= 0) {
+      dispatch(probe);
+      return;
+    }
+    if (delay > MAX_DELAY_TICKS) {
+      probe.deadlineTick = currentTick + MAX_DELAY_TICKS;
+      delay = MAX_DELAY_TICKS;
+    }
+
+    int level = 0;
+    while (delay >= (1L << (WHEEL_BITS * (level + 1)))) {
+      level++;
+    }
+    int slot = (int) (probe.deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+    wheels[level][slot].add(probe);
+  }
+
+  private void advance() {
+    currentTick++;
+
+    // Cascade coarser levels down when their slot boundary is reached, coarsest first
+    for (int level = LEVELS - 1; level > 0; level--) {
+      long levelMask = (1L << (WHEEL_BITS * level)) - 1;
+      if ((currentTick & levelMask) == 0) {
+        int slot = (int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        drain(wheels[level][slot]);
+      }
+    }
+
+    drain(wheels[0][(int) currentTick & WHEEL_MASK]);
+  }
+
+  private void drain(ArrayDeque<ScheduledProbe> slot) {
+    int size = slot.size();
+    for (int i = 0; i < size; i++) {
+      insert(slot.poll());
+    }
+  }
+
+  private void dispatch(ScheduledProbe probe) {
+    if (!probe.task.isActive()) {
+      probes.remove(probe.siteAddress, probe);
+      return;
+    }
+
+    if (probe.inFlight.compareAndSet(false, true)) {
+      try {
+        probe.task.runAsync(executor).whenComplete((ignored, error) -> probe.inFlight.set(false));
+      } catch (RuntimeException e) {
+        probe.inFlight.set(false);
+        System.err.println("Failed to start probe for " + probe.siteAddress + ": " + e.getMessage());
+      }
+    } else {
+      probe.missedDeadlines.incrementAndGet();
+      totalMissedDeadlines.incrementAndGet();
+    }
+
+    // Fixed rate: the next deadline follows the previous one, skipping any we already fell behind on
+    probe.deadlineTick += probe.intervalTicks;
+    if (probe.deadlineTick <= currentTick) {
+      long behind = (currentTick - probe.deadlineTick) / probe.intervalTicks + 1;
+      probe.deadlineTick += behind * probe.intervalTicks;
+      probe.missedDeadlines.addAndGet(behind);
+      totalMissedDeadlines.addAndGet(behind);
+    }
+    insert(probe);
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    cancelAll();
+    LockSupport.unpark(ticker);
+    executor.shutdown();
+  }
+
+  private static final class ScheduledProbe {
+    final String siteAddress;
+    final MonitoringTask task;
+    final long intervalTicks;
+    final AtomicBoolean inFlight = new AtomicBoolean();
+    final AtomicLong missedDeadlines = new AtomicLong();
+    volatile boolean cancelled;
+    long deadlineTick;
+
+    ScheduledProbe(String siteAddress, MonitoringTask task, long intervalTicks) {
+      this.siteAddress = siteAddress;
+      this.task = task;
+      this.intervalTicks = intervalTicks;
+    }
+  }
+}
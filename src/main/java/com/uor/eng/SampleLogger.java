@@ -0,0 +1,36 @@
+package com.uor.eng;
+
+import com.uor.eng.store.SampleListener;
+
+import java.io.PrintStream;
+import java.util.function.ToLongFunction;
+
+/**
+ * Prints one line per sample. The default sink of {@link MonitoringDaemon}. Lines of a site whose
+ * probes have missed deadlines end with the running count.
+ */
+public class SampleLogger implements SampleListener {
+  private final PrintStream out;
+  private final ToLongFunction<String> missedDeadlines;
+
+  public SampleLogger(PrintStream out) {
+    this(out, siteAddress -> 0);
+  }
+
+  public SampleLogger(PrintStream out, ToLongFunction<String> missedDeadlines) {
+    this.out = out;
+    this.missedDeadlines = missedDeadlines;
+  }
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    String line = metrics.isSuccessful()
+        ? String.format("%d %s latency=%.1fms ttfb=%.1fms jitter=%.2fms loss=%.2f%% p99=%.1fms",
+            timestampMillis, siteAddress, metrics.getLatency(), metrics.getTtfb(), metrics.getJitter(),
+            metrics.getPacketLoss(), metrics.getP99Latency())
+        : String.format("%d %s error=%s", timestampMillis, siteAddress, metrics.getErrorMessage());
+    // One println per sample, so lines from different probe threads do not interleave
+    long missed = missedDeadlines.applyAsLong(siteAddress);
+    out.println(missed > 0 ? line + " missed=" + missed : line);
+  }
+}
@@ -0,0 +1,21 @@
+package com.uor.eng;
+
+/**
+ * Selects how sites are scheduled. Chosen at startup with {@code -Dmonitor.scheduling.mode=loop|wheel}.
+ */
+public enum SchedulingMode {
+  /** One {@link MonitoringTask} loop per site that sleeps between samples. */
+  LOOP,
+  /** A shared {@link ProbeScheduler} timer wheel with per-site intervals. */
+  WHEEL;
+
+  public static SchedulingMode fromSystemProperty() {
+    String value = System.getProperty("monitor.scheduling.mode", LOOP.name());
+    try {
+      return valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown scheduling mode '" + value + "', falling back to " + LOOP);
+      return LOOP;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.uor.eng;
+
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ListCell;
+
+/**
+ * A recycled row of the site list. The {@code ListView} creates only as many cells as fit on
+ * screen and moves them between sites as the list scrolls, so the node count stays the same no
+ * matter how many sites are monitored.
+ *
+ * @see javafx.scene.control.ListView
+ */
+public class SiteCell extends ListCell<MonitoringSite> {
+  private final SiteView view = new SiteView();
+
+  public SiteCell() {
+    setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+  }
+
+  @Override
+  protected void updateItem(MonitoringSite site, boolean empty) {
+    super.updateItem(site, empty);
+    if (empty || site == null) {
+      view.unbind();
+      setGraphic(null);
+    } else {
+      view.bind(site);
+      setGraphic(view.getNode());
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.uor.eng;
+
+import com.uor.eng.store.SiteMetricsStore;
+
+/**
+ * What {@link MonitoringController} and {@link MonitoringTask} need from a monitored site.
+ * {@link MonitoringSite} is the JavaFX implementation; {@link HeadlessSite} has no UI at all.
+ */
+public interface SiteHandle {
+  String getSiteAddress();
+
+  boolean isRunning();
+
+  /**
+   * Receives every sample, on the probe thread.
+   */
+  void updateMetrics(NetworkMetrics metrics);
+
+  void stop();
+
+  default void setMonitoringTask(Runnable monitoringTask) {
+  }
+
+  /**
+   * Gives the site the store its samples are kept in, before it starts.
+   */
+  default void setStore(SiteMetricsStore store) {
+  }
+
+  /**
+   * Called when a site starts with samples already in the store, e.g. after a journal replay.
+   */
+  default void restoreHistory(SiteMetricsStore store) {
+  }
+}
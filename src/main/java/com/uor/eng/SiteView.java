@@ -0,0 +1,87 @@
+package com.uor.eng;
+
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
+
+/**
+ * The nodes that show one site: a Stop button, the metric labels and the chart. A view is not
+ * tied to a site; {@link SiteCell} rebinds it to whichever site scrolls into its row, so only
+ * visible sites have nodes at all.
+ */
+public class SiteView {
+  private final VBox rootLayout;
+  private final Button stopButton;
+  private final MetricsDisplay metricsDisplay;
+  private final ChartDisplay chartDisplay;
+  private MonitoringSite site;
+
+  public SiteView() {
+    this.stopButton = new Button("Stop");
+    stopButton.setOnAction(e -> {
+      if (site != null) {
+        stopButton.setDisable(true);
+        site.requestStop();
+      }
+    });
+    this.metricsDisplay = new MetricsDisplay();
+    this.chartDisplay = new ChartDisplay();
+
+    this.rootLayout = new VBox(10, stopButton, metricsDisplay.getGrid(), chartDisplay.getNode());
+  }
+
+  /**
+   * Shows {@code site}, replacing whatever was shown before. Called on the FX thread.
+   */
+  public void bind(MonitoringSite site) {
+    if (this.site == site) {
+      return;
+    }
+    unbind();
+    this.site = site;
+    site.attach(this);
+    stopButton.setDisable(!site.isRunning());
+    chartDisplay.setTitle("Metrics for " + site.getSiteAddress());
+    chartDisplay.show(site.getStore(), site.getPyramid());
+    showLatest();
+  }
+
+  /**
+   * Redraws everything from the bound site's data.
+   */
+  void redraw() {
+    chartDisplay.refresh();
+    showLatest();
+  }
+
+  private void showLatest() {
+    if (site.getLatest() != null) {
+      metricsDisplay.update(site.getLatest(), site.getMissedDeadlines());
+    } else {
+      metricsDisplay.clear();
+    }
+  }
+
+  /**
+   * Detaches from the current site, which from then on only keeps its data.
+   */
+  public void unbind() {
+    if (site != null) {
+      site.detach(this);
+      site = null;
+    }
+  }
+
+  /**
+   * Shows a new sample of the bound site. Called on the FX thread.
+   */
+  void show(NetworkMetrics metrics) {
+    metricsDisplay.update(metrics, site.getMissedDeadlines());
+    // The sample is already in the store the chart reads from
+    chartDisplay.refresh();
+  }
+
+  public Node getNode() {
+    return rootLayout;
+  }
+}
@@ -0,0 +1,108 @@
+package com.uor.eng.bench;
+
+import com.uor.eng.ExecutionMode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress benchmark comparing platform and virtual threads for the one-task-per-site model used by
+ * {@code MonitoringController}. Each simulated site blocks for a fake probe, then sleeps for the
+ * probe interval, just like {@code MonitoringTask.run}. It reports heap use, live platform threads
+ * and how late each task woke up relative to its intended schedule.
+ *
+ * <p>Usage: {@code ExecutionModeBenchmark [seconds] [siteCounts...]}, defaults to 10s and 1k/10k/50k.
+ * Run with a Java 21 runtime to exercise real virtual threads.
+ */
+public class ExecutionModeBenchmark {
+  private static final long INTERVAL_MS = 1000;
+  private static final long PROBE_MS = 20;
+
+  public static void main(String[] args) throws InterruptedException {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int[] siteCounts = args.length > 1
+        ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+        : new int[]{1_000, 10_000, 50_000};
+
+    System.out.printf("%-9s %7s %10s %10s %12s %12s %12s%n",
+        "mode", "sites", "heap MB", "threads", "delay p50", "delay p99", "delay max");
+    for (int sites : siteCounts) {
+      for (ExecutionMode mode : ExecutionMode.values()) {
+        run(mode, sites, seconds);
+      }
+    }
+  }
+
+  private static void run(ExecutionMode mode, int sites, int seconds) throws InterruptedException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    System.gc();
+    long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+    int samplesPerSite = (int) (seconds * 1000 / INTERVAL_MS) + 1;
+    long[][] delays = new long[sites][];
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    CountDownLatch started = new CountDownLatch(sites);
+    ExecutorService executor = mode.newExecutor();
+
+    try {
+      for (int i = 0; i < sites; i++) {
+        long[] siteDelays = new long[samplesPerSite];
+        delays[i] = siteDelays;
+        executor.submit(() -> simulateSite(siteDelays, deadline, started));
+      }
+    } catch (OutOfMemoryError e) {
+      executor.shutdownNow();
+      System.out.printf("%-9s %7d  failed to start threads: %s%n", mode, sites, e.getMessage());
+      return;
+    }
+
+    started.await();
+    // Sample resources halfway through, while every task is parked in its loop
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 2);
+    long heapUsed = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+    int liveThreads = threads.getThreadCount();
+
+    executor.shutdown();
+    executor.awaitTermination(seconds + 30L, TimeUnit.SECONDS);
+
+    long[] all = Arrays.stream(delays).flatMapToLong(Arrays::stream).filter(d -> d > 0).sorted().toArray();
+    System.out.printf("%-9s %7d %10.1f %10d %10.2fms %10.2fms %10.2fms%n",
+        mode, sites, heapUsed / (1024.0 * 1024.0), liveThreads,
+        percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+  }
+
+  private static void simulateSite(long[] delays, long deadline, CountDownLatch started) {
+    started.countDown();
+    int sample = 0;
+    long next = System.nanoTime();
+    try {
+      while (System.nanoTime() < deadline && sample < delays.length) {
+        // Fake probe: blocks like a socket read would
+        Thread.sleep(PROBE_MS);
+        next += TimeUnit.MILLISECONDS.toNanos(INTERVAL_MS);
+        long sleep = next - System.nanoTime();
+        if (sleep > 0) {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        }
+        // +1 keeps an on-time wake-up distinguishable from an unused slot
+        delays[sample++] = System.nanoTime() - next + 1;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+}
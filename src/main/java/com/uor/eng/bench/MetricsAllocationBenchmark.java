@@ -0,0 +1,101 @@
+package com.uor.eng.bench;
+
+import com.uor.eng.NetworkMetrics;
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.SiteMetricsStore;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the heap allocated per {@link NetworkMetrics} sample on each way of building one:
+ * the positional {@code success(...)} factory, a fresh builder per sample as the probes use, a
+ * builder reused across samples, and rebuilding samples from stored rows. Allocation is read from
+ * the HotSpot per-thread allocation counter around each timed loop, so it includes whatever the
+ * JIT did not manage to scalar-replace; the ideal is one sample object and nothing else.
+ *
+ * <p>Usage: {@code MetricsAllocationBenchmark [samples]}, defaults to 5,000,000 per case.
+ */
+public class MetricsAllocationBenchmark {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+  private static final int ROUNDS = 5;
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // Every sample is stored here, so it escapes the way a published sample does
+  private static final NetworkMetrics[] PUBLISHED = new NetworkMetrics[1024];
+
+  public static void main(String[] args) {
+    int samples = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    double[] inputs = new double[1024];
+    Random random = new Random(11);
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = 20 + random.nextDouble() * 80;
+    }
+    SiteMetricsStore store = new SiteMetricsStore("https://example.com", inputs.length);
+    double[] row = new double[COLUMNS.length];
+    for (int i = 0; i < inputs.length; i++) {
+      for (int c = 0; c < COLUMNS.length; c++) {
+        row[c] = inputs[(i + c) % inputs.length];
+      }
+      store.append(i * 1000L, row);
+    }
+    NetworkMetrics.Builder reused = NetworkMetrics.builder();
+
+    System.out.printf("%-22s %14s %14s%n", "case", "bytes/sample", "ns/sample");
+    run("success() factory", samples, i -> success(inputs, i));
+    run("fresh builder", samples, i -> fresh(inputs, i));
+    run("reused builder", samples, i -> reused(reused, inputs, i));
+    run("store.getMetrics", samples, i -> store.getMetrics(i & (inputs.length - 1)));
+    run("getMetrics(i, reused)", samples, i -> store.getMetrics(i & (inputs.length - 1), reused));
+    run("toMetrics(row)", samples, i -> MetricColumn.toMetrics(row));
+    run("toMetrics(row, reused)", samples, i -> MetricColumn.toMetrics(row, reused));
+  }
+
+  private static NetworkMetrics success(double[] inputs, int i) {
+    double v = inputs[i & (inputs.length - 1)];
+    return NetworkMetrics.success(v, 1, 2, 3, v / 2, 0, 1e6, 0.5, 99, 4.3, 0, 8, 0, v, v, v);
+  }
+
+  private static NetworkMetrics fresh(double[] inputs, int i) {
+    return fill(NetworkMetrics.builder(), inputs[i & (inputs.length - 1)]).build();
+  }
+
+  private static NetworkMetrics reused(NetworkMetrics.Builder builder, double[] inputs, int i) {
+    return fill(builder.reset(), inputs[i & (inputs.length - 1)]).build();
+  }
+
+  /**
+   * Sets every field, the way the keep-alive probe path does.
+   */
+  private static NetworkMetrics.Builder fill(NetworkMetrics.Builder builder, double v) {
+    return builder.successful(true)
+        .latency(v).dnsTime(1).tcpTime(2).tlsTime(3).ttfb(v / 2)
+        .packetLoss(0).throughput(1e6).jitter(0.5).connectionQuality(99).mos(4.3)
+        .errorRate(0).downloadSpeed(8).uploadSpeed(0)
+        .minPing(v).avgPing(v).maxPing(v).pingStdDev(0.1)
+        .p50Latency(v).p90Latency(v).p99Latency(v).p999Latency(v)
+        .coldTtfb(v).warmTtfb(v / 3).connectionReuseRatio(90);
+  }
+
+  private static void run(String name, int samples, IntFunction<NetworkMetrics> body) {
+    long thread = Thread.currentThread().getId();
+    long bestBytes = Long.MAX_VALUE;
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      for (int i = 0; i < samples; i++) {
+        PUBLISHED[i & (PUBLISHED.length - 1)] = body.apply(i);
+      }
+      long nanos = System.nanoTime() - start;
+      long bytes = THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+      // The first rounds warm the JIT up; the best round is the steady state
+      bestBytes = Math.min(bestBytes, bytes);
+      bestNanos = Math.min(bestNanos, nanos);
+    }
+    System.out.printf("%-22s %14.1f %14.1f%n", name, (double) bestBytes / samples, (double) bestNanos / samples);
+  }
+}
@@ -0,0 +1,103 @@
+package com.uor.eng.bench;
+
+import com.uor.eng.store.Aggregation;
+import com.uor.eng.store.CompressedStore;
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.MetricsQuery;
+import com.uor.eng.store.MetricsQueryEngine;
+import com.uor.eng.store.MetricsStore;
+import com.uor.eng.store.RollupEngine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures {@link MetricsQueryEngine} latency against the amount of history held. For each data
+ * size one site gets that many days of per-second samples in the raw ring, the rollups and a cold
+ * tier large enough to hold all of them. It then times a p99 TTFB query over the whole history,
+ * over one unaligned hour and over a day in hourly steps, and for comparison the same whole-range
+ * average over MOS, which has no rollups and so is a full scan of the cold tier. Beyond the
+ * two weeks the hour tier holds, the partial day at the start of the range falls back to the
+ * cold tier too, which is what dominates the whole-range time there.
+ *
+ * <p>Usage: {@code QueryBenchmark [days...]}, defaults to 1, 7 and 30. 30 days needs about 300 MB
+ * of heap.
+ */
+public class QueryBenchmark {
+  private static final String SITE = "https://example.com";
+  private static final int ROUNDS = 20;
+
+  public static void main(String[] args) {
+    int[] sizes = args.length > 0
+        ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+        : new int[]{1, 7, 30};
+
+    System.out.printf("%5s %10s %14s %14s %14s %14s%n",
+        "days", "samples", "p99 all", "p99 1h", "p99 24 steps", "raw scan all");
+    // Warm-up pass so the first size is not measured against the interpreter
+    run(1, false);
+    for (int days : sizes) {
+      run(days, true);
+    }
+  }
+
+  private static void run(int days, boolean report) {
+    long now = System.currentTimeMillis();
+    long start = now - days * 86_400_000L;
+    MetricsStore raw = new MetricsStore();
+    RollupEngine rollups = new RollupEngine();
+    CompressedStore cold = new CompressedStore(3600, days * 24 + 1, null);
+    MetricsQueryEngine engine = new MetricsQueryEngine(raw, rollups, cold);
+
+    Random random = new Random(7);
+    double[] row = new double[MetricColumn.values().length];
+    long samples = 0;
+    for (long t = start; t < now; t += 1000) {
+      double ttfb = 20 + Math.abs(random.nextGaussian()) * 10;
+      row[MetricColumn.LATENCY.ordinal()] = ttfb * 1.2;
+      row[MetricColumn.TTFB.ordinal()] = ttfb;
+      row[MetricColumn.MOS.ordinal()] = 4.4 - ttfb / 100;
+      raw.onRow(SITE, t, row);
+      rollups.onRow(SITE, t, row);
+      cold.onRow(SITE, t, row);
+      samples++;
+    }
+
+    MetricsQuery all = percentileQuery(start, now);
+    MetricsQuery hour = percentileQuery(now - 3_600_000 - 12_345, now - 12_345);
+    MetricsQuery stepped = percentileQuery(now - 86_400_000L, now);
+    stepped.setStepMillis(3_600_000);
+    MetricsQuery scan = new MetricsQuery(MetricColumn.MOS, Aggregation.AVG, start, now);
+
+    double[] micros = {time(engine, all), time(engine, hour), time(engine, stepped), time(engine, scan)};
+    if (report) {
+      System.out.printf("%5d %10d %12.1fus %12.1fus %12.1fus %12.1fus%n",
+          days, samples, micros[0], micros[1], micros[2], micros[3]);
+    }
+  }
+
+  private static MetricsQuery percentileQuery(long from, long to) {
+    MetricsQuery query = new MetricsQuery(MetricColumn.TTFB, Aggregation.PERCENTILE, from, to);
+    query.setPercentile(99);
+    query.setSites(List.of(SITE));
+    return query;
+  }
+
+  /**
+   * Best of {@value #ROUNDS} runs, in microseconds.
+   */
+  private static double time(MetricsQueryEngine engine, MetricsQuery query) {
+    long best = Long.MAX_VALUE;
+    double checksum = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      long begin = System.nanoTime();
+      checksum += engine.query(query).get(SITE).get(0).getValue();
+      best = Math.min(best, System.nanoTime() - begin);
+    }
+    if (Double.isNaN(checksum)) {
+      System.out.println("empty result for " + query);
+    }
+    return best / 1e3;
+  }
+}
@@ -0,0 +1,180 @@
+package com.uor.eng.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for text output that formats numbers itself instead of going through
+ * {@code String}, so once it has grown to size, writing into it allocates nothing. Only ASCII is
+ * written through the {@code CharSequence} methods; anything else must be passed pre-encoded.
+ */
+final class AsciiBuffer {
+  private static final long[] POWERS_OF_TEN = {
+      1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L
+  };
+  private static final int FRACTION_DIGITS = 6;
+  // Above this the fixed-point path would overflow a long
+  private static final double MAX_FIXED = 1e12;
+
+  private byte[] bytes;
+  private int length;
+
+  AsciiBuffer(int initialCapacity) {
+    this.bytes = new byte[initialCapacity];
+  }
+
+  int length() {
+    return length;
+  }
+
+  byte[] array() {
+    return bytes;
+  }
+
+  void clear() {
+    length = 0;
+  }
+
+  /**
+   * Drops everything before {@code offset}, keeping the rest at the start of the buffer.
+   */
+  void compact(int offset) {
+    System.arraycopy(bytes, offset, bytes, 0, length - offset);
+    length -= offset;
+  }
+
+  AsciiBuffer put(byte b) {
+    ensure(1);
+    bytes[length++] = b;
+    return this;
+  }
+
+  AsciiBuffer put(byte[] source) {
+    return put(source, 0, source.length);
+  }
+
+  AsciiBuffer put(byte[] source, int offset, int count) {
+    ensure(count);
+    System.arraycopy(source, offset, bytes, length, count);
+    length += count;
+    return this;
+  }
+
+  AsciiBuffer putAscii(CharSequence text) {
+    int count = text.length();
+    ensure(count);
+    for (int i = 0; i < count; i++) {
+      bytes[length++] = (byte) text.charAt(i);
+    }
+    return this;
+  }
+
+  /**
+   * Writes text as UTF-8.
+   */
+  AsciiBuffer putUtf8(CharSequence text) {
+    return putUtf8(text, 0, text.length());
+  }
+
+  /**
+   * Writes {@code text[start, end)} as UTF-8.
+   */
+  AsciiBuffer putUtf8(CharSequence text, int start, int end) {
+    ensure((end - start) * 3);
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        bytes[length++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[length++] = (byte) (0xC0 | c >> 6);
+        bytes[length++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+        bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+        bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+      } else {
+        bytes[length++] = (byte) (0xE0 | c >> 12);
+        bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+        bytes[length++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+    return this;
+  }
+
+  AsciiBuffer putLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      return putAscii("-9223372036854775808");
+    }
+    ensure(20);
+    if (value < 0) {
+      bytes[length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    for (int i = length + digits - 1; i >= length; i--) {
+      bytes[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += digits;
+    return this;
+  }
+
+  /**
+   * Writes a double with up to six decimals, trailing zeros trimmed, and NaN/+Inf/-Inf as
+   * OpenMetrics spells them. Magnitudes outside the fixed-point range fall back to
+   * {@link Double#toString}, which allocates.
+   */
+  AsciiBuffer putDouble(double value) {
+    if (Double.isNaN(value)) {
+      return putAscii("NaN");
+    }
+    if (Double.isInfinite(value)) {
+      return putAscii(value > 0 ? "+Inf" : "-Inf");
+    }
+    double magnitude = Math.abs(value);
+    if (magnitude >= MAX_FIXED) {
+      return putAscii(Double.toString(value));
+    }
+    long scaled = Math.round(magnitude * POWERS_OF_TEN[FRACTION_DIGITS]);
+    if (scaled == 0) {
+      return magnitude == 0 ? put((byte) '0') : putAscii(Double.toString(value));
+    }
+    if (value < 0) {
+      put((byte) '-');
+    }
+    long whole = scaled / POWERS_OF_TEN[FRACTION_DIGITS];
+    long fraction = scaled % POWERS_OF_TEN[FRACTION_DIGITS];
+    putLong(whole);
+    if (fraction != 0) {
+      int digits = FRACTION_DIGITS;
+      while (fraction % 10 == 0) {
+        fraction /= 10;
+        digits--;
+      }
+      ensure(digits + 1);
+      bytes[length++] = '.';
+      for (int i = length + digits - 1; i >= length; i--) {
+        bytes[i] = (byte) ('0' + fraction % 10);
+        fraction /= 10;
+      }
+      length += digits;
+    }
+    return this;
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, length);
+  }
+
+  private void ensure(int extra) {
+    if (length + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.uor.eng.export;
+
+import com.uor.eng.store.MetricColumn;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Line formats of {@link SampleExporter}. Chosen with {@code -Dmonitor.export.format=ndjson|csv}.
+ * Both name the columns after {@link MetricColumn} in lower case and write a failed sample with
+ * its error and no values.
+ */
+public enum ExportFormat {
+  /**
+   * One JSON object per line: {@code {"site":..,"ts":..,"ok":true,"latency":..,...}}.
+   */
+  NDJSON {
+    @Override
+    byte[] encodeSite(String siteAddress) {
+      AsciiBuffer out = new AsciiBuffer(siteAddress.length() + 16);
+      out.putAscii("{\"site\":");
+      putJsonString(out, siteAddress);
+      out.putAscii(",\"ts\":");
+      return copy(out);
+    }
+
+    @Override
+    void writeHeader(AsciiBuffer out) {
+    }
+
+    @Override
+    void encode(AsciiBuffer out, byte[] site, long timestampMillis, boolean successful, String error, double[] values) {
+      out.put(site).putLong(timestampMillis);
+      if (successful) {
+        out.put(JSON_OK);
+        for (int c = 0; c < COLUMNS.length; c++) {
+          out.put(JSON_KEYS[c]);
+          if (Double.isFinite(values[c])) {
+            out.putDouble(values[c]);
+          } else {
+            out.putAscii("null");
+          }
+        }
+      } else {
+        out.putAscii(",\"ok\":false,\"error\":");
+        putJsonString(out, error == null ? "" : error);
+      }
+      out.putAscii("}\n");
+    }
+  },
+
+  /**
+   * RFC 4180 CSV with a header row: {@code site,ts,ok,error,latency,...}.
+   */
+  CSV {
+    @Override
+    byte[] encodeSite(String siteAddress) {
+      AsciiBuffer out = new AsciiBuffer(siteAddress.length() + 8);
+      putCsvField(out, siteAddress);
+      out.put((byte) ',');
+      return copy(out);
+    }
+
+    @Override
+    void writeHeader(AsciiBuffer out) {
+      out.putAscii("site,ts,ok,error");
+      for (MetricColumn column : COLUMNS) {
+        out.put((byte) ',').putAscii(column.name().toLowerCase(Locale.ROOT));
+      }
+      out.put((byte) '\n');
+    }
+
+    @Override
+    void encode(AsciiBuffer out, byte[] site, long timestampMillis, boolean successful, String error, double[] values) {
+      out.put(site).putLong(timestampMillis);
+      if (successful) {
+        out.putAscii(",true,");
+        for (int c = 0; c < COLUMNS.length; c++) {
+          out.put((byte) ',');
+          if (Double.isFinite(values[c])) {
+            out.putDouble(values[c]);
+          }
+        }
+      } else {
+        out.putAscii(",false,");
+        putCsvField(out, error == null ? "" : error);
+        for (int c = 0; c < COLUMNS.length; c++) {
+          out.put((byte) ',');
+        }
+      }
+      out.put((byte) '\n');
+    }
+  };
+
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+  private static final byte[] JSON_OK = ",\"ok\":true".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[][] JSON_KEYS = new byte[COLUMNS.length][];
+
+  static {
+    for (int c = 0; c < COLUMNS.length; c++) {
+      JSON_KEYS[c] = (",\"" + COLUMNS[c].name().toLowerCase(Locale.ROOT) + "\":").getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  /**
+   * Pre-encodes the start of every line for a site, so it is escaped once rather than per sample.
+   */
+  abstract byte[] encodeSite(String siteAddress);
+
+  /**
+   * Writes what goes at the start of every new output, if anything.
+   */
+  abstract void writeHeader(AsciiBuffer out);
+
+  /**
+   * Writes one sample as a complete line. {@code values} are in {@link MetricColumn} order.
+   */
+  abstract void encode(AsciiBuffer out, byte[] site, long timestampMillis, boolean successful, String error,
+                       double[] values);
+
+  public static ExportFormat fromSystemProperty() {
+    String value = System.getProperty("monitor.export.format", NDJSON.name());
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown export format '" + value + "', falling back to " + NDJSON);
+      return NDJSON;
+    }
+  }
+
+  private static byte[] copy(AsciiBuffer out) {
+    byte[] bytes = new byte[out.length()];
+    System.arraycopy(out.array(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static void putJsonString(AsciiBuffer out, String text) {
+    out.put((byte) '"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.put((byte) '\\').put((byte) c);
+      } else if (c < 0x20 || c >= 0x7F) {
+        out.putAscii("\\u");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+          out.put((byte) Character.forDigit(c >> shift & 0xF, 16));
+        }
+      } else {
+        out.put((byte) c);
+      }
+    }
+    out.put((byte) '"');
+  }
+
+  private static void putCsvField(AsciiBuffer out, String text) {
+    boolean quote = false;
+    for (int i = 0; i < text.length() && !quote; i++) {
+      char c = text.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      out.putUtf8(text);
+      return;
+    }
+    out.put((byte) '"');
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '"') {
+        out.putUtf8(text, start, i + 1).put((byte) '"');
+        start = i + 1;
+      }
+    }
+    out.putUtf8(text, start, text.length()).put((byte) '"');
+  }
+}
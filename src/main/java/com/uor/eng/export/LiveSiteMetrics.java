@@ -0,0 +1,98 @@
+package com.uor.eng.export;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Latest values and latency histogram of one site, written by its probe thread and read by the
+ * scraper under a sequence lock: the writer bumps the version to odd, writes, and bumps it back
+ * to even; the reader copies everything and retries if the version moved. The writer never
+ * waits for the reader. Missed deadlines are kept by the scheduler and only read at scrape time.
+ */
+final class LiveSiteMetrics {
+  final byte[] label;
+  private final LongSupplier missedDeadlines;
+  private final AtomicLong version = new AtomicLong();
+  private final double[] values;
+  private final long[] bucketCounts;
+  private double latencySum;
+  private long samples;
+  private long failures;
+  private boolean up;
+  private long lastTimestampMillis;
+
+  // Scraper-side copy, only touched by the scraping thread
+  final double[] scrapedValues;
+  final long[] scrapedBuckets;
+  double scrapedLatencySum;
+  long scrapedSamples;
+  long scrapedFailures;
+  long scrapedMissedDeadlines;
+  boolean scrapedUp;
+  long scrapedTimestampMillis;
+
+  LiveSiteMetrics(String siteAddress, int gauges, int buckets, LongSupplier missedDeadlines) {
+    this.label = ("site=\"" + escape(siteAddress) + "\"").getBytes(StandardCharsets.UTF_8);
+    this.missedDeadlines = missedDeadlines;
+    this.values = new double[gauges];
+    this.bucketCounts = new long[buckets];
+    this.scrapedValues = new double[gauges];
+    this.scrapedBuckets = new long[buckets];
+    Arrays.fill(values, Double.NaN);
+  }
+
+  /**
+   * Records a sample. Successful samples replace the gauges; failed ones only count and mark the
+   * site down, so the gauges keep their last good values.
+   */
+  synchronized void record(long timestampMillis, NetworkMetrics metrics, double[] gauges, int bucket) {
+    long v = version.get();
+    version.setOpaque(v + 1);
+    VarHandle.storeStoreFence();
+    samples++;
+    lastTimestampMillis = timestampMillis;
+    up = metrics.isSuccessful();
+    if (up) {
+      System.arraycopy(gauges, 0, values, 0, values.length);
+      bucketCounts[bucket]++;
+      latencySum += metrics.getLatency() / 1000.0;
+    } else {
+      failures++;
+    }
+    version.setRelease(v + 2);
+  }
+
+  /**
+   * Copies the live values into the scraped fields.
+   */
+  void snapshot() {
+    scrapedMissedDeadlines = missedDeadlines.getAsLong();
+    while (true) {
+      long before = version.getAcquire();
+      if ((before & 1) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      System.arraycopy(values, 0, scrapedValues, 0, values.length);
+      System.arraycopy(bucketCounts, 0, scrapedBuckets, 0, bucketCounts.length);
+      scrapedLatencySum = latencySum;
+      scrapedSamples = samples;
+      scrapedFailures = failures;
+      scrapedUp = up;
+      scrapedTimestampMillis = lastTimestampMillis;
+      VarHandle.loadLoadFence();
+      if (version.getAcquire() == before) {
+        return;
+      }
+    }
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
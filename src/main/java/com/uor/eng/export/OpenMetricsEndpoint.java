@@ -0,0 +1,342 @@
+package com.uor.eng.export;
+
+import com.uor.eng.NetworkMetrics;
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.SampleListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Embedded scrape endpoint serving the latest sample of every site in OpenMetrics text format
+ * at {@code /metrics}: one gauge family per measured value in base units (seconds, ratios, bits
+ * or bytes per second), a latency histogram, sample, failure and missed-deadline counters, an up
+ * gauge and the time of the last sample.
+ *
+ * <p>Probe threads only write into their site's preallocated slots (see {@link LiveSiteMetrics}),
+ * so a scrape never blocks them. Scrapes are served one at a time on a single thread that
+ * renders into a reused buffer with its own number formatting, so once the buffer has grown to
+ * fit, a scrape allocates little beyond the socket itself, however many sites there are. After
+ * a failed sample the gauges keep their last good values and {@code network_probe_up} drops to 0.
+ *
+ * <p>Enabled with {@code -Dmonitor.metrics.port=<port>} (and optionally
+ * {@code monitor.metrics.host}); try it with {@code curl http://localhost:<port>/metrics}.
+ */
+public class OpenMetricsEndpoint implements SampleListener, AutoCloseable {
+  private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+  private static final int READ_TIMEOUT_MS = 5000;
+  private static final int MAX_REQUEST_BYTES = 8192;
+
+  // The speed columns are in bits / 1024 / 1024 per second, not megabits
+  private static final double MEBIBIT = 1024 * 1024;
+
+  private static final Gauge[] GAUGES = {
+      new Gauge("network_latency_seconds", "Total probe latency", MetricColumn.LATENCY, 0.001),
+      new Gauge("network_dns_seconds", "DNS resolution time", MetricColumn.DNS_TIME, 0.001),
+      new Gauge("network_tcp_connect_seconds", "TCP connect time", MetricColumn.TCP_TIME, 0.001),
+      new Gauge("network_tls_handshake_seconds", "TLS handshake time", MetricColumn.TLS_TIME, 0.001),
+      new Gauge("network_ttfb_seconds", "Time to first byte", MetricColumn.TTFB, 0.001),
+      new Gauge("network_jitter_seconds", "Latency jitter (RFC 3550)", MetricColumn.JITTER, 0.001),
+      new Gauge("network_packet_loss_ratio", "Ping packet loss", MetricColumn.PACKET_LOSS, 0.01),
+      new Gauge("network_error_ratio", "Error rate", MetricColumn.ERROR_RATE, 0.01),
+      new Gauge("network_connection_quality_ratio", "Connection quality score", MetricColumn.CONNECTION_QUALITY, 0.01),
+      new Gauge("network_mos", "Mean opinion score", MetricColumn.MOS, 1),
+      new Gauge("network_throughput_bytes_per_second", "Response throughput", MetricColumn.THROUGHPUT, 1),
+      new Gauge("network_download_bits_per_second", "Download speed", MetricColumn.DOWNLOAD_SPEED, MEBIBIT),
+      new Gauge("network_upload_bits_per_second", "Upload speed", MetricColumn.UPLOAD_SPEED, MEBIBIT),
+      new Gauge("network_ping_seconds", "Average ping round trip", MetricColumn.AVG_PING, 0.001),
+  };
+  // Upper bounds in seconds; the last bucket is +Inf
+  private static final double[] LATENCY_BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+  private static final byte[][] LATENCY_BOUND_LABELS = new byte[LATENCY_BOUNDS.length + 1][];
+  private static final byte[] HISTOGRAM_NAME = ascii("network_probe_latency_seconds");
+  private static final byte[] HISTOGRAM_HEADER = ascii(
+      "# TYPE network_probe_latency_seconds histogram\n"
+          + "# UNIT network_probe_latency_seconds seconds\n"
+          + "# HELP network_probe_latency_seconds Probe latency distribution\n");
+  private static final byte[] COUNTER_HEADERS = ascii(
+      "# TYPE network_probe_samples counter\n# HELP network_probe_samples Samples taken\n");
+  private static final byte[] FAILURE_HEADERS = ascii(
+      "# TYPE network_probe_failures counter\n# HELP network_probe_failures Failed samples\n");
+  private static final byte[] MISSED_HEADERS = ascii(
+      "# TYPE network_probe_missed_deadlines counter\n"
+          + "# HELP network_probe_missed_deadlines Probe deadlines skipped because the previous probe overran\n");
+  private static final byte[] UP_HEADERS = ascii(
+      "# TYPE network_probe_up gauge\n# HELP network_probe_up Whether the last sample succeeded\n");
+  private static final byte[] TIMESTAMP_HEADERS = ascii(
+      "# TYPE network_probe_last_sample_timestamp_seconds gauge\n"
+          + "# UNIT network_probe_last_sample_timestamp_seconds seconds\n"
+          + "# HELP network_probe_last_sample_timestamp_seconds Time of the last sample\n");
+
+  static {
+    for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+      LATENCY_BOUND_LABELS[i] = ascii(",le=\"" + LATENCY_BOUNDS[i] + "\"} ");
+    }
+    LATENCY_BOUND_LABELS[LATENCY_BOUNDS.length] = ascii(",le=\"+Inf\"} ");
+  }
+
+  private final Map<String, LiveSiteMetrics> sites = new ConcurrentHashMap<>();
+  private volatile LiveSiteMetrics[] siteArray = new LiveSiteMetrics[0];
+  private final ServerSocket server;
+  private final Thread acceptor;
+  private final AsciiBuffer body = new AsciiBuffer(64 * 1024);
+  private final AsciiBuffer head = new AsciiBuffer(256);
+  private final byte[] request = new byte[MAX_REQUEST_BYTES];
+  // Only used on the probe thread that calls onSample for a site, one per thread
+  private final ThreadLocal<double[]> gaugeScratch = ThreadLocal.withInitial(() -> new double[GAUGES.length]);
+
+  public OpenMetricsEndpoint(InetSocketAddress address) throws IOException {
+    this.server = new ServerSocket();
+    server.setReuseAddress(true);
+    server.bind(address);
+    this.acceptor = new Thread(this::serveLoop, "metrics-endpoint");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * Starts the endpoint on {@code monitor.metrics.port}, or returns null when it is not set or
+   * the port cannot be bound.
+   */
+  public static OpenMetricsEndpoint fromSystemProperties() {
+    Integer port = Integer.getInteger("monitor.metrics.port");
+    if (port == null) {
+      return null;
+    }
+    String host = System.getProperty("monitor.metrics.host");
+    try {
+      InetSocketAddress address = host == null || host.isBlank()
+          ? new InetSocketAddress(port)
+          : new InetSocketAddress(InetAddress.getByName(host.trim()), port);
+      OpenMetricsEndpoint endpoint = new OpenMetricsEndpoint(address);
+      System.out.println("Serving OpenMetrics on " + address + "/metrics");
+      return endpoint;
+    } catch (IOException e) {
+      System.err.println("Cannot start metrics endpoint on port " + port + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Starts exporting a site. Samples for sites that were never registered, or were removed, are
+   * dropped.
+   */
+  public void register(String siteAddress) {
+    register(siteAddress, () -> 0);
+  }
+
+  /**
+   * Starts exporting a site, reading its missed deadlines from {@code missedDeadlines} on every
+   * scrape.
+   */
+  public void register(String siteAddress, LongSupplier missedDeadlines) {
+    LiveSiteMetrics metrics = new LiveSiteMetrics(
+        siteAddress, GAUGES.length, LATENCY_BOUND_LABELS.length, missedDeadlines);
+    // Publish only once the site is in the map, or the new array would miss it
+    if (sites.putIfAbsent(siteAddress, metrics) == null) {
+      publishSites();
+    }
+  }
+
+  public void remove(String siteAddress) {
+    if (sites.remove(siteAddress) != null) {
+      publishSites();
+    }
+  }
+
+  private synchronized void publishSites() {
+    siteArray = sites.values().toArray(new LiveSiteMetrics[0]);
+  }
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    LiveSiteMetrics site = sites.get(siteAddress);
+    if (site == null) {
+      return;
+    }
+    double[] gauges = gaugeScratch.get();
+    int bucket = LATENCY_BOUNDS.length;
+    if (metrics.isSuccessful()) {
+      for (int g = 0; g < GAUGES.length; g++) {
+        gauges[g] = GAUGES[g].column.extract(metrics) * GAUGES[g].scale;
+      }
+      double seconds = metrics.getLatency() / 1000.0;
+      for (int b = 0; b < LATENCY_BOUNDS.length; b++) {
+        if (seconds <= LATENCY_BOUNDS[b]) {
+          bucket = b;
+          break;
+        }
+      }
+    }
+    site.record(timestampMillis, metrics, gauges, bucket);
+  }
+
+  /**
+   * Renders every site into {@code out}, which is cleared first.
+   */
+  void render(AsciiBuffer out) {
+    out.clear();
+    LiveSiteMetrics[] current = siteArray;
+    for (LiveSiteMetrics site : current) {
+      site.snapshot();
+    }
+    for (int g = 0; g < GAUGES.length; g++) {
+      Gauge gauge = GAUGES[g];
+      out.put(gauge.headers);
+      for (LiveSiteMetrics site : current) {
+        out.put(gauge.name).put((byte) '{').put(site.label).put((byte) '}').put((byte) ' ')
+            .putDouble(site.scrapedValues[g]).put((byte) '\n');
+      }
+    }
+
+    byte[] name = HISTOGRAM_NAME;
+    out.put(HISTOGRAM_HEADER);
+    for (LiveSiteMetrics site : current) {
+      long cumulative = 0;
+      for (int b = 0; b < LATENCY_BOUND_LABELS.length; b++) {
+        cumulative += site.scrapedBuckets[b];
+        out.put(name).putAscii("_bucket{").put(site.label).put(LATENCY_BOUND_LABELS[b])
+            .putLong(cumulative).put((byte) '\n');
+      }
+      out.put(name).putAscii("_count{").put(site.label).putAscii("} ").putLong(cumulative).put((byte) '\n');
+      out.put(name).putAscii("_sum{").put(site.label).putAscii("} ").putDouble(site.scrapedLatencySum).put((byte) '\n');
+    }
+
+    out.put(COUNTER_HEADERS);
+    for (LiveSiteMetrics site : current) {
+      out.putAscii("network_probe_samples_total{").put(site.label).putAscii("} ")
+          .putLong(site.scrapedSamples).put((byte) '\n');
+    }
+    out.put(FAILURE_HEADERS);
+    for (LiveSiteMetrics site : current) {
+      out.putAscii("network_probe_failures_total{").put(site.label).putAscii("} ")
+          .putLong(site.scrapedFailures).put((byte) '\n');
+    }
+    out.put(MISSED_HEADERS);
+    for (LiveSiteMetrics site : current) {
+      out.putAscii("network_probe_missed_deadlines_total{").put(site.label).putAscii("} ")
+          .putLong(site.scrapedMissedDeadlines).put((byte) '\n');
+    }
+    out.put(UP_HEADERS);
+    for (LiveSiteMetrics site : current) {
+      out.putAscii("network_probe_up{").put(site.label).putAscii("} ")
+          .put((byte) (site.scrapedUp ? '1' : '0')).put((byte) '\n');
+    }
+    out.put(TIMESTAMP_HEADERS);
+    for (LiveSiteMetrics site : current) {
+      out.putAscii("network_probe_last_sample_timestamp_seconds{").put(site.label).putAscii("} ")
+          .putDouble(site.scrapedTimestampMillis / 1000.0).put((byte) '\n');
+    }
+    out.putAscii("# EOF\n");
+  }
+
+  private void serveLoop() {
+    while (!server.isClosed()) {
+      try (Socket client = server.accept()) {
+        client.setSoTimeout(READ_TIMEOUT_MS);
+        serve(client);
+      } catch (SocketException e) {
+        if (server.isClosed()) {
+          return;
+        }
+        System.err.println("Metrics endpoint connection failed: " + e.getMessage());
+      } catch (IOException e) {
+        System.err.println("Metrics endpoint connection failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void serve(Socket client) throws IOException {
+    InputStream in = client.getInputStream();
+    int read = 0;
+    while (read < request.length && !headersComplete(read)) {
+      int n = in.read(request, read, request.length - read);
+      if (n < 0) {
+        return;
+      }
+      read += n;
+    }
+    OutputStream out = client.getOutputStream();
+    head.clear();
+    if (!startsWith(read, "GET ")) {
+      head.putAscii("HTTP/1.1 405 Method Not Allowed\r\nAllow: GET\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+    } else if (!startsWith(read, "GET /metrics ") && !startsWith(read, "GET /metrics?")) {
+      head.putAscii("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+    } else {
+      render(body);
+      head.putAscii("HTTP/1.1 200 OK\r\nContent-Type: ").putAscii(CONTENT_TYPE)
+          .putAscii("\r\nContent-Length: ").putLong(body.length())
+          .putAscii("\r\nConnection: close\r\n\r\n");
+      head.writeTo(out);
+      body.writeTo(out);
+      out.flush();
+      return;
+    }
+    head.writeTo(out);
+    out.flush();
+  }
+
+  private boolean headersComplete(int read) {
+    for (int i = 3; i < read; i++) {
+      if (request[i] == '\n' && request[i - 1] == '\r' && request[i - 2] == '\n' && request[i - 3] == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean startsWith(int read, String prefix) {
+    if (read < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (request[i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] ascii(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public void close() {
+    try {
+      server.close();
+    } catch (IOException e) {
+      System.err.println("Closing metrics endpoint failed: " + e.getMessage());
+    }
+  }
+
+  private static final class Gauge {
+    final byte[] name;
+    final byte[] headers;
+    final MetricColumn column;
+    final double scale;
+
+    Gauge(String name, String help, MetricColumn column, double scale) {
+      this.name = ascii(name);
+      String unit = name.endsWith("_seconds") ? "# UNIT " + name + " seconds\n"
+          : name.endsWith("_ratio") ? "# UNIT " + name + " ratio\n" : "";
+      this.headers = ascii("# TYPE " + name + " gauge\n" + unit + "# HELP " + name + " " + help + "\n");
+      this.column = column;
+      this.scale = scale;
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package com.uor.eng.export;
+
+import com.uor.eng.NetworkMetrics;
+import com.uor.eng.store.MetricColumn;
+import com.uor.eng.store.SampleListener;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Streams every sample as NDJSON or CSV lines to a file, a named pipe, stdout or a TCP socket.
+ *
+ * <p>Probe threads copy each sample into the next slot of a preallocated ring and return; they
+ * never wait for the output. A single writer thread takes every filled slot at once, encodes
+ * them with {@link ExportFormat} straight into a reused buffer, and writes and flushes the batch
+ * in one go (group commit). It waits up to {@code monitor.export.linger.ms} (50) for a batch of
+ * {@value #GROUP_COMMIT_SAMPLES} samples to build up before flushing. When the consumer is slower than the probes, the blocked write holds the
+ * writer, the ring fills, and from then on new samples are dropped and counted until it drains:
+ * the consumer sets the pace and the probes are never stalled. If the output fails, the writer
+ * reopens the target with backoff and carries on after the last chunk (up to 256 KB) it fully
+ * handed over. The chunk being written when the output failed may have partly arrived and is sent
+ * again, so delivery is at-least-once for that chunk only. A file whose last line was cut short by
+ * the failure gets a line break first, so the rest of the file still parses; over a socket or a
+ * pipe a torn line is not repaired.
+ *
+ * <p>Enabled with {@code -Dmonitor.export.target=<path>|-|tcp://host:port}; see also
+ * {@code monitor.export.format} and {@code monitor.export.buffer} (ring slots, 65536).
+ */
+public class SampleExporter implements SampleListener, AutoCloseable {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+  private static final int DEFAULT_CAPACITY = 65_536;
+  private static final long DEFAULT_LINGER_MS = 50;
+  private static final int FLUSH_BYTES = 256 * 1024;
+  private static final int GROUP_COMMIT_SAMPLES = 1024;
+  private static final long MAX_BACKOFF_MS = 30_000;
+  private static final long DROP_REPORT_INTERVAL_MS = 10_000;
+  private static final long CLOSE_TIMEOUT_MS = 10_000;
+  // Entries for sites that are no longer monitored are only dropped by clearing the whole cache
+  private static final int MAX_ENCODED_SITES = 16_384;
+
+  private final String target;
+  private final ExportFormat format;
+  private final long lingerNanos;
+  private final int capacity;
+
+  // Ring of samples; slots [head, tail) are filled. Guarded by lock, except that the writer reads
+  // the slots it has taken without it, since producers never touch them until head moves on.
+  private final long[] timestamps;
+  private final String[] sites;
+  private final boolean[] successful;
+  private final String[] errors;
+  private final double[][] values;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private long head;
+  private long tail;
+
+  private final AtomicLong exported = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Map<String, byte[]> encodedSites = new HashMap<>();
+  private final Function<String, byte[]> siteEncoder;
+  private final AsciiBuffer buffer = new AsciiBuffer(FLUSH_BYTES + 4096);
+  private final Thread writer;
+  private OutputStream out;
+  // Slots before this are written out, even if the rest of their batch failed
+  private long written;
+  private volatile boolean running = true;
+
+  public SampleExporter(String target, ExportFormat format, int capacity, long lingerMs) {
+    this.target = target;
+    this.format = format;
+    this.capacity = capacity;
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    this.siteEncoder = format::encodeSite;
+    this.timestamps = new long[capacity];
+    this.sites = new String[capacity];
+    this.successful = new boolean[capacity];
+    this.errors = new String[capacity];
+    this.values = new double[capacity][COLUMNS.length];
+    this.writer = new Thread(this::writeLoop, "sample-exporter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Builds an exporter for {@code monitor.export.target}, or returns null when it is not set.
+   */
+  public static SampleExporter fromSystemProperties() {
+    String target = System.getProperty("monitor.export.target");
+    if (target == null || target.isBlank()) {
+      return null;
+    }
+    return new SampleExporter(target.trim(), ExportFormat.fromSystemProperty(),
+        Math.max(1, Integer.getInteger("monitor.export.buffer", DEFAULT_CAPACITY)),
+        Math.max(0, Long.getLong("monitor.export.linger.ms", DEFAULT_LINGER_MS)));
+  }
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    lock.lock();
+    try {
+      if (tail - head == capacity) {
+        dropped.incrementAndGet();
+        return;
+      }
+      int slot = (int) (tail % capacity);
+      timestamps[slot] = timestampMillis;
+      sites[slot] = siteAddress;
+      boolean ok = metrics.isSuccessful();
+      successful[slot] = ok;
+      errors[slot] = ok ? null : metrics.getErrorMessage();
+      if (ok) {
+        double[] row = values[slot];
+        for (int c = 0; c < COLUMNS.length; c++) {
+          row[c] = COLUMNS[c].extract(metrics);
+        }
+      }
+      if (tail++ == head) {
+        notEmpty.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getExportedCount() {
+    return exported.get();
+  }
+
+  /**
+   * Samples dropped because the ring was full.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  private void writeLoop() {
+    long backoff = 500;
+    long reportedDrops = 0;
+    long nextDropReport = System.currentTimeMillis() + DROP_REPORT_INTERVAL_MS;
+    while (true) {
+      long from;
+      long to;
+      lock.lock();
+      try {
+        while (tail == head && running) {
+          notEmpty.await(DROP_REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        if (tail == head) {
+          return;
+        }
+        // Group commit: give a small batch a moment to grow before paying for a flush
+        long deadline = System.nanoTime() + lingerNanos;
+        long remaining;
+        while (running && tail - head < GROUP_COMMIT_SAMPLES && (remaining = deadline - System.nanoTime()) > 0) {
+          notEmpty.awaitNanos(remaining);
+        }
+        from = head;
+        to = tail;
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        lock.unlock();
+      }
+
+      written = from;
+      try {
+        write(from, to);
+        backoff = 500;
+      } catch (IOException e) {
+        System.err.println("Sample export to " + target + " failed: " + e.getMessage());
+        // Samples already written are not sent again after the reopen
+        release(from, written);
+        closeOutput();
+        if (!running) {
+          return;
+        }
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        continue;
+      }
+
+      release(from, to);
+
+      long drops = dropped.get();
+      if (drops != reportedDrops && System.currentTimeMillis() >= nextDropReport) {
+        System.err.println("Sample export to " + target + " is behind; dropped " + (drops - reportedDrops)
+            + " samples");
+        reportedDrops = drops;
+        nextDropReport = System.currentTimeMillis() + DROP_REPORT_INTERVAL_MS;
+      }
+    }
+  }
+
+  /**
+   * Frees slots {@code [from, to)} once they are written.
+   */
+  private void release(long from, long to) {
+    if (to <= from) {
+      return;
+    }
+    lock.lock();
+    try {
+      for (long i = from; i < to; i++) {
+        int slot = (int) (i % capacity);
+        sites[slot] = null;
+        errors[slot] = null;
+      }
+      head = to;
+    } finally {
+      lock.unlock();
+    }
+    exported.addAndGet(to - from);
+  }
+
+  /**
+   * Encodes slots {@code [from, to)} and writes them out, flushing once at the end. Moves
+   * {@link #written} past each part that is handed to the output.
+   */
+  private void write(long from, long to) throws IOException {
+    if (out == null) {
+      openOutput();
+    }
+    if (encodedSites.size() > MAX_ENCODED_SITES) {
+      encodedSites.clear();
+    }
+    for (long i = from; i < to; i++) {
+      int slot = (int) (i % capacity);
+      byte[] site = encodedSites.computeIfAbsent(sites[slot], siteEncoder);
+      format.encode(buffer, site, timestamps[slot], successful[slot], errors[slot], values[slot]);
+      if (buffer.length() >= FLUSH_BYTES) {
+        buffer.writeTo(out);
+        buffer.clear();
+        written = i + 1;
+      }
+    }
+    buffer.writeTo(out);
+    buffer.clear();
+    out.flush();
+    written = to;
+  }
+
+  private void openOutput() throws IOException {
+    buffer.clear();
+    // Sites removed since the last open are not kept forever
+    encodedSites.clear();
+    boolean fresh = true;
+    if (target.equals("-")) {
+      out = new FileOutputStream(FileDescriptor.out);
+    } else if (target.startsWith("tcp://")) {
+      URI uri = URI.create(target);
+      Socket socket = new Socket();
+      socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()), 5000);
+      socket.setTcpNoDelay(true);
+      out = socket.getOutputStream();
+    } else {
+      Path path = Paths.get(target);
+      // A named pipe reports size 0 and takes the header every time it is reopened
+      fresh = !Files.exists(path) || Files.size(path) == 0;
+      boolean regular = Files.exists(path) && Files.isRegularFile(path);
+      boolean torn = regular && !fresh && !endsWithNewline(path);
+      out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          regular ? StandardOpenOption.APPEND : StandardOpenOption.WRITE);
+      if (torn) {
+        out.write('\n');
+      }
+    }
+    if (fresh) {
+      format.writeHeader(buffer);
+    }
+  }
+
+  private static boolean endsWithNewline(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      return channel.read(last, channel.size() - 1) == 1 && last.get(0) == '\n';
+    }
+  }
+
+  private void closeOutput() {
+    buffer.clear();
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // Already failed; nothing more to report
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Writes out what is queued, then closes the output.
+   */
+  @Override
+  public void close() {
+    running = false;
+    lock.lock();
+    try {
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      writer.interrupt();
+    } else if (out != null && !target.equals("-")) {
+      closeOutput();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.uor.eng.probe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Drains a response body into a reusable direct buffer and throws the bytes away, so probing a
+ * large endpoint costs neither heap garbage nor decompression. Drains are pooled rather than kept
+ * per thread, which would allocate a fresh direct buffer for every virtual thread.
+ */
+public final class BodyDrain {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_POOLED = 64;
+  private static final Queue<BodyDrain> POOL = new ConcurrentLinkedQueue<>();
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private long firstByteNanos;
+  private int statusCode;
+
+  private BodyDrain() {
+  }
+
+  public static BodyDrain acquire() {
+    BodyDrain drain = POOL.poll();
+    return drain != null ? drain : new BodyDrain();
+  }
+
+  public static void release(BodyDrain drain) {
+    if (POOL.size() < MAX_POOLED) {
+      POOL.offer(drain);
+    }
+  }
+
+  /**
+   * Reads until end of stream or until {@code limit} bytes have been read. Returns the byte count.
+   */
+  public long drain(ReadableByteChannel channel, long limit) throws IOException {
+    firstByteNanos = 0;
+    statusCode = 0;
+    long total = 0;
+    while (total < limit) {
+      buffer.clear();
+      if (limit - total < buffer.capacity()) {
+        buffer.limit((int) (limit - total));
+      }
+      int n = channel.read(buffer);
+      if (n < 0) {
+        break;
+      }
+      if (n > 0 && firstByteNanos == 0) {
+        firstByteNanos = System.nanoTime();
+        statusCode = HttpProbeSupport.parseStatus(buffer);
+      }
+      total += n;
+    }
+    return total;
+  }
+
+  /**
+   * When the first byte arrived, or 0 if nothing was read.
+   */
+  public long getFirstByteNanos() {
+    return firstByteNanos;
+  }
+
+  /**
+   * Status code if the drained stream started with an HTTP status line, otherwise 0.
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
@@ -0,0 +1,40 @@
+package com.uor.eng.probe;
+
+/**
+ * How much of the response body a probe downloads. Chosen at startup with
+ * {@code -Dmonitor.body.mode=full|bounded|head|range}; the byte budget for the bounded modes comes
+ * from {@code -Dmonitor.body.budget=<bytes>} (256 KiB by default).
+ */
+public enum BodyMode {
+  /** Download and, in classic mode, decompress the whole body. */
+  FULL,
+  /** GET, but stop draining once the byte budget is reached. Never decompresses. */
+  BOUNDED,
+  /** HEAD request, no body at all. */
+  HEAD,
+  /** GET with a {@code Range} header asking for just the byte budget. */
+  RANGE;
+
+  private static final long DEFAULT_BUDGET_BYTES = 256 * 1024;
+
+  /**
+   * Maximum number of bytes to read for the given budget.
+   */
+  public long limit(long budgetBytes) {
+    return this == FULL ? Long.MAX_VALUE : budgetBytes;
+  }
+
+  public static BodyMode fromSystemProperty() {
+    String value = System.getProperty("monitor.body.mode", FULL.name());
+    try {
+      return valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown body mode '" + value + "', falling back to " + FULL);
+      return FULL;
+    }
+  }
+
+  public static long budgetFromSystemProperty() {
+    return Math.max(1, Long.getLong("monitor.body.budget", DEFAULT_BUDGET_BYTES));
+  }
+}
@@ -0,0 +1,271 @@
+package com.uor.eng.probe;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resolver layer shared by all probe stages, so a sample resolves each hostname at most once.
+ *
+ * <p>Successful lookups are cached for the positive TTL and failures for the negative TTL. The
+ * JDK resolver does not expose record TTLs, so both come from the standard
+ * {@code networkaddress.cache.ttl} / {@code networkaddress.cache.negative.ttl} security properties
+ * (30s / 10s by default). As in the JDK, a negative TTL caches forever and 0 not at all.
+ *
+ * <p>Real resolution time is measured on its own schedule by querying the DNS server directly
+ * through JNDI, which bypasses the JVM address cache. Probes report that figure as their DNS time
+ * instead of timing a cache hit. Hosts are measured concurrently on a small pool, at most one
+ * query per host at a time, so a few servers that time out do not hold up the rest of the sweep.
+ * Each result is published as one immutable snapshot, so the measurement never holds a lock that
+ * {@link #resolve} waits on.
+ */
+public class DnsCache implements AutoCloseable {
+  private static final long DEFAULT_TTL_SECONDS = 30;
+  private static final long DEFAULT_NEGATIVE_TTL_SECONDS = 10;
+  private static final long MEASURE_INTERVAL_MS = 30_000;
+  private static final int MEASURE_THREADS = 8;
+  private static final long FOREVER_SECONDS = TimeUnit.DAYS.toSeconds(365);
+  private static final long UNUSED_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final ScheduledExecutorService measurer;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public DnsCache() {
+    this(securityTtl("networkaddress.cache.ttl", DEFAULT_TTL_SECONDS),
+        securityTtl("networkaddress.cache.negative.ttl", DEFAULT_NEGATIVE_TTL_SECONDS));
+  }
+
+  public DnsCache(long ttlSeconds, long negativeTtlSeconds) {
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds < 0 ? FOREVER_SECONDS : ttlSeconds);
+    this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds < 0 ? FOREVER_SECONDS : negativeTtlSeconds);
+    this.measurer = Executors.newScheduledThreadPool(MEASURE_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "dns-measure");
+      thread.setDaemon(true);
+      return thread;
+    });
+    measurer.scheduleWithFixedDelay(this::measureAll, MEASURE_INTERVAL_MS, MEASURE_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the cached addresses for a host, resolving it on a miss.
+   * A cached failure is rethrown until its negative TTL runs out.
+   */
+  public InetAddress[] resolve(String host) throws UnknownHostException {
+    long now = System.nanoTime();
+    Entry entry = entries.computeIfAbsent(host, Entry::new);
+    entry.lastAccessNanos = now;
+
+    Result result = entry.result;
+    if (result != null && now - result.expiresAtNanos < 0) {
+      hits.incrementAndGet();
+    } else {
+      // One probe resolves a missing host while the others wait for its answer; a ReentrantLock
+      // rather than synchronized so virtual threads are not pinned meanwhile
+      entry.missLock.lock();
+      try {
+        result = entry.result;
+        if (result == null || System.nanoTime() - result.expiresAtNanos >= 0) {
+          misses.incrementAndGet();
+          result = refresh(entry, false);
+        } else {
+          hits.incrementAndGet();
+        }
+      } finally {
+        entry.missLock.unlock();
+      }
+    }
+    if (result.failure != null) {
+      throw result.failure;
+    }
+    return result.addresses;
+  }
+
+  public InetAddress resolveFirst(String host) throws UnknownHostException {
+    return resolve(host)[0];
+  }
+
+  /**
+   * Most recent uncached resolution time for a host in ms, or 0 if it is an IP literal or unknown.
+   */
+  public double getResolutionTime(String host) {
+    Entry entry = entries.get(host);
+    Result result = entry == null ? null : entry.result;
+    return result == null ? 0 : result.resolutionTime;
+  }
+
+  public double getHitRatio() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  private void measureAll() {
+    long now = System.nanoTime();
+    entries.values().removeIf(entry -> now - entry.lastAccessNanos > UNUSED_EXPIRY_NANOS);
+    for (Entry entry : entries.values()) {
+      // A host still being measured from the previous sweep is skipped, not queued twice
+      if (entry.measuring.compareAndSet(false, true)) {
+        measurer.execute(() -> measure(entry));
+      }
+    }
+  }
+
+  private void measure(Entry entry) {
+    try {
+      refresh(entry, true);
+    } catch (RuntimeException e) {
+      System.err.println("DNS measurement failed for " + entry.host + ": " + e.getMessage());
+    } finally {
+      entry.measuring.set(false);
+    }
+  }
+
+  /**
+   * Resolves a host with no lock held and publishes the result in one write. Only the scheduled
+   * measurement goes to the DNS server directly; lookups on the probe path use the system resolver
+   * so /etc/hosts keeps working.
+   */
+  private Result refresh(Entry entry, boolean direct) {
+    Result result;
+    if (isIpLiteral(entry.host)) {
+      long expiresAt = System.nanoTime() + TimeUnit.DAYS.toNanos(365);
+      try {
+        result = new Result(InetAddress.getAllByName(entry.host), null, 0, expiresAt);
+      } catch (UnknownHostException e) {
+        result = new Result(null, e, 0, expiresAt);
+      }
+      entry.result = result;
+      return result;
+    }
+
+    long start = System.nanoTime();
+    try {
+      InetAddress[] addresses = direct ? queryServer(entry.host) : null;
+      if (addresses == null) {
+        // Time the system resolver on its own when the server could not answer directly
+        start = System.nanoTime();
+        addresses = InetAddress.getAllByName(entry.host);
+      }
+      long end = System.nanoTime();
+      result = new Result(addresses, null, Math.max((end - start) / 1_000_000.0, 0.001), end + ttlNanos);
+    } catch (UnknownHostException e) {
+      long end = System.nanoTime();
+      result = new Result(null, e, (end - start) / 1_000_000.0, end + negativeTtlNanos);
+    }
+    entry.result = result;
+    return result;
+  }
+
+  /**
+   * Queries the configured DNS server for A/AAAA records. Returns null when the server cannot be
+   * asked directly, does not know the name (it may be in /etc/hosts) or only answers with a CNAME,
+   * so the caller falls back to the system resolver.
+   */
+  private static InetAddress[] queryServer(String host) {
+    Hashtable<String, String> env = new Hashtable<>();
+    env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+    env.put("com.sun.jndi.dns.timeout.initial", "2000");
+    env.put("com.sun.jndi.dns.timeout.retries", "1");
+
+    DirContext context = null;
+    try {
+      context = new InitialDirContext(env);
+      Attributes attributes = context.getAttributes(host, new String[]{"A", "AAAA"});
+      List<InetAddress> addresses = new ArrayList<>();
+      collect(attributes.get("A"), host, addresses);
+      collect(attributes.get("AAAA"), host, addresses);
+      return addresses.isEmpty() ? null : addresses.toArray(new InetAddress[0]);
+    } catch (NamingException | UnknownHostException e) {
+      return null;
+    } finally {
+      if (context != null) {
+        try {
+          context.close();
+        } catch (NamingException ignored) {
+        }
+      }
+    }
+  }
+
+  private static void collect(Attribute attribute, String host, List<InetAddress> out)
+      throws NamingException, UnknownHostException {
+    if (attribute == null) {
+      return;
+    }
+    NamingEnumeration<?> values = attribute.getAll();
+    while (values.hasMore()) {
+      InetAddress literal = InetAddress.getByName(values.next().toString());
+      out.add(InetAddress.getByAddress(host, literal.getAddress()));
+    }
+  }
+
+  private static boolean isIpLiteral(String host) {
+    return host.indexOf(':') >= 0 || host.chars().allMatch(c -> c == '.' || Character.isDigit(c));
+  }
+
+  private static long securityTtl(String property, long fallback) {
+    try {
+      String value = Security.getProperty(property);
+      return value == null ? fallback : Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  @Override
+  public void close() {
+    measurer.shutdownNow();
+  }
+
+  private static final class Entry {
+    final String host;
+    final ReentrantLock missLock = new ReentrantLock();
+    final AtomicBoolean measuring = new AtomicBoolean();
+    volatile Result result;
+    volatile long lastAccessNanos;
+
+    Entry(String host) {
+      this.host = host;
+    }
+  }
+
+  /**
+   * One lookup: the addresses or the failure, how long it took, and until when it may be used.
+   */
+  private static final class Result {
+    final InetAddress[] addresses;
+    final UnknownHostException failure;
+    final double resolutionTime;
+    final long expiresAtNanos;
+
+    Result(InetAddress[] addresses, UnknownHostException failure, double resolutionTime,
+           long expiresAtNanos) {
+      this.addresses = addresses;
+      this.failure = failure;
+      this.resolutionTime = resolutionTime;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.uor.eng.probe;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP/1.1 helpers shared by the probe implementations.
+ */
+final class HttpProbeSupport {
+  private HttpProbeSupport() {
+  }
+
+  static ByteBuffer buildRequest(URL url, String host, int port, boolean keepAlive,
+                                 BodyMode bodyMode, long bodyBudget) {
+    String path = url.getFile().isEmpty() ? "/" : url.getFile();
+    String hostHeader = port == url.getDefaultPort() ? host : host + ":" + port;
+    String method = bodyMode == BodyMode.HEAD ? "HEAD" : "GET";
+    String range = bodyMode == BodyMode.RANGE ? "Range: bytes=0-" + (bodyBudget - 1) + "\r\n" : "";
+    String request = method + " " + path + " HTTP/1.1\r\n"
+        + "Host: " + hostHeader + "\r\n"
+        + "User-Agent: network-monitor\r\n"
+        + "Accept: */*\r\n"
+        + "Accept-Encoding: identity\r\n"
+        + range
+        + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+    return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Headers for a POST whose body of {@code contentLength} bytes is streamed separately.
+   */
+  static ByteBuffer buildUploadHeaders(URL url, String host, int port, long contentLength) {
+    String path = url.getFile().isEmpty() ? "/" : url.getFile();
+    String hostHeader = port == url.getDefaultPort() ? host : host + ":" + port;
+    String request = "POST " + path + " HTTP/1.1\r\n"
+        + "Host: " + hostHeader + "\r\n"
+        + "User-Agent: network-monitor\r\n"
+        + "Accept: */*\r\n"
+        + "Content-Type: application/octet-stream\r\n"
+        + "Content-Length: " + contentLength + "\r\n"
+        + "Connection: close\r\n\r\n";
+    return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Reads the status code from an "HTTP/1.x NNN" status line at the start of the buffer.
+   */
+  static int parseStatus(ByteBuffer buffer) {
+    if (buffer.position() < 12 || buffer.get(0) != 'H') {
+      return 0;
+    }
+    int code = 0;
+    for (int i = 9; i < 12; i++) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        return 0;
+      }
+      code = code * 10 + (b - '0');
+    }
+    return code;
+  }
+}
@@ -0,0 +1,171 @@
+package com.uor.eng.probe;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded per-target pool of idle keep-alive connections.
+ *
+ * <p>At most {@code maxIdlePerTarget} idle connections are kept for each scheme/host/port.
+ * Connections idle for longer than the idle timeout are evicted by a background sweep, and every
+ * connection is health-checked before it is handed out again.
+ */
+public class KeepAliveConnectionPool implements AutoCloseable {
+  private static final long SWEEP_INTERVAL_MS = 5000;
+
+  private final Map<String, Deque<PooledConnection>> idle = new ConcurrentHashMap<>();
+  private final int maxIdlePerTarget;
+  private final long idleTimeoutNanos;
+  private final ScheduledExecutorService evictor;
+
+  public KeepAliveConnectionPool(int maxIdlePerTarget, long idleTimeoutMs) {
+    this.maxIdlePerTarget = maxIdlePerTarget;
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "keep-alive-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    evictor.scheduleWithFixedDelay(this::evictIdle, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a healthy idle connection for the target, or null if a new one has to be opened.
+   */
+  PooledConnection acquire(String target) {
+    Deque<PooledConnection> connections = idle.get(target);
+    if (connections == null) {
+      return null;
+    }
+
+    while (true) {
+      PooledConnection connection;
+      synchronized (connections) {
+        connection = connections.pollFirst();
+      }
+      if (connection == null) {
+        return null;
+      }
+      if (isHealthy(connection)) {
+        return connection;
+      }
+      connection.close();
+    }
+  }
+
+  /**
+   * Hands a connection back after a request. Connections that cannot be reused are closed.
+   */
+  void release(PooledConnection connection, boolean reusable) {
+    if (!reusable) {
+      connection.close();
+      return;
+    }
+    connection.lastUsedNanos = System.nanoTime();
+    Deque<PooledConnection> connections = idle.computeIfAbsent(connection.target, k -> new ArrayDeque<>());
+    synchronized (connections) {
+      if (connections.size() < maxIdlePerTarget) {
+        connections.offerFirst(connection);
+        return;
+      }
+    }
+    connection.close();
+  }
+
+  private boolean isHealthy(PooledConnection connection) {
+    Socket socket = connection.socket;
+    if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+      return false;
+    }
+    if (System.nanoTime() - connection.lastUsedNanos > idleTimeoutNanos) {
+      return false;
+    }
+
+    int timeout = 0;
+    try {
+      // Leftover bytes mean the last response was not fully drained
+      if (connection.in.available() > 0) {
+        return false;
+      }
+      // A 1ms read tells us whether the server closed the connection while it sat idle
+      timeout = socket.getSoTimeout();
+      socket.setSoTimeout(1);
+      connection.in.read();
+      return false;
+    } catch (SocketTimeoutException e) {
+      return true;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      try {
+        if (!socket.isClosed()) {
+          socket.setSoTimeout(timeout);
+        }
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private void evictIdle() {
+    long now = System.nanoTime();
+    for (Deque<PooledConnection> connections : idle.values()) {
+      synchronized (connections) {
+        Iterator<PooledConnection> it = connections.iterator();
+        while (it.hasNext()) {
+          PooledConnection connection = it.next();
+          if (now - connection.lastUsedNanos > idleTimeoutNanos) {
+            it.remove();
+            connection.close();
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    evictor.shutdownNow();
+    for (Deque<PooledConnection> connections : idle.values()) {
+      synchronized (connections) {
+        connections.forEach(PooledConnection::close);
+        connections.clear();
+      }
+    }
+  }
+
+  /**
+   * An open connection plus the buffered stream that belongs to it.
+   */
+  static final class PooledConnection {
+    final String target;
+    final Socket socket;
+    final BufferedInputStream in;
+    final OutputStream out;
+    volatile long lastUsedNanos = System.nanoTime();
+
+    PooledConnection(String target, Socket socket) throws IOException {
+      this.target = target;
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = socket.getOutputStream();
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
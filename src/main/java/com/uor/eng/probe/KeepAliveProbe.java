@@ -0,0 +1,276 @@
+package com.uor.eng.probe;
+
+import com.uor.eng.probe.KeepAliveConnectionPool.PooledConnection;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Probe that sends each sample over a pooled keep-alive connection when one is available, so it
+ * sees the warm-path latency real users get. Every sample carries the most recent cold TTFB
+ * (connect + TLS + first byte on a fresh connection) and warm TTFB (first byte on a reused one)
+ * for its target, along with the target's reuse ratio: the share of its completed requests that
+ * went over a reused connection. A request that fails on a reused connection and is retried on a
+ * fresh one counts as one request, not reused.
+ */
+public class KeepAliveProbe implements AutoCloseable {
+  private static final int MAX_IDLE_PER_TARGET = 2;
+  private static final long IDLE_TIMEOUT_MS = 30_000;
+  private static final int MAX_LINE_LENGTH = 8192;
+
+  private final KeepAliveConnectionPool pool;
+  private final Map<String, TargetTimings> timings = new ConcurrentHashMap<>();
+  private final DnsCache dnsCache;
+  private final int timeoutMs;
+  private final BodyMode bodyMode;
+  private final long bodyBudget;
+  private final long maxBodyBytes;
+
+  public KeepAliveProbe(DnsCache dnsCache, int timeoutMs, BodyMode bodyMode, long bodyBudget) {
+    this.dnsCache = dnsCache;
+    this.pool = new KeepAliveConnectionPool(MAX_IDLE_PER_TARGET, IDLE_TIMEOUT_MS);
+    this.timeoutMs = timeoutMs;
+    this.bodyMode = bodyMode;
+    this.bodyBudget = bodyBudget;
+    this.maxBodyBytes = bodyMode.limit(bodyBudget);
+  }
+
+  public ProbeResult probe(URL url) throws IOException {
+    String host = url.getHost();
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    String target = url.getProtocol() + "://" + host + ":" + port;
+    TargetTimings targetTimings = timings.computeIfAbsent(target, k -> new TargetTimings());
+
+    PooledConnection connection = pool.acquire(target);
+    if (connection != null) {
+      try {
+        return exchange(url, host, port, connection, true, new ProbeResult(), System.nanoTime(), targetTimings);
+      } catch (IOException e) {
+        // The server dropped the idle connection between the health check and our request
+        connection.close();
+      }
+    }
+
+    ProbeResult result = new ProbeResult();
+    long start = System.nanoTime();
+    connection = connect(url, host, port, target, result);
+    // Count the measured DNS time rather than the cache lookup, so the phases still add up
+    start -= (long) (result.getDnsTime() * 1_000_000);
+    return exchange(url, host, port, connection, false, result, start, targetTimings);
+  }
+
+  private PooledConnection connect(URL url, String host, int port, String target, ProbeResult result)
+      throws IOException {
+    InetAddress address = dnsCache.resolveFirst(host);
+    long connectStart = System.nanoTime();
+    result.setDnsTime(dnsCache.getResolutionTime(host));
+
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setKeepAlive(true);
+      socket.setSoTimeout(timeoutMs);
+      socket.connect(new InetSocketAddress(address, port), timeoutMs);
+      long tlsStart = System.nanoTime();
+      result.setTcpTime(millis(tlsStart - connectStart));
+
+      if ("https".equalsIgnoreCase(url.getProtocol())) {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+        socket = sslSocket;
+        SSLParameters params = sslSocket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(params);
+        sslSocket.startHandshake();
+        result.setTlsTime(millis(System.nanoTime() - tlsStart));
+      }
+      return new PooledConnection(target, socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private ProbeResult exchange(URL url, String host, int port, PooledConnection connection, boolean reused,
+                               ProbeResult result, long start, TargetTimings targetTimings) throws IOException {
+    boolean reusable = false;
+    try {
+      long requestStart = System.nanoTime();
+      connection.out.write(HttpProbeSupport.buildRequest(url, host, port, true, bodyMode, bodyBudget).array());
+      connection.out.flush();
+
+      InputStream in = connection.in;
+      int first = in.read();
+      if (first == -1) {
+        throw new EOFException("Connection closed before response");
+      }
+      long firstByte = System.nanoTime();
+      double ttfb = millis(firstByte - requestStart);
+      result.setTtfb(ttfb);
+
+      reusable = readResponse(in, (char) first, result);
+      long end = System.nanoTime();
+      result.setTransferTime(millis(end - firstByte));
+      result.setTotalTime(millis(end - start));
+
+      if (reused) {
+        targetTimings.warmTtfb = ttfb;
+      } else {
+        targetTimings.coldTtfb = result.getDnsTime() + result.getTcpTime() + result.getTlsTime() + ttfb;
+      }
+      result.setColdTtfb(targetTimings.coldTtfb);
+      result.setWarmTtfb(targetTimings.warmTtfb);
+      result.setReuseRatio(targetTimings.recordRequest(reused));
+      return result;
+    } finally {
+      pool.release(connection, reusable);
+    }
+  }
+
+  /**
+   * Reads one HTTP/1.1 response. Returns true if the connection can carry another request.
+   */
+  private boolean readResponse(InputStream in, char first, ProbeResult result) throws IOException {
+    String statusLine = first + readLine(in);
+    long bytes = statusLine.length() + 2;
+    int status = statusLine.length() >= 12 ? parseInt(statusLine.substring(9, 12)) : 0;
+    result.setStatusCode(status);
+
+    long contentLength = -1;
+    boolean chunked = false;
+    boolean close = statusLine.startsWith("HTTP/1.0");
+    String line;
+    while (!(line = readLine(in)).isEmpty()) {
+      bytes += line.length() + 2;
+      int colon = line.indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      String value = line.substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+      switch (name) {
+        case "content-length" -> contentLength = Long.parseLong(value);
+        case "transfer-encoding" -> chunked = value.contains("chunked");
+        case "connection" -> close = value.contains("close") || (close && !value.contains("keep-alive"));
+        default -> { }
+      }
+    }
+    bytes += 2;
+
+    boolean complete;
+    if (bodyMode == BodyMode.HEAD || status < 200 || status == 204 || status == 304) {
+      complete = true;
+    } else if (chunked) {
+      complete = true;
+      long size;
+      while ((size = Long.parseLong(stripExtensions(readLine(in)), 16)) > 0) {
+        if (skip(in, size + 2, maxBodyBytes - bytes) < size + 2) {
+          complete = false;
+          break;
+        }
+        bytes += size;
+      }
+      if (complete) {
+        while (!readLine(in).isEmpty()) {
+          // discard trailers
+        }
+      }
+    } else if (contentLength >= 0) {
+      long drained = skip(in, contentLength, maxBodyBytes - bytes);
+      bytes += drained;
+      complete = drained == contentLength;
+    } else {
+      // Body runs until the server closes the connection
+      bytes += skip(in, Long.MAX_VALUE, maxBodyBytes - bytes);
+      complete = false;
+    }
+
+    result.setBytesRead(bytes);
+    return complete && !close;
+  }
+
+  private static String stripExtensions(String chunkHeader) {
+    int semicolon = chunkHeader.indexOf(';');
+    return (semicolon < 0 ? chunkHeader : chunkHeader.substring(0, semicolon)).trim();
+  }
+
+  /**
+   * Discards up to {@code count} bytes but never more than {@code budget}. Returns the bytes skipped.
+   */
+  private static long skip(InputStream in, long count, long budget) throws IOException {
+    long limit = Math.min(count, Math.max(0, budget));
+    long skipped = 0;
+    while (skipped < limit) {
+      long n = in.skip(limit - skipped);
+      if (n <= 0) {
+        if (in.read() == -1) {
+          break;
+        }
+        n = 1;
+      }
+      skipped += n;
+    }
+    return skipped;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = in.read()) != -1 && b != '\n') {
+      if (b != '\r') {
+        line.append((char) b);
+      }
+      if (line.length() > MAX_LINE_LENGTH) {
+        throw new IOException("Response line too long");
+      }
+    }
+    if (b == -1 && line.length() == 0) {
+      throw new EOFException("Connection closed mid-response");
+    }
+    return line.toString();
+  }
+
+  private static int parseInt(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  @Override
+  public void close() {
+    pool.close();
+  }
+
+  private static final class TargetTimings {
+    volatile double coldTtfb;
+    volatile double warmTtfb;
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong reusedRequests = new AtomicLong();
+
+    /**
+     * Counts a completed request and returns the reuse ratio including it, 0..1.
+     */
+    double recordRequest(boolean reused) {
+      long reusedCount = reused ? reusedRequests.incrementAndGet() : reusedRequests.get();
+      return (double) reusedCount / requests.incrementAndGet();
+    }
+  }
+}
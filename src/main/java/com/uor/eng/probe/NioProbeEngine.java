@@ -0,0 +1,575 @@
+package com.uor.eng.probe;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking probe engine. A few selector threads drive thousands of in-flight probes over
+ * {@link SocketChannel} and {@link SSLEngine}. Every phase is timestamped on the selector thread
+ * when it actually starts, so time spent waiting for a free thread never ends up in the numbers.
+ */
+public class NioProbeEngine implements AutoCloseable {
+  private static final int TIMEOUT_MS = 5000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int RESOLVER_THREADS = 16;
+  private static final long SELECT_INTERVAL_MS = 100;
+
+  private final SelectorLoop[] loops;
+  private final ExecutorService resolverPool;
+  private final ExecutorService sslTaskPool;
+  private final SSLContext sslContext;
+  private final DnsCache dnsCache;
+  private final AtomicInteger nextLoop = new AtomicInteger();
+  private final int timeoutMs;
+  private final BodyMode bodyMode;
+  private final long bodyBudget;
+  private final long maxBodyBytes;
+
+  public NioProbeEngine(DnsCache dnsCache, BodyMode bodyMode, long bodyBudget) {
+    this(dnsCache, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), TIMEOUT_MS, bodyMode, bodyBudget);
+  }
+
+  public NioProbeEngine(DnsCache dnsCache, int selectorThreads, int timeoutMs, BodyMode bodyMode, long bodyBudget) {
+    this.dnsCache = dnsCache;
+    this.timeoutMs = timeoutMs;
+    this.bodyMode = bodyMode;
+    this.bodyBudget = bodyBudget;
+    this.maxBodyBytes = bodyMode.limit(bodyBudget);
+    try {
+      this.sslContext = SSLContext.getDefault();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("No default SSLContext available", e);
+    }
+    // Cache misses block in the JDK resolver, so lookups get their own small pool
+    this.resolverPool = Executors.newFixedThreadPool(RESOLVER_THREADS, daemonThreads("nio-probe-dns"));
+    this.sslTaskPool = Executors.newCachedThreadPool(daemonThreads("nio-probe-ssl"));
+
+    this.loops = new SelectorLoop[selectorThreads];
+    ThreadFactory loopThreads = daemonThreads("nio-probe-selector");
+    for (int i = 0; i < selectorThreads; i++) {
+      loops[i] = new SelectorLoop();
+      loopThreads.newThread(loops[i]).start();
+    }
+  }
+
+  /**
+   * Starts a probe of the given URL. The returned future completes on a selector thread.
+   */
+  public CompletableFuture<ProbeResult> probe(URL url) {
+    CompletableFuture<ProbeResult> future = new CompletableFuture<>();
+    String host = url.getHost();
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+    boolean tls = "https".equalsIgnoreCase(url.getProtocol());
+
+    resolverPool.execute(() -> {
+      try {
+        InetAddress address = dnsCache.resolveFirst(host);
+        double dnsTime = dnsCache.getResolutionTime(host);
+
+        SelectorLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        Probe probe = new Probe(loop, future, new InetSocketAddress(address, port), host, tls,
+            HttpProbeSupport.buildRequest(url, host, port, false, bodyMode, bodyBudget));
+        probe.result.setDnsTime(dnsTime);
+        probe.execute(probe::start);
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  @Override
+  public void close() {
+    for (SelectorLoop loop : loops) {
+      loop.shutdown();
+    }
+    resolverPool.shutdownNow();
+    sslTaskPool.shutdownNow();
+    try {
+      resolverPool.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * One selector thread. Other threads hand it work through {@link #execute(Runnable)}.
+   */
+  private final class SelectorLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Every probe on this loop decrypts and drains into the same direct buffer; it is
+    // emptied straight after each read, so in-flight probes never need their own
+    private final ByteBuffer appBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    SelectorLoop() {
+      try {
+        this.selector = Selector.open();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void execute(Runnable task) {
+      tasks.add(task);
+      selector.wakeup();
+    }
+
+    void shutdown() {
+      running = false;
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      long lastExpiryCheck = System.nanoTime();
+      while (running) {
+        try {
+          selector.select(SELECT_INTERVAL_MS);
+
+          // A failing task or key only takes down its own probe, never the thread all the other
+          // probes on this selector depend on
+          Runnable task;
+          while ((task = tasks.poll()) != null) {
+            try {
+              task.run();
+            } catch (RuntimeException e) {
+              System.err.println("Selector task failed: " + e);
+            }
+          }
+
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            Probe probe = (Probe) key.attachment();
+            try {
+              if (key.isValid()) {
+                probe.onReady();
+              }
+            } catch (RuntimeException e) {
+              probe.fail(e);
+            }
+          }
+
+          long now = System.nanoTime();
+          if (now - lastExpiryCheck >= TimeUnit.MILLISECONDS.toNanos(SELECT_INTERVAL_MS)) {
+            expireProbes(now);
+            lastExpiryCheck = now;
+          }
+        } catch (IOException | RuntimeException e) {
+          System.err.println("Selector loop error: " + e);
+        }
+      }
+
+      for (SelectionKey key : selector.keys()) {
+        ((Probe) key.attachment()).fail(new IOException("Probe engine closed"));
+      }
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+      }
+    }
+
+    private void expireProbes(long now) {
+      for (SelectionKey key : selector.keys()) {
+        Probe probe = (Probe) key.attachment();
+        if (key.isValid() && now - probe.deadline > 0) {
+          probe.fail(new SocketTimeoutException("Probe timed out after " + timeoutMs + " ms"));
+        }
+      }
+    }
+  }
+
+  private enum Phase { CONNECTING, HANDSHAKING, WRITING, READING }
+
+  /**
+   * State machine for a single probe. All methods run on the owning selector thread.
+   */
+  private final class Probe {
+    final SelectorLoop loop;
+    final CompletableFuture<ProbeResult> future;
+    final ProbeResult result = new ProbeResult();
+    final InetSocketAddress target;
+    final String host;
+    final boolean tls;
+    final ByteBuffer request;
+
+    SocketChannel channel;
+    SelectionKey key;
+    SSLEngine engine;
+    ByteBuffer netIn;
+    ByteBuffer netOut;
+    ByteBuffer appIn;
+    Phase phase;
+
+    long deadline;
+    long connectStart;
+    long tlsStart;
+    long requestStart;
+    long firstByte;
+    // Delegated SSLEngine tasks are running on the task pool; the key is idle until they finish
+    boolean tasksPending;
+
+    Probe(SelectorLoop loop, CompletableFuture<ProbeResult> future, InetSocketAddress target,
+          String host, boolean tls, ByteBuffer request) {
+      this.loop = loop;
+      this.future = future;
+      this.target = target;
+      this.host = host;
+      this.tls = tls;
+      this.request = request;
+    }
+
+    void start() {
+      try {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        connectStart = System.nanoTime();
+        deadline = connectStart + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        key = channel.register(loop.selector, 0, this);
+
+        phase = Phase.CONNECTING;
+        if (channel.connect(target)) {
+          onConnected();
+        } else {
+          key.interestOps(SelectionKey.OP_CONNECT);
+        }
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    void onReady() {
+      try {
+        switch (phase) {
+          case CONNECTING -> {
+            if (channel.finishConnect()) {
+              onConnected();
+            }
+          }
+          case HANDSHAKING -> handshake();
+          case WRITING -> writeRequest();
+          case READING -> readResponse();
+        }
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    private void onConnected() throws IOException {
+      long now = System.nanoTime();
+      result.setTcpTime(millis(now - connectStart));
+
+      if (!tls) {
+        appIn = loop.appBuffer;
+        startRequest(now);
+        return;
+      }
+
+      engine = sslContext.createSSLEngine(host, target.getPort());
+      engine.setUseClientMode(true);
+      SSLParameters params = engine.getSSLParameters();
+      params.setEndpointIdentificationAlgorithm("HTTPS");
+      engine.setSSLParameters(params);
+
+      SSLSession session = engine.getSession();
+      netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+      netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+      appIn = loop.appBuffer;
+
+      tlsStart = now;
+      phase = Phase.HANDSHAKING;
+      engine.beginHandshake();
+      handshake();
+    }
+
+    private void handshake() throws IOException {
+      while (true) {
+        if (netOut.position() > 0 && !flush()) {
+          key.interestOps(SelectionKey.OP_WRITE);
+          return;
+        }
+
+        switch (engine.getHandshakeStatus()) {
+          case NEED_WRAP -> {
+            SSLEngineResult r = engine.wrap(ByteBuffer.allocate(0), netOut);
+            if (r.getStatus() != SSLEngineResult.Status.OK) {
+              throw new SSLException("Handshake wrap failed: " + r.getStatus());
+            }
+          }
+          case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> {
+            netIn.flip();
+            SSLEngineResult r = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            consume(appIn);
+            if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+              throw new SSLException("Connection closed during handshake");
+            }
+            if (r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+              int n = channel.read(netIn);
+              if (n < 0) {
+                throw new SSLException("Connection closed during handshake");
+              }
+              if (n == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+              }
+            }
+          }
+          case NEED_TASK -> {
+            runDelegatedTasks(this::onReady);
+            return;
+          }
+          default -> {
+            long now = System.nanoTime();
+            result.setTlsTime(millis(now - tlsStart));
+            startRequest(now);
+            return;
+          }
+        }
+      }
+    }
+
+    private void startRequest(long now) throws IOException {
+      requestStart = now;
+      phase = Phase.WRITING;
+      writeRequest();
+    }
+
+    private void writeRequest() throws IOException {
+      if (tls) {
+        while (true) {
+          if (netOut.position() > 0 && !flush()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+          }
+          if (!request.hasRemaining()) {
+            break;
+          }
+          SSLEngineResult r = engine.wrap(request, netOut);
+          if (r.getStatus() != SSLEngineResult.Status.OK) {
+            throw new SSLException("Request wrap failed: " + r.getStatus());
+          }
+        }
+      } else {
+        channel.write(request);
+        if (request.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_WRITE);
+          return;
+        }
+      }
+
+      phase = Phase.READING;
+      key.interestOps(SelectionKey.OP_READ);
+      if (tls && netIn.position() > 0 && unwrapAvailable()) {
+        complete();
+      }
+    }
+
+    /**
+     * Runs the engine's delegated tasks on the task pool, since certificate checks and the like
+     * can be slow, then continues with {@code next} on the selector thread. The key is idle
+     * meanwhile, so other connections on this selector are not held up.
+     */
+    private void runDelegatedTasks(Runnable next) {
+      tasksPending = true;
+      key.interestOps(0);
+      sslTaskPool.execute(() -> {
+        try {
+          Runnable task;
+          while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+          }
+        } catch (RuntimeException e) {
+          execute(() -> fail(e));
+          return;
+        }
+        execute(() -> {
+          tasksPending = false;
+          if (!future.isDone()) {
+            next.run();
+          }
+        });
+      });
+    }
+
+    /**
+     * Runs {@code step} on the selector thread, failing this probe if it throws.
+     */
+    void execute(Runnable step) {
+      loop.execute(() -> {
+        try {
+          step.run();
+        } catch (RuntimeException e) {
+          fail(e);
+        }
+      });
+    }
+
+    /**
+     * Picks the response up again after delegated tasks ran mid-stream, starting with what is
+     * still buffered in netIn.
+     */
+    private void resumeReading() {
+      try {
+        key.interestOps(SelectionKey.OP_READ);
+        if (unwrapAvailable() || result.getBytesRead() >= maxBodyBytes) {
+          complete();
+        } else if (!tasksPending) {
+          readResponse();
+        }
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+
+    private void readResponse() throws IOException {
+      ByteBuffer inbound = tls ? netIn : appIn;
+      while (true) {
+        if (!tls) {
+          // Never pull more off the socket than the body budget allows
+          long remaining = maxBodyBytes - result.getBytesRead();
+          appIn.limit((int) Math.min(appIn.capacity(), remaining));
+        }
+        int n = channel.read(inbound);
+        if (n < 0) {
+          complete();
+          return;
+        }
+        if (n == 0) {
+          return;
+        }
+
+        boolean closed = false;
+        if (tls) {
+          closed = unwrapAvailable();
+        } else {
+          consume(appIn);
+        }
+        if (closed || result.getBytesRead() >= maxBodyBytes) {
+          complete();
+          return;
+        }
+        if (tasksPending) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Decrypts whatever is buffered in netIn. Returns true once the peer has sent close_notify.
+     * If the engine needs delegated tasks, for instance for a post-handshake message, they are
+     * handed to the task pool and reading resumes once they are done.
+     */
+    private boolean unwrapAvailable() throws IOException {
+      netIn.flip();
+      try {
+        while (netIn.hasRemaining()) {
+          SSLEngineResult r = engine.unwrap(netIn, appIn);
+          consume(appIn);
+          if (r.getStatus() == SSLEngineResult.Status.CLOSED) {
+            return true;
+          }
+          if (r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+            break;
+          }
+          if (r.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks(this::resumeReading);
+            break;
+          }
+        }
+      } finally {
+        netIn.compact();
+      }
+      return false;
+    }
+
+    private void consume(ByteBuffer buffer) {
+      int n = buffer.position();
+      if (n > 0) {
+        if (firstByte == 0) {
+          firstByte = System.nanoTime();
+          result.setTtfb(millis(firstByte - requestStart));
+          result.setStatusCode(HttpProbeSupport.parseStatus(buffer));
+        }
+        result.setBytesRead(result.getBytesRead() + n);
+        buffer.clear();
+      }
+    }
+
+    private boolean flush() throws IOException {
+      netOut.flip();
+      channel.write(netOut);
+      netOut.compact();
+      return netOut.position() == 0;
+    }
+
+    private void complete() {
+      long end = System.nanoTime();
+      if (firstByte != 0) {
+        result.setTransferTime(millis(end - firstByte));
+      }
+      result.setTotalTime(result.getDnsTime() + millis(end - connectStart));
+      close();
+      future.complete(result);
+    }
+
+    void fail(Throwable error) {
+      close();
+      future.completeExceptionally(error);
+    }
+
+    private void close() {
+      if (key != null) {
+        key.cancel();
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+}
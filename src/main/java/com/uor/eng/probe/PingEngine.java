@@ -0,0 +1,313 @@
+package com.uor.eng.probe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous ping engine. A burst sends sequence-numbered probes on a fixed cadence without
+ * waiting for earlier replies, matches each reply to its sequence number, and gives up on whatever
+ * is still outstanding when the burst's time budget runs out.
+ *
+ * <p>The JVM cannot send raw ICMP, so each probe is a non-blocking TCP connect to the target port:
+ * a SYN-ACK or a refusal (RST) both count as a reply, while an unreachable host or network counts
+ * as lost. An answered connect is a full three-way handshake, so the connection does reach the
+ * server's accept queue, and an application that accepts it sees a connection reset at once
+ * (linger 0, so no TIME_WAIT is left behind). With the default burst that is ten connections to
+ * each site's HTTP(S) port on every tick. Everything runs on a single selector thread, so a slow
+ * target never holds a pool thread.
+ */
+public class PingEngine implements AutoCloseable {
+  private final Selector selector;
+  private final Queue<Step> tasks = new ConcurrentLinkedQueue<>();
+  private final PriorityQueue<Step> timers = new PriorityQueue<>();
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  public PingEngine() {
+    try {
+      this.selector = Selector.open();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.thread = new Thread(this::loop, "ping-engine");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Sends {@code count} probes {@code intervalMs} apart. The future completes once every probe has
+   * been answered or {@code budgetMs} after the first send, whichever comes first.
+   */
+  public CompletableFuture<PingStatistics> burst(InetAddress address, int port, int count,
+                                                 long intervalMs, long budgetMs) {
+    Burst burst = new Burst(new InetSocketAddress(address, port), count);
+    execute(burst, () -> {
+      long now = System.nanoTime();
+      for (int seq = 0; seq < count; seq++) {
+        int sequence = seq;
+        schedule(now + TimeUnit.MILLISECONDS.toNanos(intervalMs * seq), burst, () -> burst.send(sequence));
+      }
+      schedule(now + TimeUnit.MILLISECONDS.toNanos(budgetMs), burst, burst::finish);
+    });
+    return burst.future;
+  }
+
+  private void execute(Burst burst, Runnable task) {
+    tasks.add(new Step(0, burst, task));
+    selector.wakeup();
+  }
+
+  private void schedule(long dueNanos, Burst burst, Runnable task) {
+    timers.add(new Step(dueNanos, burst, task));
+  }
+
+  private void loop() {
+    while (running) {
+      try {
+        Step next = timers.peek();
+        long waitMs = next == null ? 0 : TimeUnit.NANOSECONDS.toMillis(next.dueNanos - System.nanoTime());
+        if (next != null && waitMs <= 0) {
+          selector.selectNow();
+        } else {
+          selector.select(waitMs);
+        }
+
+        // A failing task or key only takes down its own burst or attempt, never this thread
+        Step step;
+        while ((step = tasks.poll()) != null) {
+          step.run();
+        }
+
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+          Attempt attempt = (Attempt) key.attachment();
+          try {
+            if (key.isValid()) {
+              attempt.onConnect();
+            }
+          } catch (RuntimeException e) {
+            attempt.complete(false);
+          }
+        }
+
+        long now = System.nanoTime();
+        while (!timers.isEmpty() && now - timers.peek().dueNanos >= 0) {
+          timers.poll().run();
+        }
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Ping engine error: " + e);
+      }
+    }
+
+    for (SelectionKey key : selector.keys()) {
+      ((Attempt) key.attachment()).burst.finish();
+    }
+    try {
+      selector.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  /**
+   * A step of a burst: queued to run at once, or as a timer due at {@code dueNanos}. A step that
+   * throws fails its burst.
+   */
+  private static final class Step implements Comparable<Step> {
+    final long dueNanos;
+    final Burst burst;
+    final Runnable task;
+
+    Step(long dueNanos, Burst burst, Runnable task) {
+      this.dueNanos = dueNanos;
+      this.burst = burst;
+      this.task = task;
+    }
+
+    void run() {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        burst.fail(e);
+      }
+    }
+
+    @Override
+    public int compareTo(Step other) {
+      return Long.compare(dueNanos - other.dueNanos, 0);
+    }
+  }
+
+  /**
+   * One burst of probes. Only touched on the engine thread.
+   */
+  private final class Burst {
+    final CompletableFuture<PingStatistics> future = new CompletableFuture<>();
+    final InetSocketAddress target;
+    final double[] rtts;
+    final Attempt[] attempts;
+    int outstanding;
+    boolean finished;
+
+    Burst(InetSocketAddress target, int count) {
+      this.target = target;
+      this.rtts = new double[count];
+      this.attempts = new Attempt[count];
+      this.outstanding = count;
+      Arrays.fill(rtts, Double.NaN);
+    }
+
+    void send(int seq) {
+      if (finished) {
+        return;
+      }
+      Attempt attempt = new Attempt(this, seq);
+      attempts[seq] = attempt;
+      attempt.start();
+    }
+
+    void reply(int seq, double rtt) {
+      if (finished || !Double.isNaN(rtts[seq])) {
+        return;
+      }
+      rtts[seq] = rtt;
+      answered();
+    }
+
+    void lost() {
+      if (!finished) {
+        answered();
+      }
+    }
+
+    private void answered() {
+      if (--outstanding == 0) {
+        finish();
+      }
+    }
+
+    void finish() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      for (Attempt attempt : attempts) {
+        if (attempt != null) {
+          attempt.close();
+        }
+      }
+      future.complete(PingStatistics.fromRoundTrips(rtts));
+    }
+
+    void fail(Throwable error) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      for (Attempt attempt : attempts) {
+        if (attempt != null) {
+          attempt.close();
+        }
+      }
+      future.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * A single sequence-numbered probe.
+   */
+  private final class Attempt {
+    final Burst burst;
+    final int seq;
+    SocketChannel channel;
+    SelectionKey key;
+    long sentNanos;
+    boolean done;
+
+    Attempt(Burst burst, int seq) {
+      this.burst = burst;
+      this.seq = seq;
+    }
+
+    void start() {
+      try {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        // Linger 0 resets the connection on close instead of leaving it in TIME_WAIT
+        channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+        sentNanos = System.nanoTime();
+        if (channel.connect(burst.target)) {
+          complete(true);
+        } else {
+          key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+      } catch (ConnectException e) {
+        // Refused: the host answered
+        complete(true);
+      } catch (IOException e) {
+        complete(false);
+      }
+    }
+
+    void onConnect() {
+      try {
+        channel.finishConnect();
+        complete(true);
+      } catch (ConnectException e) {
+        // Connection refused still means the host answered. Unreachable hosts and networks raise
+        // NoRouteToHostException or a plain SocketException instead, which are not ConnectExceptions
+        complete(true);
+      } catch (IOException e) {
+        complete(false);
+      }
+    }
+
+    void complete(boolean replied) {
+      if (done) {
+        return;
+      }
+      done = true;
+      double rtt = (System.nanoTime() - sentNanos) / 1_000_000.0;
+      close();
+      if (replied) {
+        burst.reply(seq, rtt);
+      } else {
+        burst.lost();
+      }
+    }
+
+    void close() {
+      done = true;
+      if (key != null) {
+        key.cancel();
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+}
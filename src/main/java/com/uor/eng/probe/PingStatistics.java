@@ -0,0 +1,58 @@
+package com.uor.eng.probe;
+
+import lombok.Data;
+
+import java.util.Arrays;
+
+/**
+ * Summary of one ping burst.
+ */
+@Data
+public class PingStatistics {
+  private int sent;
+  private int received;
+  private double minPing;         // ms
+  private double avgPing;         // ms
+  private double maxPing;         // ms
+  private double stdDev;          // ms
+  private double packetLoss;      // %
+
+  public static PingStatistics fromLostBurst(int count) {
+    double[] rtts = new double[count];
+    Arrays.fill(rtts, Double.NaN);
+    return fromRoundTrips(rtts);
+  }
+
+  /**
+   * Builds the summary from per-sequence round-trip times, where NaN marks a lost probe.
+   */
+  static PingStatistics fromRoundTrips(double[] rtts) {
+    PingStatistics stats = new PingStatistics();
+    stats.sent = rtts.length;
+
+    double min = Double.MAX_VALUE;
+    double max = 0;
+    double sum = 0;
+    double sumSquares = 0;
+    for (double rtt : rtts) {
+      if (Double.isNaN(rtt)) {
+        continue;
+      }
+      stats.received++;
+      min = Math.min(min, rtt);
+      max = Math.max(max, rtt);
+      sum += rtt;
+      sumSquares += rtt * rtt;
+    }
+
+    stats.packetLoss = stats.sent == 0 ? 100.0 : ((stats.sent - stats.received) * 100.0) / stats.sent;
+    if (stats.received > 0) {
+      double avg = sum / stats.received;
+      stats.minPing = min;
+      stats.maxPing = max;
+      stats.avgPing = avg;
+      stats.stdDev = Math.sqrt(Math.max(0, sumSquares / stats.received - avg * avg));
+    }
+    return stats;
+  }
+}
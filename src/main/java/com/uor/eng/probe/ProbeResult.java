@@ -0,0 +1,24 @@
+package com.uor.eng.probe;
+
+import lombok.Data;
+
+/**
+ * Raw phase timings collected by a single probe, before they are turned into {@code NetworkMetrics}.
+ * Phases are measured back to back, so dnsTime + tcpTime + tlsTime + ttfb + transferTime ~ totalTime.
+ */
+@Data
+public class ProbeResult {
+  private double dnsTime;         // ms
+  private double tcpTime;         // ms
+  private double tlsTime;         // ms
+  private double ttfb;            // ms, request sent -> first response byte
+  private double transferTime;    // ms, first byte -> last byte
+  private double totalTime;       // ms
+  private long bytesRead;
+  private int statusCode;
+
+  // Only filled in by the keep-alive probe
+  private double coldTtfb;        // ms, DNS + TCP + TLS + TTFB on the last fresh connection
+  private double warmTtfb;        // ms, TTFB on the last reused connection
+  private double reuseRatio;      // 0..1
+}
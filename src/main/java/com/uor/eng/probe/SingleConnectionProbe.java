@@ -0,0 +1,94 @@
+package com.uor.eng.probe;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.Channels;
+
+/**
+ * Blocking probe that resolves, connects, handshakes, sends one request and drains the response
+ * over a single connection, timestamping each phase as it goes. The phases are disjoint, so
+ * DNS + TCP + TLS + TTFB + transfer add up to the total time of the sample. The address comes from
+ * the {@link DnsCache}, and the DNS phase is its last measured uncached resolution time.
+ */
+public class SingleConnectionProbe {
+  private final DnsCache dnsCache;
+  private final int timeoutMs;
+  private final BodyMode bodyMode;
+  private final long bodyBudget;
+
+  public SingleConnectionProbe(DnsCache dnsCache, int timeoutMs, BodyMode bodyMode, long bodyBudget) {
+    this.dnsCache = dnsCache;
+    this.timeoutMs = timeoutMs;
+    this.bodyMode = bodyMode;
+    this.bodyBudget = bodyBudget;
+  }
+
+  public ProbeResult probe(URL url) throws IOException {
+    ProbeResult result = new ProbeResult();
+    String host = url.getHost();
+    int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+
+    InetAddress address = dnsCache.resolveFirst(host);
+    long connectStart = System.nanoTime();
+    result.setDnsTime(dnsCache.getResolutionTime(host));
+
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(timeoutMs);
+      socket.connect(new InetSocketAddress(address, port), timeoutMs);
+      long tlsStart = System.nanoTime();
+      result.setTcpTime(millis(tlsStart - connectStart));
+
+      long requestStart = tlsStart;
+      if ("https".equalsIgnoreCase(url.getProtocol())) {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+        socket = sslSocket;
+        SSLParameters params = sslSocket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(params);
+        sslSocket.startHandshake();
+        requestStart = System.nanoTime();
+        result.setTlsTime(millis(requestStart - tlsStart));
+      }
+
+      OutputStream out = socket.getOutputStream();
+      out.write(HttpProbeSupport.buildRequest(url, host, port, false, bodyMode, bodyBudget).array());
+      out.flush();
+
+      BodyDrain drain = BodyDrain.acquire();
+      long firstByte;
+      try {
+        result.setBytesRead(drain.drain(Channels.newChannel(socket.getInputStream()), bodyMode.limit(bodyBudget)));
+        firstByte = drain.getFirstByteNanos();
+        result.setStatusCode(drain.getStatusCode());
+      } finally {
+        BodyDrain.release(drain);
+      }
+      if (firstByte != 0) {
+        result.setTtfb(millis(firstByte - requestStart));
+      }
+
+      long end = System.nanoTime();
+      if (firstByte != 0) {
+        result.setTransferTime(millis(end - firstByte));
+      }
+      result.setTotalTime(result.getDnsTime() + millis(end - connectStart));
+      return result;
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
@@ -0,0 +1,250 @@
+package com.uor.eng.probe;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures real upload goodput by streaming a payload to a dedicated endpoint, either as an HTTP
+ * POST ({@code http://} / {@code https://}) or over a raw TCP connection ({@code tcp://host:port}),
+ * where the payload is followed by a half-close and the server answers once it has read everything.
+ * {@link UploadSink} implements both sides for offline testing.
+ *
+ * <p>Every probe sends from one shared read-only direct buffer of incompressible bytes, so plain
+ * connections write straight from off-heap memory. Bytes sent during the warm-up window (TCP slow
+ * start) are left out, and the clock stops when the server's acknowledgement arrives rather than
+ * when the last write returns, since that only means the bytes reached the local send buffer.
+ *
+ * <p>Configured with {@code -Dmonitor.upload.url}, {@code -Dmonitor.upload.bytes} (4 MiB by default)
+ * and {@code -Dmonitor.upload.interval} in ms (30s by default). Upload speed is a property of the
+ * local uplink rather than of a monitored site, so one measurement per interval serves every site.
+ * It runs on a thread of its own, so an upload never occupies a probe thread.
+ */
+public class UploadProbe implements AutoCloseable {
+  private static final int CHUNK_SIZE = 256 * 1024;
+  private static final long DEFAULT_PAYLOAD_BYTES = 4 * 1024 * 1024;
+  private static final long DEFAULT_INTERVAL_MS = 30_000;
+  private static final long WARMUP_MS = 250;
+  private static final long MAX_DURATION_MS = 20_000;
+  private static final int MAX_ACK_BYTES = 64 * 1024;
+
+  private static final ByteBuffer PAYLOAD = createPayload();
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "upload-watchdog");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final URI target;
+  private final DnsCache dnsCache;
+  private final int timeoutMs;
+  private final long payloadBytes;
+  private final long intervalNanos;
+  private final AtomicBoolean inFlight = new AtomicBoolean();
+  private final ExecutorService uploader = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "upload-probe");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private volatile UploadResult latest;
+  private volatile long lastStartNanos;
+
+  public UploadProbe(URI target, DnsCache dnsCache, int timeoutMs, long payloadBytes, long intervalMs) {
+    String scheme = target.getScheme() == null ? "" : target.getScheme().toLowerCase();
+    if (!scheme.equals("http") && !scheme.equals("https") && !scheme.equals("tcp")) {
+      throw new IllegalArgumentException("Unsupported upload target " + target);
+    }
+    if (scheme.equals("tcp") && target.getPort() == -1) {
+      throw new IllegalArgumentException("Raw upload target needs a port: " + target);
+    }
+    this.target = target;
+    this.dnsCache = dnsCache;
+    this.timeoutMs = timeoutMs;
+    this.payloadBytes = payloadBytes;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+  }
+
+  /**
+   * Builds a probe from the {@code monitor.upload.*} properties, or returns null when no upload
+   * endpoint is configured.
+   */
+  public static UploadProbe fromSystemProperties(DnsCache dnsCache, int timeoutMs) {
+    String url = System.getProperty("monitor.upload.url");
+    if (url == null || url.isBlank()) {
+      return null;
+    }
+    try {
+      return new UploadProbe(new URI(url.trim()), dnsCache, timeoutMs,
+          Math.max(1, Long.getLong("monitor.upload.bytes", DEFAULT_PAYLOAD_BYTES)),
+          Math.max(0, Long.getLong("monitor.upload.interval", DEFAULT_INTERVAL_MS)));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      System.err.println("Ignoring upload target '" + url + "': " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Starts a measurement in the background if the last one is older than the interval and none is
+   * running. Never blocks the caller.
+   */
+  public void refreshIfStale() {
+    long now = System.nanoTime();
+    if (lastStartNanos != 0 && now - lastStartNanos < intervalNanos) {
+      return;
+    }
+    if (!inFlight.compareAndSet(false, true)) {
+      return;
+    }
+    lastStartNanos = now;
+    uploader.execute(() -> {
+      try {
+        latest = probe();
+      } catch (IOException e) {
+        latest = null;
+        System.err.println("Upload probe to " + target + " failed: " + e.getMessage());
+      } finally {
+        inFlight.set(false);
+      }
+    });
+  }
+
+  /**
+   * Upload speed in Mbps from the most recent successful measurement, or 0 if there is none.
+   */
+  public double getLatestUploadSpeed() {
+    UploadResult result = latest;
+    return result == null || result.getStatusCode() >= 400 ? 0 : result.getUploadSpeed();
+  }
+
+  public UploadResult getLatest() {
+    return latest;
+  }
+
+  public UploadResult probe() throws IOException {
+    boolean raw = target.getScheme().equalsIgnoreCase("tcp");
+    boolean tls = target.getScheme().equalsIgnoreCase("https");
+    String host = target.getHost();
+    int port = target.getPort() != -1 ? target.getPort() : (tls ? 443 : 80);
+
+    SocketChannel channel = SocketChannel.open();
+    ScheduledFuture<?> deadline = WATCHDOG.schedule(() -> closeQuietly(channel), MAX_DURATION_MS,
+        TimeUnit.MILLISECONDS);
+    try {
+      channel.socket().setSoTimeout(timeoutMs);
+      channel.socket().setSendBufferSize(CHUNK_SIZE);
+      channel.socket().connect(new InetSocketAddress(dnsCache.resolveFirst(host), port), timeoutMs);
+
+      WritableByteChannel out = channel;
+      // Reads go through the socket's stream so the read timeout applies
+      ReadableByteChannel in = Channels.newChannel(channel.socket().getInputStream());
+      if (tls) {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(channel.socket(), host, port, true);
+        SSLParameters params = sslSocket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(params);
+        sslSocket.startHandshake();
+        out = Channels.newChannel(sslSocket.getOutputStream());
+        in = Channels.newChannel(sslSocket.getInputStream());
+      }
+      if (!raw) {
+        ByteBuffer headers = HttpProbeSupport.buildUploadHeaders(target.toURL(), host, port, payloadBytes);
+        while (headers.hasRemaining()) {
+          out.write(headers);
+        }
+      }
+
+      UploadResult result = new UploadResult();
+      long start = System.nanoTime();
+      long warmupEnd = 0;
+      long sent = 0;
+      ByteBuffer chunk = PAYLOAD.duplicate();
+      while (sent < payloadBytes) {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), payloadBytes - sent));
+        while (chunk.hasRemaining()) {
+          sent += out.write(chunk);
+        }
+        if (warmupEnd == 0 && System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(WARMUP_MS)) {
+          warmupEnd = System.nanoTime();
+          result.setWarmupBytes(sent);
+        }
+      }
+      if (raw) {
+        channel.shutdownOutput();
+      }
+
+      long acknowledged = awaitAcknowledgement(in, result);
+      if (warmupEnd == 0) {
+        // The whole payload went out within the warm-up window, so there is nothing to leave out
+        warmupEnd = start;
+      }
+      double transferSeconds = (acknowledged - warmupEnd) / 1_000_000_000.0;
+      result.setBytesSent(sent);
+      result.setWarmupTime((warmupEnd - start) / 1_000_000.0);
+      result.setTransferTime(transferSeconds * 1000);
+      result.setGoodput(transferSeconds > 0 ? (sent - result.getWarmupBytes()) / transferSeconds : 0);
+      return result;
+    } finally {
+      deadline.cancel(false);
+      closeQuietly(channel);
+    }
+  }
+
+  /**
+   * Waits for the server's reply and returns when its first byte arrived.
+   */
+  private static long awaitAcknowledgement(ReadableByteChannel in, UploadResult result) throws IOException {
+    BodyDrain drain = BodyDrain.acquire();
+    try {
+      drain.drain(in, MAX_ACK_BYTES);
+      if (drain.getFirstByteNanos() == 0) {
+        throw new IOException("Upload target closed the connection without a reply");
+      }
+      result.setStatusCode(drain.getStatusCode());
+      return drain.getFirstByteNanos();
+    } finally {
+      BodyDrain.release(drain);
+    }
+  }
+
+  /**
+   * Stops the upload thread, aborting a measurement in progress.
+   */
+  @Override
+  public void close() {
+    uploader.shutdownNow();
+  }
+
+  private static ByteBuffer createPayload() {
+    // Random bytes, so a compressing proxy or link cannot inflate the figure
+    byte[] bytes = new byte[CHUNK_SIZE];
+    new Random(0x5EED).nextBytes(bytes);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    buffer.put(bytes).flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.uor.eng.probe;
+
+import lombok.Data;
+
+/**
+ * Outcome of one upload measurement.
+ */
+@Data
+public class UploadResult {
+  private long bytesSent;
+  private long warmupBytes;       // sent during the warm-up window, excluded from goodput
+  private double warmupTime;      // ms
+  private double transferTime;    // ms, end of warm-up -> server acknowledged the last byte
+  private double goodput;         // bytes/s after warm-up
+  private int statusCode;         // 0 in raw socket mode
+
+  public double getUploadSpeed() {
+    return (goodput * 8) / (1024 * 1024); // Mbps
+  }
+}
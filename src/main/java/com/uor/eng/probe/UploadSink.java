@@ -0,0 +1,188 @@
+package com.uor.eng.probe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local endpoint for {@link UploadProbe}, so upload measurements can be tested without a remote
+ * server. It discards everything it receives and answers with the byte count:
+ * <ul>
+ *   <li>HTTP POST/PUT with a {@code Content-Length}: reads the body, replies {@code 200} with the
+ *   count as a plain-text body;</li>
+ *   <li>anything else is treated as a raw upload: reads until the client half-closes, then writes
+ *   the count followed by a newline.</li>
+ * </ul>
+ * Run it standalone with {@code java com.uor.eng.probe.UploadSink [port]} and point
+ * {@code -Dmonitor.upload.url} at {@code http://127.0.0.1:<port>/} or {@code tcp://127.0.0.1:<port>}.
+ */
+public class UploadSink implements AutoCloseable {
+  private static final int DEFAULT_PORT = 18090;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_HEADER_BYTES = 8192;
+
+  private final ServerSocketChannel server;
+  private final ExecutorService handlers;
+  private final Thread acceptor;
+
+  public UploadSink(int port) throws IOException {
+    this.server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port));
+    this.handlers = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "upload-sink-connection");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.acceptor = new Thread(this::acceptLoop, "upload-sink");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return server.socket().getLocalPort();
+  }
+
+  private void acceptLoop() {
+    while (server.isOpen()) {
+      try {
+        SocketChannel client = server.accept();
+        handlers.execute(() -> handle(client));
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        System.err.println("Upload sink accept failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void handle(SocketChannel client) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    try (client) {
+      // Read enough to tell an HTTP request from a raw upload
+      while (buffer.position() < 5 && client.read(buffer) >= 0) {
+        // keep reading
+      }
+      if (startsWith(buffer, "POST ") || startsWith(buffer, "PUT ")) {
+        handleHttp(client, buffer);
+      } else {
+        long received = buffer.position();
+        received += discard(client, buffer, Long.MAX_VALUE);
+        write(client, received + "\n");
+      }
+    } catch (IOException e) {
+      System.err.println("Upload sink connection failed: " + e.getMessage());
+    }
+  }
+
+  private void handleHttp(SocketChannel client, ByteBuffer buffer) throws IOException {
+    int headerEnd;
+    while ((headerEnd = indexOfHeaderEnd(buffer)) < 0) {
+      if (buffer.position() >= MAX_HEADER_BYTES || client.read(buffer) < 0) {
+        write(client, response("431 Request Header Fields Too Large", ""));
+        return;
+      }
+    }
+
+    byte[] headerBytes = new byte[headerEnd];
+    buffer.get(0, headerBytes);
+    long contentLength = -1;
+    for (String line : new String(headerBytes, StandardCharsets.US_ASCII).split("\r\n")) {
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("content-length")) {
+        try {
+          contentLength = Long.parseLong(line.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+          write(client, response("400 Bad Request", ""));
+          return;
+        }
+      }
+    }
+    if (contentLength < 0) {
+      write(client, response("411 Length Required", ""));
+      return;
+    }
+
+    long received = Math.min(contentLength, buffer.position() - (headerEnd + 4));
+    received += discard(client, buffer, contentLength - received);
+    String status = received == contentLength ? "200 OK" : "400 Bad Request";
+    write(client, response(status, Long.toString(received)));
+  }
+
+  /**
+   * Reads and drops up to {@code count} bytes. Returns how many arrived before end of stream.
+   */
+  private static long discard(SocketChannel client, ByteBuffer buffer, long count) throws IOException {
+    long total = 0;
+    while (total < count) {
+      buffer.clear();
+      if (count - total < buffer.capacity()) {
+        buffer.limit((int) (count - total));
+      }
+      int n = client.read(buffer);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+    return total;
+  }
+
+  private static int indexOfHeaderEnd(ByteBuffer buffer) {
+    for (int i = 0; i + 3 < buffer.position(); i++) {
+      if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n' && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, String prefix) {
+    if (buffer.position() < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (buffer.get(i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String response(String status, String body) {
+    return "HTTP/1.1 " + status + "\r\n"
+        + "Content-Type: text/plain\r\n"
+        + "Content-Length: " + body.length() + "\r\n"
+        + "Connection: close\r\n\r\n"
+        + body;
+  }
+
+  private static void write(SocketChannel client, String text) throws IOException {
+    ByteBuffer out = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    while (out.hasRemaining()) {
+      client.write(out);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      server.close();
+    } catch (IOException ignored) {
+    }
+    handlers.shutdownNow();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    UploadSink sink = new UploadSink(port);
+    System.out.println("Upload sink listening on port " + sink.getPort());
+    sink.acceptor.join();
+  }
+}
@@ -0,0 +1,55 @@
+package com.uor.eng.stats;
+
+/**
+ * Point-in-time copy of one or more {@link LatencyHistogram}s. Snapshots share the same bucket
+ * layout, so merging across sites or time windows is a plain element-wise sum.
+ */
+public final class HistogramSnapshot {
+  private final long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+  private long totalCount;
+
+  void add(int bucket, long count) {
+    counts[bucket] += count;
+    totalCount += count;
+  }
+
+  /**
+   * Adds another snapshot into this one and returns this.
+   */
+  public HistogramSnapshot merge(HistogramSnapshot other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    return this;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Value at the given percentile (0-100) in ms, or 0 if the snapshot is empty.
+   */
+  public double getPercentile(double percentile) {
+    return percentile(counts, totalCount, percentile);
+  }
+
+  /**
+   * Value at the given percentile (0-100) in ms of raw bucket counts, or 0 if they are empty.
+   */
+  static double percentile(long[] counts, long totalCount, double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return LatencyHistogram.bucketValue(i) / 1000.0;
+      }
+    }
+    return LatencyHistogram.bucketValue(counts.length - 1) / 1000.0;
+  }
+}
@@ -0,0 +1,88 @@
+package com.uor.eng.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size recording histogram with log-linear buckets, in the style of HdrHistogram. Each power
+ * of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so any recorded value is off by at
+ * most about 3%. Values are microseconds from 0 up to about 71 minutes; larger values land in the
+ * top bucket. Recording is a single atomic increment, so any number of threads can record at once.
+ */
+public final class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int MAX_EXPONENT = 31;
+  static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  public void record(long micros) {
+    counts.incrementAndGet(bucketIndex(micros));
+  }
+
+  public void recordMillis(double millis) {
+    record(Math.round(millis * 1000));
+  }
+
+  /**
+   * Adds this histogram's current counts to {@code snapshot}.
+   */
+  public void addTo(HistogramSnapshot snapshot) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = counts.get(i);
+      if (count != 0) {
+        snapshot.add(i, count);
+      }
+    }
+  }
+
+  /**
+   * Adds this histogram's current counts to {@code totals}, indexed by bucket, and returns how
+   * many samples that was.
+   */
+  long addTo(long[] totals) {
+    long added = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long count = counts.get(i);
+      totals[i] += count;
+      added += count;
+    }
+    return added;
+  }
+
+  public HistogramSnapshot snapshot() {
+    HistogramSnapshot snapshot = new HistogramSnapshot();
+    addTo(snapshot);
+    return snapshot;
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  static int bucketIndex(long micros) {
+    long value = Math.max(0, Math.min(micros, MAX_VALUE));
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Midpoint of a bucket in microseconds.
+   */
+  static double bucketValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lower + ((1L << shift) - 1) / 2.0;
+  }
+}
@@ -0,0 +1,77 @@
+package com.uor.eng.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram over a rolling time window, kept as a ring of per-slice histograms. A slice
+ * is cleared lazily by the first sample that lands in it after it has expired, so there is no
+ * background thread; a sample recorded while its slice is being cleared may be lost.
+ */
+public final class RollingLatencyHistogram {
+  private final LatencyHistogram[] slices;
+  private final AtomicLongArray sliceEpochs;
+  private final long sliceMillis;
+
+  public RollingLatencyHistogram(int sliceCount, long sliceMillis) {
+    this.slices = new LatencyHistogram[sliceCount];
+    this.sliceEpochs = new AtomicLongArray(sliceCount);
+    this.sliceMillis = sliceMillis;
+    for (int i = 0; i < sliceCount; i++) {
+      slices[i] = new LatencyHistogram();
+      sliceEpochs.set(i, -1);
+    }
+  }
+
+  public void recordMillis(double millis) {
+    long epoch = System.currentTimeMillis() / sliceMillis;
+    int index = (int) (epoch % slices.length);
+    long sliceEpoch = sliceEpochs.get(index);
+    if (sliceEpoch != epoch && sliceEpochs.compareAndSet(index, sliceEpoch, epoch)) {
+      slices[index].reset();
+    }
+    slices[index].recordMillis(millis);
+  }
+
+  /**
+   * Merges every slice still inside the window.
+   */
+  public HistogramSnapshot snapshot() {
+    long epoch = System.currentTimeMillis() / sliceMillis;
+    HistogramSnapshot snapshot = new HistogramSnapshot();
+    for (int i = 0; i < slices.length; i++) {
+      if (epoch - sliceEpochs.get(i) < slices.length) {
+        slices[i].addTo(snapshot);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Fills {@code out} with the given percentiles (0-100) in ms over the window, like
+   * {@link #snapshot()} followed by {@link HistogramSnapshot#getPercentile(double)} but summing
+   * the slices into {@code scratch} instead of a new snapshot. {@code scratch} needs
+   * {@link #scratchSize()} elements.
+   */
+  public void percentiles(double[] percentiles, double[] out, long[] scratch) {
+    long epoch = System.currentTimeMillis() / sliceMillis;
+    Arrays.fill(scratch, 0);
+    long total = 0;
+    for (int i = 0; i < slices.length; i++) {
+      if (epoch - sliceEpochs.get(i) < slices.length) {
+        total += slices[i].addTo(scratch);
+      }
+    }
+    for (int p = 0; p < percentiles.length; p++) {
+      out[p] = HistogramSnapshot.percentile(scratch, total, percentiles[p]);
+    }
+  }
+
+  public static int scratchSize() {
+    return LatencyHistogram.BUCKET_COUNT;
+  }
+
+  public long getWindowMillis() {
+    return sliceMillis * slices.length;
+  }
+}
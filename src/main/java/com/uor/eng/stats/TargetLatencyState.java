@@ -0,0 +1,61 @@
+package com.uor.eng.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jitter and latency distribution for one target. Recording takes no lock and boxes nothing.
+ *
+ * <p>Jitter is the RFC 3550 interarrival estimator, {@code J += (|D| - J) / 16}, where D is the
+ * difference between consecutive latencies. It is updated incrementally on every sample instead of
+ * being recomputed from the history. Every sample also goes into a one-minute rolling histogram
+ * for percentiles.
+ */
+public final class TargetLatencyState {
+  private static final long NO_SAMPLE = Long.MIN_VALUE;
+  private static final int HISTOGRAM_SLICES = 6;
+  private static final long HISTOGRAM_SLICE_MS = 10_000;
+
+  private final AtomicLong previousMicros = new AtomicLong(NO_SAMPLE);
+  private final AtomicLong jitterBits = new AtomicLong(Double.doubleToRawLongBits(0));
+  private final RollingLatencyHistogram histogram = new RollingLatencyHistogram(HISTOGRAM_SLICES, HISTOGRAM_SLICE_MS);
+  // Bucket totals for percentiles(), reused on every sample
+  private final long[] percentileScratch = new long[RollingLatencyHistogram.scratchSize()];
+
+  /**
+   * Records a latency in ms and returns the updated jitter estimate in ms.
+   */
+  public double record(double latencyMs) {
+    long micros = Math.round(latencyMs * 1000);
+    histogram.recordMillis(latencyMs);
+
+    long previous = previousMicros.getAndSet(micros);
+    if (previous == NO_SAMPLE) {
+      return getJitter();
+    }
+    double delta = Math.abs(micros - previous) / 1000.0;
+    long current;
+    double updated;
+    do {
+      current = jitterBits.get();
+      double jitter = Double.longBitsToDouble(current);
+      updated = jitter + (delta - jitter) / 16.0;
+    } while (!jitterBits.compareAndSet(current, Double.doubleToRawLongBits(updated)));
+    return updated;
+  }
+
+  /**
+   * Fills {@code out} with the given latency percentiles (0-100) in ms over the rolling window,
+   * reusing this target's scratch buffer, so it allocates nothing.
+   */
+  public synchronized void percentiles(double[] percentiles, double[] out) {
+    histogram.percentiles(percentiles, out, percentileScratch);
+  }
+
+  public RollingLatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  public double getJitter() {
+    return Double.longBitsToDouble(jitterBits.get());
+  }
+}
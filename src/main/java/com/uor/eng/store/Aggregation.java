@@ -0,0 +1,23 @@
+package com.uor.eng.store;
+
+/**
+ * What a {@link MetricsQuery} computes over the samples of each site and time step.
+ */
+public enum Aggregation {
+  AVG,
+  MIN,
+  MAX,
+  SUM,
+  /**
+   * Needs a column with sketches in the rollups, see {@link RollupTier#isSketched}.
+   */
+  PERCENTILE,
+  /**
+   * Number of successful samples.
+   */
+  COUNT,
+  /**
+   * Number of failed samples.
+   */
+  FAILURES
+}
@@ -0,0 +1,33 @@
+package com.uor.eng.store;
+
+/**
+ * Reads a stream written by {@link BitOutput}.
+ */
+final class BitInput {
+  private final long[] words;
+  private long position;
+
+  BitInput(long[] words) {
+    this.words = words;
+  }
+
+  boolean readBit() {
+    return readBits(1) != 0;
+  }
+
+  long readBits(int count) {
+    if (count == 0) {
+      return 0;
+    }
+    int index = (int) (position >>> 6);
+    int free = 64 - (int) (position & 63);
+    position += count;
+    if (count <= free) {
+      long value = words[index] >>> (free - count);
+      return count == 64 ? value : value & ((1L << count) - 1);
+    }
+    int spill = count - free;
+    long high = words[index] & ((1L << free) - 1);
+    return high << spill | words[index + 1] >>> (64 - spill);
+  }
+}
@@ -0,0 +1,65 @@
+package com.uor.eng.store;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit stream, written most significant bit first into 64-bit words.
+ */
+final class BitOutput {
+  private static final int INITIAL_WORDS = 64;
+
+  private long[] words = new long[INITIAL_WORDS];
+  private long bits;
+
+  void writeBit(boolean bit) {
+    writeBits(bit ? 1 : 0, 1);
+  }
+
+  /**
+   * Writes the low {@code count} (0-64) bits of {@code value}.
+   */
+  void writeBits(long value, int count) {
+    if (count == 0) {
+      return;
+    }
+    int index = (int) (bits >>> 6);
+    if (index + 1 >= words.length) {
+      words = Arrays.copyOf(words, words.length * 2);
+    }
+    int free = 64 - (int) (bits & 63);
+    if (count < 64) {
+      value &= (1L << count) - 1;
+    }
+    if (count <= free) {
+      words[index] |= value << (free - count);
+    } else {
+      int spill = count - free;
+      words[index] |= value >>> spill;
+      words[index + 1] |= value << (64 - spill);
+    }
+    bits += count;
+  }
+
+  long bitLength() {
+    return bits;
+  }
+
+  /**
+   * Copy of the words written so far, trimmed to length.
+   */
+  long[] toWords() {
+    return Arrays.copyOf(words, (int) ((bits + 63) >>> 6));
+  }
+
+  /**
+   * Empties the stream. A buffer that grew is given back, so an idle stream stays small.
+   */
+  void reset() {
+    if (words.length > INITIAL_WORDS) {
+      words = new long[INITIAL_WORDS];
+    } else {
+      Arrays.fill(words, 0, (int) Math.min(words.length, (bits + 63) >>> 6), 0);
+    }
+    bits = 0;
+  }
+}
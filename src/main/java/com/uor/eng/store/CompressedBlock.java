@@ -0,0 +1,105 @@
+package com.uor.eng.store;
+
+import lombok.Getter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable block of rows encoded by {@link GorillaEncoder}: one bit stream of timestamps and one
+ * per {@link MetricColumn}, so a reader decodes only the columns it asks for. The first and last
+ * timestamps sit outside the streams, which is what lets a reader skip whole blocks.
+ */
+public final class CompressedBlock {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+  @Getter
+  private final long firstTimestamp;
+  @Getter
+  private final long lastTimestamp;
+  @Getter
+  private final int count;
+  private final long[] timestampWords;
+  private final long[][] columnWords;
+
+  CompressedBlock(long firstTimestamp, long lastTimestamp, int count, long[] timestampWords, long[][] columnWords) {
+    this.firstTimestamp = firstTimestamp;
+    this.lastTimestamp = lastTimestamp;
+    this.count = count;
+    this.timestampWords = timestampWords;
+    this.columnWords = columnWords;
+  }
+
+  long[] timestampWords() {
+    return timestampWords;
+  }
+
+  long[] columnWords(MetricColumn column) {
+    return columnWords[column.ordinal()];
+  }
+
+  /**
+   * Whether the block has rows in {@code [fromMillis, toMillis)}.
+   */
+  public boolean overlaps(long fromMillis, long toMillis) {
+    return count > 0 && firstTimestamp < toMillis && lastTimestamp >= fromMillis;
+  }
+
+  /**
+   * Bytes taken by the encoded streams.
+   */
+  public long getSizeBytes() {
+    long words = timestampWords.length;
+    for (long[] column : columnWords) {
+      words += column.length;
+    }
+    return words * Long.BYTES;
+  }
+
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeLong(firstTimestamp);
+    out.writeLong(lastTimestamp);
+    out.writeInt(count);
+    out.writeShort(columnWords.length);
+    writeWords(out, timestampWords);
+    for (long[] column : columnWords) {
+      writeWords(out, column);
+    }
+  }
+
+  public static CompressedBlock readFrom(DataInput in) throws IOException {
+    long first = in.readLong();
+    long last = in.readLong();
+    int count = in.readInt();
+    int columns = in.readShort();
+    if (columns != COLUMNS.length) {
+      throw new IOException("Block has " + columns + " columns, expected " + COLUMNS.length);
+    }
+    long[] timestamps = readWords(in);
+    long[][] values = new long[columns][];
+    for (int c = 0; c < columns; c++) {
+      values[c] = readWords(in);
+    }
+    return new CompressedBlock(first, last, count, timestamps, values);
+  }
+
+  private static void writeWords(DataOutput out, long[] words) throws IOException {
+    out.writeInt(words.length);
+    for (long word : words) {
+      out.writeLong(word);
+    }
+  }
+
+  private static long[] readWords(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Negative stream length " + length);
+    }
+    long[] words = new long[length];
+    for (int i = 0; i < length; i++) {
+      words[i] = in.readLong();
+    }
+    return words;
+  }
+}
@@ -0,0 +1,105 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the per-site cold tiers ({@link SiteCompressedStore}). Like {@link RollupEngine},
+ * live samples only go to sites registered with {@link #forSite}, while replayed rows create them.
+ *
+ * <p>The tier is off unless {@code monitor.cold.blocks} or {@code monitor.archive.dir} is set.
+ * {@code monitor.cold.blocks} (6 with an archive) sets how many sealed blocks a site keeps in
+ * memory and {@code monitor.cold.block.rows} (3600) how many rows go into a block. At per-second
+ * sampling a block takes about 250 KB, so six blocks are six hours of history and about 1.5 MB
+ * per site. With {@code monitor.archive.dir} every sealed block is also appended to a per-site
+ * archive file.
+ */
+public class CompressedStore implements SampleListener, RowListener, AutoCloseable {
+  private static final int DEFAULT_MAX_BLOCKS = 6;
+  private static final int DEFAULT_BLOCK_ROWS = 3600;
+
+  private final Map<String, SiteCompressedStore> sites = new ConcurrentHashMap<>();
+  private final int blockRows;
+  private final int maxBlocks;
+  private final Path archiveDirectory;
+
+  public CompressedStore(int blockRows, int maxBlocks, Path archiveDirectory) {
+    this.blockRows = blockRows;
+    this.maxBlocks = maxBlocks;
+    this.archiveDirectory = archiveDirectory;
+  }
+
+  /**
+   * Builds the cold tier from system properties, or returns null when it is disabled.
+   */
+  public static CompressedStore fromSystemProperties() {
+    String dir = System.getProperty("monitor.archive.dir");
+    boolean archived = dir != null && !dir.isBlank();
+    int maxBlocks = Integer.getInteger("monitor.cold.blocks", archived ? DEFAULT_MAX_BLOCKS : 0);
+    if (maxBlocks <= 0) {
+      return null;
+    }
+    return new CompressedStore(
+        Math.max(1, Integer.getInteger("monitor.cold.block.rows", DEFAULT_BLOCK_ROWS)),
+        maxBlocks,
+        archived ? Paths.get(dir.trim()) : null);
+  }
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    SiteCompressedStore store = sites.get(siteAddress);
+    if (store != null) {
+      store.append(timestampMillis, metrics);
+    }
+  }
+
+  @Override
+  public void onRow(String siteAddress, long timestampMillis, double[] values) {
+    forSite(siteAddress).append(timestampMillis, values);
+  }
+
+  @Override
+  public void onRemoved(String siteAddress) {
+    remove(siteAddress);
+  }
+
+  public SiteCompressedStore forSite(String siteAddress) {
+    return sites.computeIfAbsent(siteAddress, site -> new SiteCompressedStore(site, blockRows, maxBlocks,
+        archiveDirectory == null ? null : new SeriesArchive(archiveDirectory, site)));
+  }
+
+  /**
+   * Cold tier for a site, or null if it has none.
+   */
+  public SiteCompressedStore get(String siteAddress) {
+    return sites.get(siteAddress);
+  }
+
+  /**
+   * Drops a site after sealing its open block, so an archive keeps everything it was sent.
+   */
+  public void remove(String siteAddress) {
+    SiteCompressedStore store = sites.remove(siteAddress);
+    if (store != null) {
+      store.seal();
+    }
+  }
+
+  public Collection<SiteCompressedStore> getSites() {
+    return Collections.unmodifiableCollection(sites.values());
+  }
+
+  /**
+   * Seals every open block.
+   */
+  @Override
+  public void close() {
+    sites.values().forEach(SiteCompressedStore::seal);
+  }
+}
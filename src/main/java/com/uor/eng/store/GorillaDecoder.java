@@ -0,0 +1,126 @@
+package com.uor.eng.store;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming decoder for a {@link CompressedBlock}. Only the columns passed to the constructor
+ * are decoded; the others are never touched.
+ *
+ * <pre>{@code
+ * GorillaDecoder decoder = new GorillaDecoder(block, MetricColumn.TTFB);
+ * while (decoder.next()) {
+ *   use(decoder.getTimestamp(), decoder.getValue(MetricColumn.TTFB));
+ * }
+ * }</pre>
+ */
+public final class GorillaDecoder {
+  private final int count;
+  private final BitInput timestamps;
+  private final MetricColumn[] columns;
+  private final BitInput[] inputs;
+  private final long[] bits;
+  private final int[] leading;
+  private final int[] trailing;
+  private final int[] slots = new int[MetricColumn.values().length];
+  private long timestamp;
+  private long delta;
+  private int row = -1;
+
+  public GorillaDecoder(CompressedBlock block, MetricColumn... columns) {
+    this.count = block.getCount();
+    this.timestamps = new BitInput(block.timestampWords());
+    this.columns = columns.clone();
+    this.inputs = new BitInput[columns.length];
+    this.bits = new long[columns.length];
+    this.leading = new int[columns.length];
+    this.trailing = new int[columns.length];
+    Arrays.fill(slots, -1);
+    for (int i = 0; i < columns.length; i++) {
+      inputs[i] = new BitInput(block.columnWords(columns[i]));
+      slots[columns[i].ordinal()] = i;
+    }
+  }
+
+  /**
+   * Moves to the next row; false once the block is exhausted.
+   */
+  public boolean next() {
+    if (row + 1 >= count) {
+      return false;
+    }
+    row++;
+    readTimestamp();
+    for (int i = 0; i < inputs.length; i++) {
+      readValue(i);
+    }
+    return true;
+  }
+
+  public long getTimestamp() {
+    checkRow();
+    return timestamp;
+  }
+
+  /**
+   * Value of a decoded column in the current row, NaN for a failed sample.
+   */
+  public double getValue(MetricColumn column) {
+    checkRow();
+    int slot = slots[column.ordinal()];
+    if (slot < 0) {
+      throw new IllegalArgumentException(column + " is not being decoded");
+    }
+    return Double.longBitsToDouble(bits[slot]);
+  }
+
+  private void checkRow() {
+    if (row < 0) {
+      throw new NoSuchElementException("next() has not been called");
+    }
+  }
+
+  private void readTimestamp() {
+    if (row == 0) {
+      timestamp = timestamps.readBits(64);
+      delta = 0;
+      return;
+    }
+    long deltaOfDelta;
+    if (!timestamps.readBit()) {
+      deltaOfDelta = 0;
+    } else if (!timestamps.readBit()) {
+      deltaOfDelta = signed(timestamps.readBits(7), 7);
+    } else if (!timestamps.readBit()) {
+      deltaOfDelta = signed(timestamps.readBits(9), 9);
+    } else if (!timestamps.readBit()) {
+      deltaOfDelta = signed(timestamps.readBits(12), 12);
+    } else {
+      deltaOfDelta = timestamps.readBits(64);
+    }
+    delta += deltaOfDelta;
+    timestamp += delta;
+  }
+
+  private void readValue(int i) {
+    BitInput in = inputs[i];
+    if (row == 0) {
+      bits[i] = in.readBits(64);
+      return;
+    }
+    if (!in.readBit()) {
+      return;
+    }
+    if (in.readBit()) {
+      leading[i] = (int) in.readBits(5);
+      int length = (int) in.readBits(6) + 1;
+      trailing[i] = 64 - leading[i] - length;
+    }
+    int length = 64 - leading[i] - trailing[i];
+    bits[i] ^= in.readBits(length) << trailing[i];
+  }
+
+  private static long signed(long value, int width) {
+    return value << (64 - width) >> (64 - width);
+  }
+}
@@ -0,0 +1,162 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+/**
+ * Streaming encoder for rows of samples, after the Gorilla time series format. Timestamps are
+ * written as the delta of their deltas in a variable-width code, so a steady one-second cadence
+ * costs one bit per row and a few ms of drift about a byte. Each column is written as the XOR of
+ * its value with the previous one: an unchanged value costs one bit, and otherwise only the
+ * meaningful bits of the XOR are written, reusing the previous leading/trailing zero window when
+ * it fits. Failed samples are rows of NaN like everywhere else in the store.
+ *
+ * <p>{@link #finish()} seals the rows appended so far into a {@link CompressedBlock} and starts a
+ * new block. Not thread-safe.
+ */
+public final class GorillaEncoder {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+  private final BitOutput timestamps = new BitOutput();
+  private final BitOutput[] columns = new BitOutput[COLUMNS.length];
+  private final long[] previousBits = new long[COLUMNS.length];
+  private final int[] previousLeading = new int[COLUMNS.length];
+  private final int[] previousTrailing = new int[COLUMNS.length];
+  private final double[] row = new double[COLUMNS.length];
+  private long firstTimestamp;
+  private long previousTimestamp;
+  private long previousDelta;
+  private int count;
+
+  public GorillaEncoder() {
+    for (int c = 0; c < columns.length; c++) {
+      columns[c] = new BitOutput();
+    }
+  }
+
+  public void append(long timestampMillis, NetworkMetrics metrics) {
+    boolean successful = metrics.isSuccessful();
+    for (int c = 0; c < COLUMNS.length; c++) {
+      row[c] = successful ? COLUMNS[c].extract(metrics) : Double.NaN;
+    }
+    append(timestampMillis, row);
+  }
+
+  /**
+   * Appends a row given in {@link MetricColumn} order.
+   */
+  public void append(long timestampMillis, double[] values) {
+    writeTimestamp(timestampMillis);
+    for (int c = 0; c < COLUMNS.length; c++) {
+      writeValue(c, values[c]);
+    }
+    count++;
+  }
+
+  private void writeTimestamp(long timestampMillis) {
+    if (count == 0) {
+      timestamps.writeBits(timestampMillis, 64);
+      firstTimestamp = timestampMillis;
+      previousTimestamp = timestampMillis;
+      previousDelta = 0;
+      return;
+    }
+    long delta = timestampMillis - previousTimestamp;
+    long deltaOfDelta = delta - previousDelta;
+    if (deltaOfDelta == 0) {
+      timestamps.writeBit(false);
+    } else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+      timestamps.writeBits(0b10, 2);
+      timestamps.writeBits(deltaOfDelta, 7);
+    } else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+      timestamps.writeBits(0b110, 3);
+      timestamps.writeBits(deltaOfDelta, 9);
+    } else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+      timestamps.writeBits(0b1110, 4);
+      timestamps.writeBits(deltaOfDelta, 12);
+    } else {
+      timestamps.writeBits(0b1111, 4);
+      timestamps.writeBits(deltaOfDelta, 64);
+    }
+    previousTimestamp = timestampMillis;
+    previousDelta = delta;
+  }
+
+  private void writeValue(int column, double value) {
+    BitOutput out = columns[column];
+    long bits = Double.doubleToRawLongBits(value);
+    if (count == 0) {
+      out.writeBits(bits, 64);
+      previousBits[column] = bits;
+      previousLeading[column] = -1;
+      return;
+    }
+    long xor = bits ^ previousBits[column];
+    previousBits[column] = bits;
+    if (xor == 0) {
+      out.writeBit(false);
+      return;
+    }
+    out.writeBit(true);
+    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+    int trailing = Long.numberOfTrailingZeros(xor);
+    int previous = previousLeading[column];
+    if (previous >= 0 && leading >= previous && trailing >= previousTrailing[column]) {
+      out.writeBit(false);
+      out.writeBits(xor >>> previousTrailing[column], 64 - previous - previousTrailing[column]);
+    } else {
+      int length = 64 - leading - trailing;
+      out.writeBit(true);
+      out.writeBits(leading, 5);
+      out.writeBits(length - 1, 6);
+      out.writeBits(xor >>> trailing, length);
+      previousLeading[column] = leading;
+      previousTrailing[column] = trailing;
+    }
+  }
+
+  /**
+   * Rows appended since the last {@link #finish()}.
+   */
+  public int size() {
+    return count;
+  }
+
+  public long getFirstTimestamp() {
+    return firstTimestamp;
+  }
+
+  /**
+   * Encoded size of the open block in bytes, rounded up per stream.
+   */
+  public long getSizeBytes() {
+    long bytes = (timestamps.bitLength() + 7) / 8;
+    for (BitOutput column : columns) {
+      bytes += (column.bitLength() + 7) / 8;
+    }
+    return bytes;
+  }
+
+  /**
+   * Copy of the open block, leaving the encoder as it is.
+   */
+  public CompressedBlock snapshot() {
+    long[][] columnWords = new long[columns.length][];
+    for (int c = 0; c < columns.length; c++) {
+      columnWords[c] = columns[c].toWords();
+    }
+    return new CompressedBlock(firstTimestamp, previousTimestamp, count, timestamps.toWords(), columnWords);
+  }
+
+  /**
+   * Seals the open block and starts a new one.
+   */
+  public CompressedBlock finish() {
+    CompressedBlock block = snapshot();
+    timestamps.reset();
+    for (BitOutput column : columns) {
+      column.reset();
+    }
+    count = 0;
+    return block;
+  }
+}
@@ -0,0 +1,161 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes samples to the {@code network_metrics} table, creating it on first connect. Against
+ * PostgreSQL each batch is one {@code COPY ... FROM STDIN}; any other JDBC database (an embedded
+ * stand-in for tests, say) gets a batched prepared insert. Metric columns of failed samples are
+ * NULL. A failed write closes the connection, and the next write reconnects.
+ */
+public class JdbcMetricsSink implements MetricsSink {
+  private static final String TABLE = "network_metrics";
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+  private final String url;
+  private final String user;
+  private final String password;
+  private Connection connection;
+  private CopyManager copyManager;
+
+  public JdbcMetricsSink(String url, String user, String password) {
+    this.url = url;
+    this.user = user;
+    this.password = password;
+  }
+
+  @Override
+  public void write(List<SampleRecord> batch) throws SQLException, IOException {
+    try {
+      connect();
+      if (copyManager != null) {
+        copyManager.copyIn("COPY " + TABLE + " (" + columnList() + ") FROM STDIN WITH (FORMAT csv)",
+            new StringReader(toCsv(batch)));
+      } else {
+        insert(batch);
+      }
+    } catch (SQLException | IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void connect() throws SQLException {
+    if (connection != null && !connection.isClosed()) {
+      return;
+    }
+    connection = DriverManager.getConnection(url, user, password);
+    try (Statement statement = connection.createStatement()) {
+      StringBuilder ddl = new StringBuilder("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+          + "site TEXT NOT NULL, ts TIMESTAMP WITH TIME ZONE NOT NULL, successful BOOLEAN NOT NULL, error_message TEXT");
+      for (MetricColumn column : COLUMNS) {
+        ddl.append(", ").append(columnName(column)).append(" DOUBLE PRECISION");
+      }
+      statement.execute(ddl.append(')').toString());
+      statement.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_site_ts ON " + TABLE + " (site, ts)");
+    }
+    copyManager = connection.isWrapperFor(PGConnection.class)
+        ? connection.unwrap(PGConnection.class).getCopyAPI()
+        : null;
+  }
+
+  private void insert(List<SampleRecord> batch) throws SQLException {
+    StringBuilder sql = new StringBuilder("INSERT INTO " + TABLE + " (" + columnList() + ") VALUES (?, ?, ?, ?");
+    for (int i = 0; i < COLUMNS.length; i++) {
+      sql.append(", ?");
+    }
+    sql.append(')');
+
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+      for (SampleRecord record : batch) {
+        NetworkMetrics metrics = record.getMetrics();
+        statement.setString(1, record.getSiteAddress());
+        statement.setTimestamp(2, new Timestamp(record.getTimestampMillis()));
+        statement.setBoolean(3, metrics.isSuccessful());
+        statement.setString(4, metrics.getErrorMessage());
+        for (int i = 0; i < COLUMNS.length; i++) {
+          if (metrics.isSuccessful()) {
+            statement.setDouble(5 + i, COLUMNS[i].extract(metrics));
+          } else {
+            statement.setNull(5 + i, Types.DOUBLE);
+          }
+        }
+        statement.addBatch();
+      }
+      statement.executeBatch();
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  private static String toCsv(List<SampleRecord> batch) {
+    StringBuilder csv = new StringBuilder(batch.size() * 256);
+    for (SampleRecord record : batch) {
+      NetworkMetrics metrics = record.getMetrics();
+      quote(csv, record.getSiteAddress()).append(',');
+      csv.append(Instant.ofEpochMilli(record.getTimestampMillis())).append(',');
+      csv.append(metrics.isSuccessful()).append(',');
+      if (metrics.getErrorMessage() != null) {
+        quote(csv, metrics.getErrorMessage());
+      }
+      for (MetricColumn column : COLUMNS) {
+        csv.append(',');
+        // An empty unquoted field is NULL, so failed samples stay out of aggregates
+        if (metrics.isSuccessful()) {
+          csv.append(column.extract(metrics));
+        }
+      }
+      csv.append('\n');
+    }
+    return csv.toString();
+  }
+
+  private static StringBuilder quote(StringBuilder csv, String value) {
+    return csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+  }
+
+  private static String columnList() {
+    StringBuilder columns = new StringBuilder("site, ts, successful, error_message");
+    for (MetricColumn column : COLUMNS) {
+      columns.append(", ").append(columnName(column));
+    }
+    return columns.toString();
+  }
+
+  private static String columnName(MetricColumn column) {
+    return column.name().toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  public void close() {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException ignored) {
+      }
+      connection = null;
+      copyManager = null;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.uor.eng.store;
+
+/**
+ * Bucket layout of the small timing histograms kept in rollup buckets: the same log-linear
+ * scheme as {@code LatencyHistogram} but with 4 sub-buckets per power of two (about 12% error)
+ * and a ceiling of about 134s, so a sketch is {@value #BUCKETS} counters.
+ */
+final class LatencySketch {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 26;
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private LatencySketch() {
+  }
+
+  static int index(double millis) {
+    long value = Math.max(0, Math.min(Math.round(millis * 1000), MAX_VALUE));
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * Midpoint of a bucket in ms.
+   */
+  static double value(int index) {
+    if (index < SUB_BUCKETS) {
+      return index / 1000.0;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return (lower + ((1L << shift) - 1) / 2.0) / 1000.0;
+  }
+
+  static double percentile(int[] counts, double percentile) {
+    long total = 0;
+    for (int count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return Double.NaN;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return value(i);
+      }
+    }
+    return value(counts.length - 1);
+  }
+}
@@ -0,0 +1,77 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The numeric fields of {@link NetworkMetrics} that get their own column in a {@link SiteMetricsStore}.
+ * Units are the same as on {@code NetworkMetrics}.
+ */
+public enum MetricColumn {
+  LATENCY(NetworkMetrics::getLatency, NetworkMetrics.Builder::latency),
+  DNS_TIME(NetworkMetrics::getDnsTime, NetworkMetrics.Builder::dnsTime),
+  TCP_TIME(NetworkMetrics::getTcpTime, NetworkMetrics.Builder::tcpTime),
+  TLS_TIME(NetworkMetrics::getTlsTime, NetworkMetrics.Builder::tlsTime),
+  TTFB(NetworkMetrics::getTtfb, NetworkMetrics.Builder::ttfb),
+  PACKET_LOSS(NetworkMetrics::getPacketLoss, NetworkMetrics.Builder::packetLoss),
+  THROUGHPUT(NetworkMetrics::getThroughput, NetworkMetrics.Builder::throughput),
+  JITTER(NetworkMetrics::getJitter, NetworkMetrics.Builder::jitter),
+  CONNECTION_QUALITY(NetworkMetrics::getConnectionQuality, NetworkMetrics.Builder::connectionQuality),
+  MOS(NetworkMetrics::getMos, NetworkMetrics.Builder::mos),
+  ERROR_RATE(NetworkMetrics::getErrorRate, NetworkMetrics.Builder::errorRate),
+  DOWNLOAD_SPEED(NetworkMetrics::getDownloadSpeed, NetworkMetrics.Builder::downloadSpeed),
+  UPLOAD_SPEED(NetworkMetrics::getUploadSpeed, NetworkMetrics.Builder::uploadSpeed),
+  MIN_PING(NetworkMetrics::getMinPing, NetworkMetrics.Builder::minPing),
+  AVG_PING(NetworkMetrics::getAvgPing, NetworkMetrics.Builder::avgPing),
+  MAX_PING(NetworkMetrics::getMaxPing, NetworkMetrics.Builder::maxPing),
+  PING_STD_DEV(NetworkMetrics::getPingStdDev, NetworkMetrics.Builder::pingStdDev),
+  P50_LATENCY(NetworkMetrics::getP50Latency, NetworkMetrics.Builder::p50Latency),
+  P90_LATENCY(NetworkMetrics::getP90Latency, NetworkMetrics.Builder::p90Latency),
+  P99_LATENCY(NetworkMetrics::getP99Latency, NetworkMetrics.Builder::p99Latency),
+  P999_LATENCY(NetworkMetrics::getP999Latency, NetworkMetrics.Builder::p999Latency),
+  COLD_TTFB(NetworkMetrics::getColdTtfb, NetworkMetrics.Builder::coldTtfb),
+  WARM_TTFB(NetworkMetrics::getWarmTtfb, NetworkMetrics.Builder::warmTtfb),
+  CONNECTION_REUSE_RATIO(NetworkMetrics::getConnectionReuseRatio, NetworkMetrics.Builder::connectionReuseRatio);
+
+  private static final MetricColumn[] COLUMNS = values();
+
+  private final ToDoubleFunction<NetworkMetrics> extractor;
+  private final ObjDoubleConsumer<NetworkMetrics.Builder> setter;
+
+  MetricColumn(ToDoubleFunction<NetworkMetrics> extractor, ObjDoubleConsumer<NetworkMetrics.Builder> setter) {
+    this.extractor = extractor;
+    this.setter = setter;
+  }
+
+  public double extract(NetworkMetrics metrics) {
+    return extractor.applyAsDouble(metrics);
+  }
+
+  public void apply(NetworkMetrics.Builder builder, double value) {
+    setter.accept(builder, value);
+  }
+
+  /**
+   * Rebuilds a sample from values in column order. A row of NaN latency is a failed sample.
+   */
+  public static NetworkMetrics toMetrics(double[] values) {
+    return toMetrics(values, NetworkMetrics.builder());
+  }
+
+  /**
+   * Same as {@link #toMetrics(double[])}, reusing {@code builder} so a loop over many rows only
+   * allocates the samples themselves.
+   */
+  public static NetworkMetrics toMetrics(double[] values, NetworkMetrics.Builder builder) {
+    if (Double.isNaN(values[LATENCY.ordinal()])) {
+      return NetworkMetrics.error("No data");
+    }
+    builder.reset().successful(true);
+    for (MetricColumn column : COLUMNS) {
+      column.setter.accept(builder, values[column.ordinal()]);
+    }
+    return builder.build();
+  }
+}
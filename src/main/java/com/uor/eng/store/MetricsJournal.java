@@ -0,0 +1,434 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of samples in fixed-size binary records, written through a memory-mapped
+ * segment file so an append is a handful of stores into the page cache. Records survive a crash
+ * of the process; after a crash of the machine the unflushed tail may be lost or torn, and
+ * recovery trims it.
+ *
+ * <p>Appends never wait for the disk. A background thread maps the next segment before the current
+ * one fills up, flushes full segments, deletes old ones and syncs {@code sites.txt}, in that
+ * order, so a flushed record never references a site id that is not on disk.
+ *
+ * <p>Record layout ({@value #RECORD_SIZE} bytes): timestamp (long, ms), site id (int), flags
+ * (int), one double per {@link MetricColumn}, then a CRC32C of everything before it. A zero
+ * timestamp marks the unused tail of a segment. Site ids map to addresses through
+ * {@code sites.txt} in the same directory. When a segment is full the journal rolls over to the
+ * next one and deletes the oldest beyond {@code maxSegments}; one more, still empty, is kept
+ * mapped ahead. On open, empty segments at the end are dropped and the journal resumes in the
+ * newest segment with records, after its last intact one.
+ *
+ * <p>Enabled with {@code -Dmonitor.journal.dir=<dir>}; {@code monitor.journal.segment.bytes}
+ * (8 MiB) and {@code monitor.journal.segments} (16) size it.
+ */
+public class MetricsJournal implements SampleListener, AutoCloseable {
+  static final int RECORD_SIZE = 216;
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+  private static final int VALUES_OFFSET = 16;
+  private static final int CRC_OFFSET = VALUES_OFFSET + COLUMNS.length * Double.BYTES;
+  private static final int FLAG_SUCCESSFUL = 1;
+  private static final int FLAG_REMOVED = 2;
+  private static final long DEFAULT_SEGMENT_BYTES = 8L * 1024 * 1024;
+  private static final int DEFAULT_MAX_SEGMENTS = 16;
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+  private static final String SITES_FILE = "sites.txt";
+
+  static {
+    if (CRC_OFFSET + Integer.BYTES > RECORD_SIZE) {
+      throw new IllegalStateException("Journal record too small for " + COLUMNS.length + " columns");
+    }
+  }
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final Map<String, Integer> siteIds = new HashMap<>();
+  private final List<String> siteNames = new ArrayList<>();
+  private final CRC32C crc = new CRC32C();
+  // Mapping the next segment, flushing and deleting old ones all happen here, off the probe threads
+  private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "metrics-journal-flusher");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private MappedByteBuffer segment;
+  private ByteBuffer crcView;
+  private long segmentNumber;
+  private int position;
+  private Future<MappedByteBuffer> nextSegment;
+  private boolean closed;
+
+  public MetricsJournal(Path directory, long segmentBytes, int maxSegments) throws IOException {
+    this.directory = directory;
+    this.segmentBytes = (int) Math.max(RECORD_SIZE, segmentBytes - segmentBytes % RECORD_SIZE);
+    this.maxSegments = Math.max(1, maxSegments);
+    Files.createDirectories(directory);
+    loadSites();
+
+    List<Path> segments = dropEmptyTail(listSegments());
+    if (segments.isEmpty()) {
+      useSegment(1, mapSegment(1));
+    } else {
+      long last = segmentNumber(segments.get(segments.size() - 1));
+      useSegment(last, mapSegment(last));
+      // A full segment is rolled over by the next append, not here, so replay still sees the
+      // oldest segment
+      position = recover(segment);
+    }
+  }
+
+  /**
+   * Opens the journal in {@code monitor.journal.dir}, or returns null when it is not set or cannot
+   * be opened.
+   */
+  public static MetricsJournal fromSystemProperties() {
+    String dir = System.getProperty("monitor.journal.dir");
+    if (dir == null || dir.isBlank()) {
+      return null;
+    }
+    try {
+      return new MetricsJournal(Paths.get(dir.trim()),
+          Long.getLong("monitor.journal.segment.bytes", DEFAULT_SEGMENT_BYTES),
+          Integer.getInteger("monitor.journal.segments", DEFAULT_MAX_SEGMENTS));
+    } catch (IOException e) {
+      System.err.println("Cannot open metrics journal in " + dir + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public synchronized void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    if (closed) {
+      return;
+    }
+    try {
+      int pos = claimRecord();
+      boolean successful = metrics.isSuccessful();
+      for (int c = 0; c < COLUMNS.length; c++) {
+        segment.putDouble(pos + VALUES_OFFSET + c * Double.BYTES,
+            successful ? COLUMNS[c].extract(metrics) : Double.NaN);
+      }
+      seal(pos, timestampMillis, siteId(siteAddress), successful ? FLAG_SUCCESSFUL : 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Records that a site was removed by the user, so replay no longer restores it.
+   */
+  public synchronized void markRemoved(String siteAddress) {
+    if (closed) {
+      return;
+    }
+    try {
+      int pos = claimRecord();
+      for (int c = 0; c < COLUMNS.length; c++) {
+        segment.putDouble(pos + VALUES_OFFSET + c * Double.BYTES, 0);
+      }
+      seal(pos, System.currentTimeMillis(), siteId(siteAddress), FLAG_REMOVED);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Replays every intact record, oldest first, into the listener and returns the sites that still
+   * have data, in the order they first appear. This costs one sequential pass over the segments
+   * and no allocation per record.
+   */
+  public synchronized List<String> replay(RowListener listener) throws IOException {
+    Set<String> sites = new LinkedHashSet<>();
+    double[] values = new double[COLUMNS.length];
+    CRC32C check = new CRC32C();
+    for (Path path : listSegments()) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        ByteBuffer view = buffer.duplicate();
+        for (int pos = 0; pos + RECORD_SIZE <= buffer.limit(); pos += RECORD_SIZE) {
+          long timestamp = buffer.getLong(pos);
+          if (timestamp == 0) {
+            break;
+          }
+          if (!isIntact(view, pos, check)) {
+            continue;
+          }
+          int siteId = buffer.getInt(pos + 8);
+          if (siteId < 0 || siteId >= siteNames.size()) {
+            continue;
+          }
+          String site = siteNames.get(siteId);
+          int flags = buffer.getInt(pos + 12);
+          if ((flags & FLAG_REMOVED) != 0) {
+            listener.onRemoved(site);
+            sites.remove(site);
+            continue;
+          }
+          for (int c = 0; c < COLUMNS.length; c++) {
+            values[c] = (flags & FLAG_SUCCESSFUL) != 0
+                ? buffer.getDouble(pos + VALUES_OFFSET + c * Double.BYTES)
+                : Double.NaN;
+          }
+          listener.onRow(site, timestamp, values);
+          sites.add(site);
+        }
+      }
+    }
+    return new ArrayList<>(sites);
+  }
+
+  private int claimRecord() throws IOException {
+    if (position + RECORD_SIZE > segmentBytes) {
+      roll();
+    }
+    int pos = position;
+    position += RECORD_SIZE;
+    return pos;
+  }
+
+  /**
+   * Writes the header fields and then the checksum, which is what makes the record valid.
+   */
+  private void seal(int pos, long timestampMillis, int siteId, int flags) {
+    segment.putInt(pos + 8, siteId);
+    segment.putInt(pos + 12, flags);
+    segment.putLong(pos, timestampMillis);
+    crc.reset();
+    crcView.limit(pos + CRC_OFFSET).position(pos);
+    crc.update(crcView);
+    segment.putInt(pos + CRC_OFFSET, (int) crc.getValue());
+  }
+
+  /**
+   * Checks a record's CRC. {@code view} is a duplicate of the segment buffer whose position and
+   * limit may be moved.
+   */
+  private static boolean isIntact(ByteBuffer view, int pos, CRC32C check) {
+    view.limit(pos + CRC_OFFSET).position(pos);
+    check.reset();
+    check.update(view);
+    view.limit(view.capacity());
+    return view.getInt(pos + CRC_OFFSET) == (int) check.getValue();
+  }
+
+  /**
+   * Finds the end of the valid records in a segment and clears a torn record left behind it.
+   */
+  private static int recover(MappedByteBuffer buffer) {
+    CRC32C check = new CRC32C();
+    ByteBuffer view = buffer.duplicate();
+    int pos = 0;
+    while (pos + RECORD_SIZE <= buffer.limit() && buffer.getLong(pos) != 0 && isIntact(view, pos, check)) {
+      pos += RECORD_SIZE;
+    }
+    if (pos + RECORD_SIZE <= buffer.limit() && buffer.getLong(pos) != 0) {
+      System.err.println("Metrics journal: discarding torn record at offset " + pos);
+      for (int i = 0; i < RECORD_SIZE; i++) {
+        buffer.put(pos + i, (byte) 0);
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Switches to the segment mapped ahead of time and leaves flushing the full one to the flusher.
+   * Only waits if the flusher has not finished mapping it yet.
+   */
+  private void roll() throws IOException {
+    MappedByteBuffer full = segment;
+    long current = segmentNumber + 1;
+    useSegment(current, awaitNextSegment());
+    flusher.execute(() -> {
+      full.force();
+      deleteSegmentsBefore(current - maxSegments + 1);
+    });
+  }
+
+  private MappedByteBuffer awaitNextSegment() throws IOException {
+    try {
+      return nextSegment.get();
+    } catch (ExecutionException e) {
+      // Try once more here, so the error reaches the caller
+      return mapSegment(segmentNumber + 1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the next journal segment");
+    }
+  }
+
+  private void useSegment(long number, MappedByteBuffer buffer) {
+    segment = buffer;
+    crcView = segment.duplicate();
+    segmentNumber = number;
+    position = 0;
+    // Touched ahead of time too, so the first writes to it do not page-fault on a probe thread
+    nextSegment = flusher.submit(() -> mapSegment(number + 1).load());
+  }
+
+  private MappedByteBuffer mapSegment(long number) throws IOException {
+    Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+  }
+
+  private void deleteSegmentsBefore(long number) {
+    try {
+      for (Path path : listSegments()) {
+        if (segmentNumber(path) < number) {
+          Files.deleteIfExists(path);
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Metrics journal: cannot delete old segments: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Deletes the empty segments at the end, such as the one mapped ahead, so the journal resumes
+   * in the newest segment that holds records and recovery checks its tail. Returns the rest.
+   */
+  private static List<Path> dropEmptyTail(List<Path> segments) throws IOException {
+    int end = segments.size();
+    while (end > 0 && isEmptySegment(segments.get(end - 1))) {
+      Files.delete(segments.get(--end));
+    }
+    return segments.subList(0, end);
+  }
+
+  private static boolean isEmptySegment(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer first = ByteBuffer.allocate(Long.BYTES);
+      while (first.hasRemaining() && channel.read(first) >= 0) {
+        // Read the first record's timestamp, or as much of it as the file has
+      }
+      return first.position() < Long.BYTES || first.getLong(0) == 0;
+    }
+  }
+
+  private List<Path> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+              && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static long segmentNumber(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private int siteId(String siteAddress) throws IOException {
+    Integer id = siteIds.get(siteAddress);
+    if (id != null) {
+      return id;
+    }
+    int newId = siteNames.size();
+    byte[] line = (newId + "\t" + siteAddress + "\n").getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(directory.resolve(SITES_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(line));
+    }
+    // Queued ahead of the flush of any segment holding records with this id
+    flusher.execute(this::syncSites);
+    siteIds.put(siteAddress, newId);
+    siteNames.add(siteAddress);
+    return newId;
+  }
+
+  private void syncSites() {
+    try (FileChannel channel = FileChannel.open(directory.resolve(SITES_FILE), StandardOpenOption.WRITE)) {
+      channel.force(true);
+    } catch (IOException e) {
+      System.err.println("Metrics journal: cannot sync " + SITES_FILE + ": " + e.getMessage());
+    }
+  }
+
+  private void loadSites() throws IOException {
+    Path file = directory.resolve(SITES_FILE);
+    if (!Files.exists(file)) {
+      return;
+    }
+    byte[] content = Files.readAllBytes(file);
+    int end = content.length;
+    while (end > 0 && content[end - 1] != '\n') {
+      end--;
+    }
+    if (end < content.length) {
+      // Drop a torn last line so the next id is appended on a line of its own
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.truncate(end);
+      }
+    }
+    for (String line : new String(content, 0, end, StandardCharsets.UTF_8).split("\n")) {
+      int tab = line.indexOf('\t');
+      if (tab <= 0) {
+        continue;
+      }
+      try {
+        int id = Integer.parseInt(line.substring(0, tab));
+        if (id != siteNames.size()) {
+          // A torn or out-of-order line; later ids cannot be trusted either
+          break;
+        }
+        String site = line.substring(tab + 1);
+        siteIds.put(site, id);
+        siteNames.add(site);
+      } catch (NumberFormatException e) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Waits for pending background flushes, then flushes the current segment to disk. Later samples
+   * are dropped.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    segment.force();
+  }
+}
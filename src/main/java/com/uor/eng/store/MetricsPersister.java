@@ -0,0 +1,161 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves samples from the probe threads to a {@link MetricsSink} without ever blocking them.
+ * Samples go into a bounded queue; a single writer thread takes them out in batches of up to
+ * {@code batchSize}, waiting at most {@value #LINGER_MS}ms for a batch to fill. A failed batch is
+ * retried with exponential backoff and dropped after {@value #MAX_ATTEMPTS} attempts. While the
+ * sink is down the queue fills up, and from then on the oldest queued sample is dropped to make
+ * room for each new one, so the freshest data is what survives an outage.
+ *
+ * <p>{@link #fromSystemProperties()} enables it with {@code -Dmonitor.db.url=jdbc:postgresql://...}
+ * plus optional {@code monitor.db.user}, {@code monitor.db.password}, {@code monitor.db.batch}
+ * and {@code monitor.db.queue}.
+ */
+public class MetricsPersister implements SampleListener, AutoCloseable {
+  private static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  private static final long LINGER_MS = 1000;
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long INITIAL_BACKOFF_MS = 500;
+  private static final long MAX_BACKOFF_MS = 30_000;
+  private static final long CLOSE_TIMEOUT_MS = 10_000;
+
+  private final MetricsSink sink;
+  private final BlockingQueue<SampleRecord> queue;
+  private final int batchSize;
+  private final Thread writer;
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean running = true;
+
+  public MetricsPersister(MetricsSink sink, int queueCapacity, int batchSize) {
+    this.sink = sink;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSize = batchSize;
+    this.writer = new Thread(this::writeLoop, "metrics-persister");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Builds a persister writing to the JDBC URL in {@code monitor.db.url}, or returns null when it
+   * is not set.
+   */
+  public static MetricsPersister fromSystemProperties() {
+    String url = System.getProperty("monitor.db.url");
+    if (url == null || url.isBlank()) {
+      return null;
+    }
+    MetricsSink sink = new JdbcMetricsSink(url.trim(),
+        System.getProperty("monitor.db.user"), System.getProperty("monitor.db.password"));
+    return new MetricsPersister(sink,
+        Math.max(1, Integer.getInteger("monitor.db.queue", DEFAULT_QUEUE_CAPACITY)),
+        Math.max(1, Integer.getInteger("monitor.db.batch", DEFAULT_BATCH_SIZE)));
+  }
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    SampleRecord record = new SampleRecord(siteAddress, timestampMillis, metrics);
+    while (!queue.offer(record)) {
+      if (queue.poll() != null) {
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  public long getWrittenCount() {
+    return written.get();
+  }
+
+  /**
+   * Samples lost to a full queue or to a batch that kept failing.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  public int getQueuedCount() {
+    return queue.size();
+  }
+
+  private void writeLoop() {
+    List<SampleRecord> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        SampleRecord first = queue.poll(LINGER_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+        while (batch.size() < batchSize && running) {
+          queue.drainTo(batch, batchSize - batch.size());
+          long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0) {
+            break;
+          }
+          SampleRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+        queue.drainTo(batch, batchSize - batch.size());
+        writeWithRetry(batch);
+      } catch (InterruptedException e) {
+        running = false;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void writeWithRetry(List<SampleRecord> batch) throws InterruptedException {
+    long backoff = INITIAL_BACKOFF_MS;
+    for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+      try {
+        sink.write(batch);
+        written.addAndGet(batch.size());
+        return;
+      } catch (Exception e) {
+        System.err.println("Persisting " + batch.size() + " samples failed (attempt " + attempt + "/"
+            + MAX_ATTEMPTS + "): " + e.getMessage());
+        if (!running) {
+          // Shutting down: one attempt only, so close() does not wait out the backoff
+          break;
+        }
+        if (attempt < MAX_ATTEMPTS) {
+          Thread.sleep(backoff);
+          backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+      }
+    }
+    dropped.addAndGet(batch.size());
+  }
+
+  /**
+   * Flushes what is queued, stops the writer and closes the sink.
+   */
+  @Override
+  public void close() {
+    running = false;
+    try {
+      writer.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      writer.interrupt();
+    }
+    sink.close();
+  }
+}
@@ -0,0 +1,35 @@
+package com.uor.eng.store;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A historical query: one aggregation of one column over {@code [fromMillis, toMillis)}, per
+ * site or over all of them, optionally split into steps of {@code stepMillis}.
+ */
+@Data
+public class MetricsQuery {
+  /**
+   * Result key used when sites are not grouped.
+   */
+  public static final String ALL_SITES = "*";
+
+  private final MetricColumn column;
+  private final Aggregation aggregation;
+  private final long fromMillis;
+  private final long toMillis;
+  /**
+   * Sites to query; empty means every site with data.
+   */
+  private List<String> sites = List.of();
+  /**
+   * Percentile (0-100) for {@link Aggregation#PERCENTILE}.
+   */
+  private double percentile = 99;
+  /**
+   * Length of each result step, aligned to {@code fromMillis}; 0 gives one step for the whole range.
+   */
+  private long stepMillis;
+  private boolean groupBySite = true;
+}
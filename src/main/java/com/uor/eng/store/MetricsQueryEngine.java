@@ -0,0 +1,134 @@
+package com.uor.eng.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Answers {@link MetricsQuery}s from the stores the controller keeps. Sites are looked up in the
+ * per-site registries, and each time range is split so that as much of it as possible comes from
+ * the coarsest rollup tier it lines up with: the whole days inside the range come from the day
+ * tier, the whole hours at either end from the hour tier, the whole minutes from the minute tier,
+ * and only the partial minutes at the edges from raw samples. Raw samples come from the ring in
+ * {@link SiteMetricsStore}, found by binary search, and from the cold tier for anything older.
+ * A query over months therefore reads a few hundred buckets and at most two minutes of samples.
+ *
+ * <p>Columns that are not rolled up (see {@link RollupTier#isRolledUp}) are answered from raw
+ * samples only, so as far back as the cold tier reaches.
+ */
+public class MetricsQueryEngine {
+  private final MetricsStore rawStore;
+  private final RollupEngine rollups;
+  private final CompressedStore coldStore;
+
+  /**
+   * @param coldStore may be null when the cold tier is disabled
+   */
+  public MetricsQueryEngine(MetricsStore rawStore, RollupEngine rollups, CompressedStore coldStore) {
+    this.rawStore = rawStore;
+    this.rollups = rollups;
+    this.coldStore = coldStore;
+  }
+
+  /**
+   * Runs a query and returns its points per site, in site order, or under
+   * {@link MetricsQuery#ALL_SITES} when sites are not grouped.
+   *
+   * @throws IllegalArgumentException for a percentile of a column without sketches or an empty range
+   */
+  public Map<String, List<QueryPoint>> query(MetricsQuery query) {
+    if (query.getToMillis() <= query.getFromMillis()) {
+      throw new IllegalArgumentException("Empty time range");
+    }
+    boolean percentile = query.getAggregation() == Aggregation.PERCENTILE;
+    if (percentile && !RollupTier.isSketched(query.getColumn())) {
+      throw new IllegalArgumentException("No percentiles are kept for " + query.getColumn());
+    }
+    List<String> sites = query.getSites().isEmpty() ? knownSites() : query.getSites();
+    long now = System.currentTimeMillis();
+    long step = query.getStepMillis() > 0 ? query.getStepMillis() : query.getToMillis() - query.getFromMillis();
+
+    Map<String, List<QueryPoint>> result = new LinkedHashMap<>();
+    if (query.isGroupBySite()) {
+      for (String site : sites) {
+        result.put(site, run(query, List.of(site), step, percentile, now));
+      }
+    } else {
+      result.put(MetricsQuery.ALL_SITES, run(query, sites, step, percentile, now));
+    }
+    return result;
+  }
+
+  private List<QueryPoint> run(MetricsQuery query, List<String> sites, long step, boolean percentile, long now) {
+    List<QueryPoint> points = new ArrayList<>();
+    for (long start = query.getFromMillis(); start < query.getToMillis(); start += step) {
+      long end = Math.min(start + step, query.getToMillis());
+      QueryAccumulator accumulator = new QueryAccumulator(percentile);
+      long resolution = 0;
+      for (String site : sites) {
+        resolution = Math.max(resolution, collect(site, query.getColumn(), start, end, accumulator, now));
+      }
+      points.add(new QueryPoint(start, end, accumulator.result(query.getAggregation(), query.getPercentile()),
+          accumulator.getCount(), accumulator.getFailures(), resolution));
+    }
+    return points;
+  }
+
+  /**
+   * Folds {@code [fromMillis, toMillis)} of one site into the accumulator and returns the
+   * coarsest bucket size used, 0 for raw samples only.
+   */
+  private long collect(String site, MetricColumn column, long fromMillis, long toMillis,
+                       QueryAccumulator accumulator, long now) {
+    if (fromMillis >= toMillis) {
+      return 0;
+    }
+    SiteRollups siteRollups = rollups.get(site);
+    if (siteRollups != null && RollupTier.isRolledUp(column)) {
+      for (RollupTier tier : siteRollups.coarsestFirst()) {
+        long bucket = tier.getBucketMillis();
+        long start = Math.max(Math.floorDiv(fromMillis + bucket - 1, bucket) * bucket, tier.getRetainedFrom(now));
+        long end = Math.floorDiv(toMillis, bucket) * bucket;
+        if (start < end) {
+          tier.accumulate(column, start, end, accumulator);
+          long before = collect(site, column, fromMillis, start, accumulator, now);
+          long after = collect(site, column, end, toMillis, accumulator, now);
+          return Math.max(bucket, Math.max(before, after));
+        }
+      }
+    }
+    scanRaw(site, column, fromMillis, toMillis, accumulator);
+    return 0;
+  }
+
+  private void scanRaw(String site, MetricColumn column, long fromMillis, long toMillis,
+                       QueryAccumulator accumulator) {
+    long ringStart = Long.MAX_VALUE;
+    SiteMetricsStore store = rawStore.get(site);
+    if (store != null) {
+      SiteMetricsStore.SeriesView view = store.view(column);
+      if (view.size() > 0) {
+        ringStart = view.getTimestamp(0);
+        for (int i = view.indexOf(fromMillis); i < view.size() && view.getTimestamp(i) < toMillis; i++) {
+          accumulator.add(view.get(i));
+        }
+      }
+    }
+    SiteCompressedStore cold = coldStore == null ? null : coldStore.get(site);
+    if (cold != null && fromMillis < ringStart) {
+      cold.scan(fromMillis, Math.min(toMillis, ringStart), column, (timestamp, value) -> accumulator.add(value));
+    }
+  }
+
+  private List<String> knownSites() {
+    TreeSet<String> sites = new TreeSet<>();
+    rollups.getSites().forEach(site -> sites.add(site.getSiteAddress()));
+    rawStore.getSites().forEach(site -> sites.add(site.getSiteAddress()));
+    if (coldStore != null) {
+      coldStore.getSites().forEach(site -> sites.add(site.getSiteAddress()));
+    }
+    return new ArrayList<>(sites);
+  }
+}
@@ -0,0 +1,16 @@
+package com.uor.eng.store;
+
+import java.util.List;
+
+/**
+ * Destination for batches of samples. Called from a single writer thread only.
+ */
+public interface MetricsSink extends AutoCloseable {
+  /**
+   * Writes the whole batch or throws, in which case the batch may be retried.
+   */
+  void write(List<SampleRecord> batch) throws Exception;
+
+  @Override
+  void close();
+}
@@ -0,0 +1,42 @@
+package com.uor.eng.store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the per-site sample stores.
+ */
+public class MetricsStore implements RowListener {
+  private final Map<String, SiteMetricsStore> sites = new ConcurrentHashMap<>();
+
+  public SiteMetricsStore forSite(String siteAddress) {
+    return sites.computeIfAbsent(siteAddress, SiteMetricsStore::new);
+  }
+
+  /**
+   * Store for a site, or null if it has none.
+   */
+  public SiteMetricsStore get(String siteAddress) {
+    return sites.get(siteAddress);
+  }
+
+  public void remove(String siteAddress) {
+    sites.remove(siteAddress);
+  }
+
+  @Override
+  public void onRow(String siteAddress, long timestampMillis, double[] values) {
+    forSite(siteAddress).append(timestampMillis, values);
+  }
+
+  @Override
+  public void onRemoved(String siteAddress) {
+    remove(siteAddress);
+  }
+
+  public Collection<SiteMetricsStore> getSites() {
+    return Collections.unmodifiableCollection(sites.values());
+  }
+}
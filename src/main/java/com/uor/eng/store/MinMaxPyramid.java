@@ -0,0 +1,269 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution min/max summary of a few columns of one site, for drawing long histories.
+ * Level {@code k} of the {@value #LEVELS} holds buckets of {@code 4^k} seconds aligned to the
+ * epoch, each level a ring of {@code capacity} buckets numbered from the first one it saw. Every
+ * sample updates the bucket it falls into on every level, so the summary is always current and a
+ * zoomed-out chart reads a few hundred buckets instead of millions of rows.
+ *
+ * <p>A bucket keeps the minimum and the maximum of each column and which of the two came first,
+ * so a chart drawing both in order keeps every peak, at any level, which picking one point per
+ * bucket would not. A bucket whose samples all failed has no values; a chart breaks the line
+ * there. Values are kept as floats, which is plenty for drawing.
+ *
+ * <p>With the default 1024 buckets the levels reach back 17 minutes, 68 minutes, 4.5 hours,
+ * 18 hours, 3 days, 12 days and 48 days. A bucket of three columns takes 35 bytes and each level
+ * grows as it fills, so a site costs about 85 KB after an hour, 160 KB after a day and at most
+ * 250 KB after 48 days. Appends are serialised with reads; samples older than the newest bucket of
+ * a level are ignored there.
+ */
+public final class MinMaxPyramid {
+  public static final int LEVELS = 7;
+  private static final long BASE_MILLIS = 1000;
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final int MIN_SLOTS = 16;
+
+  private final MetricColumn[] columns;
+  private final int capacity;
+  private final long[] bucketMillis = new long[LEVELS];
+  // Per level: the bucket number held in slot 0, set by the first sample, and the slots allocated
+  private final long[] origins = new long[LEVELS];
+  private final int[] allocated = new int[LEVELS];
+  // Per level: the epoch-aligned bucket number held in each slot, or -1
+  private final long[][] bucketIds;
+  private final long[] newestIds = new long[LEVELS];
+  // Per level and column
+  private final float[][][] mins;
+  private final float[][][] maxs;
+  private final boolean[][][] minFirst;
+
+  public MinMaxPyramid(MetricColumn... columns) {
+    this(Math.max(16, Integer.getInteger("monitor.chart.buckets", DEFAULT_CAPACITY)), columns);
+  }
+
+  public MinMaxPyramid(int capacity, MetricColumn... columns) {
+    this.columns = columns.clone();
+    this.capacity = capacity;
+    this.bucketIds = new long[LEVELS][0];
+    this.mins = new float[LEVELS][columns.length][0];
+    this.maxs = new float[LEVELS][columns.length][0];
+    this.minFirst = new boolean[LEVELS][columns.length][0];
+    long millis = BASE_MILLIS;
+    for (int level = 0; level < LEVELS; level++) {
+      bucketMillis[level] = millis;
+      millis *= 4;
+      newestIds[level] = -1;
+    }
+  }
+
+  public synchronized void append(long timestampMillis, NetworkMetrics metrics) {
+    boolean successful = metrics.isSuccessful();
+    for (int level = 0; level < LEVELS; level++) {
+      int slot = claim(level, timestampMillis);
+      if (slot < 0 || !successful) {
+        continue;
+      }
+      for (int c = 0; c < columns.length; c++) {
+        add(level, c, slot, columns[c].extract(metrics));
+      }
+    }
+  }
+
+  /**
+   * Adds every row held in {@code store}, oldest first, e.g. to seed the summary of a site whose
+   * samples were restored from the journal.
+   */
+  public synchronized void appendAll(SiteMetricsStore store) {
+    SiteMetricsStore.SeriesView[] views = new SiteMetricsStore.SeriesView[columns.length];
+    for (int c = 0; c < columns.length; c++) {
+      views[c] = store.view(columns[c]);
+    }
+    int rows = views[0].size();
+    for (SiteMetricsStore.SeriesView view : views) {
+      rows = Math.min(rows, view.size());
+    }
+    for (int i = 0; i < rows; i++) {
+      long timestamp = views[0].getTimestamp(i);
+      for (int level = 0; level < LEVELS; level++) {
+        int slot = claim(level, timestamp);
+        if (slot < 0) {
+          continue;
+        }
+        for (int c = 0; c < columns.length; c++) {
+          add(level, c, slot, views[c].get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Slot of the bucket holding {@code timestampMillis} on {@code level}, cleared first if it still
+   * holds an older bucket, or -1 if the sample is older than that level's newest bucket.
+   */
+  private int claim(int level, long timestampMillis) {
+    long id = Math.floorDiv(timestampMillis, bucketMillis[level]);
+    if (id < newestIds[level]) {
+      return -1;
+    }
+    if (newestIds[level] < 0) {
+      origins[level] = id;
+    }
+    int slot = (int) ((id - origins[level]) % capacity);
+    if (slot >= allocated[level]) {
+      grow(level, Math.min(capacity, Math.max(slot + 1, Math.max(allocated[level] * 2, MIN_SLOTS))));
+    }
+    if (bucketIds[level][slot] != id) {
+      bucketIds[level][slot] = id;
+      for (int c = 0; c < columns.length; c++) {
+        mins[level][c][slot] = Float.POSITIVE_INFINITY;
+        maxs[level][c][slot] = Float.NEGATIVE_INFINITY;
+      }
+    }
+    newestIds[level] = id;
+    return slot;
+  }
+
+  private void grow(int level, int slots) {
+    int from = allocated[level];
+    bucketIds[level] = Arrays.copyOf(bucketIds[level], slots);
+    Arrays.fill(bucketIds[level], from, slots, -1);
+    for (int c = 0; c < columns.length; c++) {
+      mins[level][c] = Arrays.copyOf(mins[level][c], slots);
+      maxs[level][c] = Arrays.copyOf(maxs[level][c], slots);
+      minFirst[level][c] = Arrays.copyOf(minFirst[level][c], slots);
+    }
+    allocated[level] = slots;
+  }
+
+  /**
+   * Slot holding bucket {@code id} on {@code level}, or -1 if no slot does.
+   */
+  private int heldSlot(int level, long id) {
+    if (newestIds[level] < 0 || id < origins[level]) {
+      return -1;
+    }
+    int slot = (int) ((id - origins[level]) % capacity);
+    return slot < allocated[level] && bucketIds[level][slot] == id ? slot : -1;
+  }
+
+  private void add(int level, int column, int slot, double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    float v = (float) value;
+    float[] min = mins[level][column];
+    float[] max = maxs[level][column];
+    if (min[slot] > max[slot]) {
+      // First value in the bucket
+      min[slot] = v;
+      max[slot] = v;
+      minFirst[level][column][slot] = true;
+      return;
+    }
+    if (v < min[slot]) {
+      min[slot] = v;
+      minFirst[level][column][slot] = false;
+    } else if (v > max[slot]) {
+      max[slot] = v;
+      minFirst[level][column][slot] = true;
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public long getBucketMillis(int level) {
+    return bucketMillis[level];
+  }
+
+  /**
+   * Start of the oldest bucket {@code level} still holds, or {@link Long#MAX_VALUE} if it is empty.
+   */
+  public synchronized long getOldestTimestamp(int level) {
+    if (newestIds[level] < 0) {
+      return Long.MAX_VALUE;
+    }
+    long oldest = Math.max(origins[level], newestIds[level] - capacity + 1);
+    while (oldest < newestIds[level] && heldSlot(level, oldest) < 0) {
+      oldest++;
+    }
+    return oldest * bucketMillis[level];
+  }
+
+  /**
+   * Start of the newest bucket, or {@link Long#MIN_VALUE} if nothing was appended yet.
+   */
+  public synchronized long getNewestTimestamp() {
+    return newestIds[0] < 0 ? Long.MIN_VALUE : newestIds[0] * bucketMillis[0];
+  }
+
+  /**
+   * The finest level whose buckets are no wider than {@code millisPerPixel} and that still holds
+   * {@code fromMillis}; if none holds it, the coarsest level.
+   */
+  public synchronized int levelFor(double millisPerPixel, long fromMillis) {
+    int level = 0;
+    while (level < LEVELS - 1 && bucketMillis[level + 1] <= millisPerPixel) {
+      level++;
+    }
+    while (level < LEVELS - 1 && getOldestTimestamp(level) > fromMillis) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Copies the buckets of one column on one level that overlap {@code [fromMillis, toMillis]},
+   * oldest first, and returns how many were copied, at most {@code starts.length}. Each bucket
+   * gives its start time, its minimum and maximum in the order they occurred ({@code first},
+   * {@code second}), or NaN in both if all its samples failed. Allocates nothing.
+   */
+  public synchronized int read(int level, int column, long fromMillis, long toMillis,
+                               long[] starts, double[] first, double[] second) {
+    long width = bucketMillis[level];
+    long newest = newestIds[level];
+    if (newest < 0) {
+      return 0;
+    }
+    long fromId = Math.max(Math.floorDiv(fromMillis, width), newest - capacity + 1);
+    long toId = Math.min(Math.floorDiv(toMillis, width), newest);
+    float[] min = mins[level][column];
+    float[] max = maxs[level][column];
+    boolean[] order = minFirst[level][column];
+    int n = 0;
+    for (long id = fromId; id <= toId && n < starts.length; id++) {
+      int slot = heldSlot(level, id);
+      if (slot < 0) {
+        continue;
+      }
+      starts[n] = id * width;
+      if (min[slot] > max[slot]) {
+        first[n] = Double.NaN;
+        second[n] = Double.NaN;
+      } else {
+        first[n] = order[slot] ? min[slot] : max[slot];
+        second[n] = order[slot] ? max[slot] : min[slot];
+      }
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Index of {@code column} in this pyramid, or -1.
+   */
+  public int columnIndex(MetricColumn column) {
+    for (int c = 0; c < columns.length; c++) {
+      if (columns[c] == column) {
+        return c;
+      }
+    }
+    return -1;
+  }
+}
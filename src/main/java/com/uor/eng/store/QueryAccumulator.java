@@ -0,0 +1,85 @@
+package com.uor.eng.store;
+
+/**
+ * Running aggregate of one column, fed with raw values and with whole rollup buckets alike.
+ * Percentiles come from a {@link LatencySketch}, so they carry its precision whichever source
+ * the values came from.
+ */
+final class QueryAccumulator {
+  private final int[] sketch;
+  private long count;
+  private long failures;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private double sum;
+
+  QueryAccumulator(boolean withSketch) {
+    this.sketch = withSketch ? new int[LatencySketch.BUCKETS] : null;
+  }
+
+  boolean hasSketch() {
+    return sketch != null;
+  }
+
+  /**
+   * Adds one raw value; NaN counts as a failed sample.
+   */
+  void add(double value) {
+    if (Double.isNaN(value)) {
+      failures++;
+      return;
+    }
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    sum += value;
+    if (sketch != null) {
+      sketch[LatencySketch.index(value)]++;
+    }
+  }
+
+  void addFailures(long failed) {
+    failures += failed;
+  }
+
+  void addSummary(long bucketCount, double bucketMin, double bucketMax, double bucketSum) {
+    count += bucketCount;
+    min = Math.min(min, bucketMin);
+    max = Math.max(max, bucketMax);
+    sum += bucketSum;
+  }
+
+  void addSketch(int[] counts, int offset) {
+    for (int i = 0; i < sketch.length; i++) {
+      sketch[i] += counts[offset + i];
+    }
+  }
+
+  long getCount() {
+    return count;
+  }
+
+  long getFailures() {
+    return failures;
+  }
+
+  double result(Aggregation aggregation, double percentile) {
+    if (aggregation == Aggregation.COUNT) {
+      return count;
+    }
+    if (aggregation == Aggregation.FAILURES) {
+      return failures;
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    return switch (aggregation) {
+      case AVG -> sum / count;
+      case MIN -> min;
+      case MAX -> max;
+      case SUM -> sum;
+      case PERCENTILE -> LatencySketch.percentile(sketch, percentile);
+      default -> throw new IllegalArgumentException("Unsupported aggregation " + aggregation);
+    };
+  }
+}
@@ -0,0 +1,32 @@
+package com.uor.eng.store;
+
+import lombok.Getter;
+
+/**
+ * Result of a {@link MetricsQuery} for one site (or all sites) and one step.
+ */
+@Getter
+public final class QueryPoint {
+  private final long startMillis;
+  private final long endMillis;
+  /**
+   * The aggregate, NaN when the step had no successful sample.
+   */
+  private final double value;
+  private final long sampleCount;
+  private final long failureCount;
+  /**
+   * Coarsest rollup bucket used to answer the step, 0 if it came from raw samples only.
+   */
+  private final long resolutionMillis;
+
+  QueryPoint(long startMillis, long endMillis, double value, long sampleCount, long failureCount,
+             long resolutionMillis) {
+    this.startMillis = startMillis;
+    this.endMillis = endMillis;
+    this.value = value;
+    this.sampleCount = sampleCount;
+    this.failureCount = failureCount;
+    this.resolutionMillis = resolutionMillis;
+  }
+}
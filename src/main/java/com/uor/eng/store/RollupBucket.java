@@ -0,0 +1,61 @@
+package com.uor.eng.store;
+
+import lombok.Getter;
+
+/**
+ * Copy of one rollup bucket, as returned by a query.
+ */
+public final class RollupBucket {
+  @Getter
+  private final long startMillis;
+  @Getter
+  private final long durationMillis;
+  @Getter
+  private final long count;
+  @Getter
+  private final long failures;
+  private final double[] min;
+  private final double[] max;
+  private final double[] sum;
+  private final int[][] sketches;
+
+  RollupBucket(long startMillis, long durationMillis, long count, long failures,
+               double[] min, double[] max, double[] sum, int[][] sketches) {
+    this.startMillis = startMillis;
+    this.durationMillis = durationMillis;
+    this.count = count;
+    this.failures = failures;
+    this.min = min;
+    this.max = max;
+    this.sum = sum;
+    this.sketches = sketches;
+  }
+
+  /**
+   * Smallest value of a rolled-up column over the successful samples, NaN if there were none.
+   */
+  public double getMin(MetricColumn column) {
+    int i = RollupTier.columnIndex(column);
+    return count == 0 ? Double.NaN : min[i];
+  }
+
+  public double getMax(MetricColumn column) {
+    int i = RollupTier.columnIndex(column);
+    return count == 0 ? Double.NaN : max[i];
+  }
+
+  public double getSum(MetricColumn column) {
+    return sum[RollupTier.columnIndex(column)];
+  }
+
+  public double getMean(MetricColumn column) {
+    return count == 0 ? Double.NaN : getSum(column) / count;
+  }
+
+  /**
+   * Value of a sketched column at the given percentile (0-100) in ms, NaN if empty.
+   */
+  public double getPercentile(MetricColumn column, double percentile) {
+    return LatencySketch.percentile(sketches[RollupTier.sketchIndex(column)], percentile);
+  }
+}
@@ -0,0 +1,54 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps {@link SiteRollups} for every site, fed from live samples and from journal replay.
+ * Live samples only go to sites registered with {@link #forSite}, so a late sample from a site
+ * that was just removed does not bring it back.
+ */
+public class RollupEngine implements SampleListener, RowListener {
+  private final Map<String, SiteRollups> sites = new ConcurrentHashMap<>();
+
+  @Override
+  public void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    SiteRollups rollups = sites.get(siteAddress);
+    if (rollups != null) {
+      rollups.add(timestampMillis, metrics);
+    }
+  }
+
+  @Override
+  public void onRow(String siteAddress, long timestampMillis, double[] values) {
+    forSite(siteAddress).add(timestampMillis, values);
+  }
+
+  @Override
+  public void onRemoved(String siteAddress) {
+    remove(siteAddress);
+  }
+
+  public SiteRollups forSite(String siteAddress) {
+    return sites.computeIfAbsent(siteAddress, SiteRollups::new);
+  }
+
+  /**
+   * Rollups for a site, or null if it has none.
+   */
+  public SiteRollups get(String siteAddress) {
+    return sites.get(siteAddress);
+  }
+
+  public void remove(String siteAddress) {
+    sites.remove(siteAddress);
+  }
+
+  public Collection<SiteRollups> getSites() {
+    return Collections.unmodifiableCollection(sites.values());
+  }
+}
@@ -0,0 +1,300 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded ring of time buckets, each folding the samples that fell into it into min, max,
+ * sum and count per column plus small sketches of the timing columns. A bucket's slot is its
+ * distance from the first bucket the tier saw, modulo {@code capacity}; when a sample lands in a
+ * slot that still holds an older bucket the slot is reset, so the tier keeps the newest
+ * {@code capacity} buckets. Samples older than the first one are dropped.
+ *
+ * <p>A bucket takes about 1.1 KB, most of it sketches. The arrays start small and double as
+ * slots are first used, up to {@code capacity}, so a tier only costs what it holds: a site
+ * monitored for an hour has 60 minute buckets, not the whole ring.
+ *
+ * <p>Only {@link #COLUMNS} are rolled up, and only {@link #SKETCHED} have percentiles; the rest
+ * are derived or too noisy to be worth it at minute resolution and above.
+ */
+public class RollupTier {
+  static final MetricColumn[] COLUMNS = {
+      MetricColumn.LATENCY, MetricColumn.DNS_TIME, MetricColumn.TCP_TIME, MetricColumn.TTFB,
+      MetricColumn.PACKET_LOSS, MetricColumn.THROUGHPUT, MetricColumn.JITTER, MetricColumn.ERROR_RATE,
+      MetricColumn.CONNECTION_QUALITY, MetricColumn.DOWNLOAD_SPEED, MetricColumn.UPLOAD_SPEED
+  };
+  static final MetricColumn[] SKETCHED = {MetricColumn.LATENCY, MetricColumn.TTFB};
+  private static final int MIN_SLOTS = 16;
+  private static final int[] INDEX = new int[MetricColumn.values().length];
+  private static final int[] SKETCH_INDEX = new int[MetricColumn.values().length];
+
+  static {
+    Arrays.fill(INDEX, -1);
+    Arrays.fill(SKETCH_INDEX, -1);
+    for (int i = 0; i < COLUMNS.length; i++) {
+      INDEX[COLUMNS[i].ordinal()] = i;
+    }
+    for (int i = 0; i < SKETCHED.length; i++) {
+      SKETCH_INDEX[SKETCHED[i].ordinal()] = i;
+    }
+  }
+
+  @Getter
+  private final long bucketMillis;
+  @Getter
+  private final int capacity;
+  // Bucket number that maps to slot 0; set by the first sample
+  private long origin = Long.MIN_VALUE;
+  // Slots allocated so far, at most capacity
+  private int allocated;
+  private long[] starts;
+  private long[] counts;
+  private long[] failures;
+  private final double[][] min;
+  private final double[][] max;
+  private final double[][] sum;
+  // Per sketched column, one row of LatencySketch.BUCKETS counters per slot
+  private final int[][] sketches;
+
+  public RollupTier(long bucketMillis, int capacity) {
+    this.bucketMillis = bucketMillis;
+    this.capacity = capacity;
+    this.starts = new long[0];
+    this.counts = new long[0];
+    this.failures = new long[0];
+    this.min = new double[COLUMNS.length][0];
+    this.max = new double[COLUMNS.length][0];
+    this.sum = new double[COLUMNS.length][0];
+    this.sketches = new int[SKETCHED.length][0];
+  }
+
+  /**
+   * Position of a column in the rolled-up set.
+   *
+   * @throws IllegalArgumentException if the column is not rolled up
+   */
+  static int columnIndex(MetricColumn column) {
+    int index = INDEX[column.ordinal()];
+    if (index < 0) {
+      throw new IllegalArgumentException(column + " is not kept in rollups");
+    }
+    return index;
+  }
+
+  static int sketchIndex(MetricColumn column) {
+    int index = SKETCH_INDEX[column.ordinal()];
+    if (index < 0) {
+      throw new IllegalArgumentException(column + " has no percentiles in rollups");
+    }
+    return index;
+  }
+
+  public static boolean isRolledUp(MetricColumn column) {
+    return INDEX[column.ordinal()] >= 0;
+  }
+
+  public static boolean isSketched(MetricColumn column) {
+    return SKETCH_INDEX[column.ordinal()] >= 0;
+  }
+
+  /**
+   * Time covered by the tier, from the oldest bucket it can hold to now.
+   */
+  public long getSpanMillis() {
+    return bucketMillis * capacity;
+  }
+
+  /**
+   * Start of the oldest bucket that can still be held at {@code nowMillis}; older buckets have
+   * been, or may have been, overwritten.
+   */
+  public long getRetainedFrom(long nowMillis) {
+    return (Math.floorDiv(nowMillis, bucketMillis) - capacity + 1) * bucketMillis;
+  }
+
+  public synchronized void add(long timestampMillis, NetworkMetrics metrics) {
+    int slot = slotFor(timestampMillis);
+    if (slot < 0) {
+      return;
+    }
+    if (!metrics.isSuccessful()) {
+      failures[slot]++;
+      return;
+    }
+    for (int c = 0; c < COLUMNS.length; c++) {
+      fold(c, slot, COLUMNS[c].extract(metrics));
+    }
+    for (int s = 0; s < SKETCHED.length; s++) {
+      sketches[s][slot * LatencySketch.BUCKETS + LatencySketch.index(SKETCHED[s].extract(metrics))]++;
+    }
+    counts[slot]++;
+  }
+
+  /**
+   * Adds a row in {@link MetricColumn} order; NaN latency marks a failed sample.
+   */
+  public synchronized void add(long timestampMillis, double[] values) {
+    int slot = slotFor(timestampMillis);
+    if (slot < 0) {
+      return;
+    }
+    if (Double.isNaN(values[MetricColumn.LATENCY.ordinal()])) {
+      failures[slot]++;
+      return;
+    }
+    for (int c = 0; c < COLUMNS.length; c++) {
+      fold(c, slot, values[COLUMNS[c].ordinal()]);
+    }
+    for (int s = 0; s < SKETCHED.length; s++) {
+      sketches[s][slot * LatencySketch.BUCKETS + LatencySketch.index(values[SKETCHED[s].ordinal()])]++;
+    }
+    counts[slot]++;
+  }
+
+  private void fold(int column, int slot, double value) {
+    if (counts[slot] == 0) {
+      min[column][slot] = value;
+      max[column][slot] = value;
+    } else {
+      min[column][slot] = Math.min(min[column][slot], value);
+      max[column][slot] = Math.max(max[column][slot], value);
+    }
+    sum[column][slot] += value;
+  }
+
+  /**
+   * Slot for the bucket containing the timestamp, reset first if it held an older bucket, or -1
+   * if the sample is older than what the slot holds now.
+   */
+  private int slotFor(long timestampMillis) {
+    long bucket = Math.floorDiv(timestampMillis, bucketMillis);
+    long start = bucket * bucketMillis;
+    if (origin == Long.MIN_VALUE) {
+      origin = bucket;
+    } else if (bucket < origin) {
+      return -1;
+    }
+    int slot = (int) ((bucket - origin) % capacity);
+    if (slot >= allocated) {
+      grow(Math.min(capacity, Math.max(slot + 1, Math.max(allocated * 2, MIN_SLOTS))));
+    }
+    if (starts[slot] == start) {
+      return slot;
+    }
+    if (starts[slot] > start) {
+      return -1;
+    }
+    starts[slot] = start;
+    counts[slot] = 0;
+    failures[slot] = 0;
+    for (int c = 0; c < COLUMNS.length; c++) {
+      sum[c][slot] = 0;
+    }
+    for (int[] sketch : sketches) {
+      Arrays.fill(sketch, slot * LatencySketch.BUCKETS, (slot + 1) * LatencySketch.BUCKETS, 0);
+    }
+    return slot;
+  }
+
+  private void grow(int slots) {
+    starts = Arrays.copyOf(starts, slots);
+    Arrays.fill(starts, allocated, slots, Long.MIN_VALUE);
+    counts = Arrays.copyOf(counts, slots);
+    failures = Arrays.copyOf(failures, slots);
+    for (int c = 0; c < COLUMNS.length; c++) {
+      min[c] = Arrays.copyOf(min[c], slots);
+      max[c] = Arrays.copyOf(max[c], slots);
+      sum[c] = Arrays.copyOf(sum[c], slots);
+    }
+    for (int s = 0; s < SKETCHED.length; s++) {
+      sketches[s] = Arrays.copyOf(sketches[s], slots * LatencySketch.BUCKETS);
+    }
+    allocated = slots;
+  }
+
+  /**
+   * Slot holding bucket number {@code bucket}, or -1 if no slot does.
+   */
+  private int heldSlot(long bucket) {
+    if (origin == Long.MIN_VALUE || bucket < origin) {
+      return -1;
+    }
+    int slot = (int) ((bucket - origin) % capacity);
+    return slot < allocated && starts[slot] == bucket * bucketMillis ? slot : -1;
+  }
+
+  /**
+   * First bucket number to visit for {@code [fromMillis, toMillis)}; never more than a lap back.
+   */
+  private long firstBucket(long fromMillis, long toMillis) {
+    return Math.max(Math.floorDiv(fromMillis, bucketMillis),
+        Math.floorDiv(toMillis - 1, bucketMillis) - capacity + 1);
+  }
+
+  /**
+   * Buckets starting in {@code [fromMillis, toMillis)}, oldest first. Buckets without samples
+   * are left out.
+   */
+  public synchronized List<RollupBucket> query(long fromMillis, long toMillis) {
+    List<RollupBucket> result = new ArrayList<>();
+    for (long b = firstBucket(fromMillis, toMillis); b * bucketMillis < toMillis; b++) {
+      int slot = heldSlot(b);
+      if (slot < 0 || counts[slot] + failures[slot] == 0) {
+        continue;
+      }
+      double[] bucketMin = new double[COLUMNS.length];
+      double[] bucketMax = new double[COLUMNS.length];
+      double[] bucketSum = new double[COLUMNS.length];
+      for (int c = 0; c < COLUMNS.length; c++) {
+        bucketMin[c] = min[c][slot];
+        bucketMax[c] = max[c][slot];
+        bucketSum[c] = sum[c][slot];
+      }
+      int[][] bucketSketches = new int[SKETCHED.length][];
+      for (int s = 0; s < SKETCHED.length; s++) {
+        bucketSketches[s] = Arrays.copyOfRange(sketches[s],
+            slot * LatencySketch.BUCKETS, (slot + 1) * LatencySketch.BUCKETS);
+      }
+      result.add(new RollupBucket(starts[slot], bucketMillis, counts[slot], failures[slot],
+          bucketMin, bucketMax, bucketSum, bucketSketches));
+    }
+    return result;
+  }
+
+  /**
+   * Percentile (0-100) in ms of a sketched column over every bucket starting in
+   * {@code [fromMillis, toMillis)}, by merging their sketches; NaN if none has a successful sample.
+   */
+  public double percentile(MetricColumn column, long fromMillis, long toMillis, double percentile) {
+    QueryAccumulator accumulator = new QueryAccumulator(true);
+    accumulate(column, fromMillis, toMillis, accumulator);
+    return accumulator.result(Aggregation.PERCENTILE, percentile);
+  }
+
+  /**
+   * Folds every bucket starting in {@code [fromMillis, toMillis)} into the accumulator, without
+   * allocating.
+   */
+  synchronized void accumulate(MetricColumn column, long fromMillis, long toMillis, QueryAccumulator accumulator) {
+    int c = columnIndex(column);
+    int s = accumulator.hasSketch() ? sketchIndex(column) : -1;
+    for (long b = firstBucket(fromMillis, toMillis); b * bucketMillis < toMillis; b++) {
+      int slot = heldSlot(b);
+      if (slot < 0) {
+        continue;
+      }
+      accumulator.addFailures(failures[slot]);
+      if (counts[slot] == 0) {
+        continue;
+      }
+      accumulator.addSummary(counts[slot], min[c][slot], max[c][slot], sum[c][slot]);
+      if (s >= 0) {
+        accumulator.addSketch(sketches[s], slot * LatencySketch.BUCKETS);
+      }
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.uor.eng.store;
+
+/**
+ * Receives stored rows, for example while a journal is replayed. {@code values} are in
+ * {@link MetricColumn} order with NaN for a failed sample, and are only valid during the call.
+ */
+public interface RowListener {
+  void onRow(String siteAddress, long timestampMillis, double[] values);
+
+  /**
+   * The site was removed; anything held for it can be dropped.
+   */
+  default void onRemoved(String siteAddress) {
+  }
+}
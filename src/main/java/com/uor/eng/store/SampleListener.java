@@ -0,0 +1,11 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+/**
+ * Receives every sample on the probe thread that took it. Implementations must not block.
+ */
+@FunctionalInterface
+public interface SampleListener {
+  void onSample(String siteAddress, long timestampMillis, NetworkMetrics metrics);
+}
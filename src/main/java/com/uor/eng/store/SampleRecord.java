@@ -0,0 +1,20 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import lombok.Getter;
+
+/**
+ * A sample waiting to be persisted, together with the site and time it belongs to.
+ */
+@Getter
+public final class SampleRecord {
+  private final String siteAddress;
+  private final long timestampMillis;
+  private final NetworkMetrics metrics;
+
+  public SampleRecord(String siteAddress, long timestampMillis, NetworkMetrics metrics) {
+    this.siteAddress = siteAddress;
+    this.timestampMillis = timestampMillis;
+    this.metrics = metrics;
+  }
+}
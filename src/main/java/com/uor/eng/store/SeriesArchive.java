@@ -0,0 +1,159 @@
+package com.uor.eng.store;
+
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk archive of one site's {@link CompressedBlock}s, appended one block at a time. Each
+ * entry is its length, its first and last timestamp, a CRC32C of those and the block, then the
+ * block, so {@link #index()} can list the blocks and {@link #read(Entry)} can fetch any one of
+ * them. The first time the archive is used, anything after the last intact entry, such as a torn
+ * entry left by a crash during an append, is cut off, so later appends follow intact entries.
+ */
+public class SeriesArchive {
+  private static final String SUFFIX = ".gor";
+  private static final int ENTRY_HEADER = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+  private final Path file;
+  private boolean recovered;
+
+  public SeriesArchive(Path directory, String siteAddress) {
+    this.file = directory.resolve(URLEncoder.encode(siteAddress, StandardCharsets.UTF_8) + SUFFIX);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public synchronized void append(CompressedBlock block) throws IOException {
+    recover();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    block.writeTo(new DataOutputStream(bytes));
+    byte[] body = bytes.toByteArray();
+    Files.createDirectories(file.getParent());
+    try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+         DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+      data.writeInt(body.length);
+      data.writeLong(block.getFirstTimestamp());
+      data.writeLong(block.getLastTimestamp());
+      data.writeInt(checksum(body.length, block.getFirstTimestamp(), block.getLastTimestamp(), body));
+      data.write(body);
+    }
+  }
+
+  /**
+   * Position and time range of every intact block, oldest first.
+   */
+  public synchronized List<Entry> index() throws IOException {
+    recover();
+    List<Entry> entries = new ArrayList<>();
+    scan(entries);
+    return entries;
+  }
+
+  /**
+   * Truncates the file after its last intact entry, once.
+   */
+  private void recover() throws IOException {
+    if (recovered) {
+      return;
+    }
+    if (Files.exists(file)) {
+      long end = scan(new ArrayList<>());
+      if (end < Files.size(file)) {
+        System.err.println("Archive " + file + ": discarding a torn entry at offset " + end);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          channel.truncate(end);
+        }
+      }
+    }
+    recovered = true;
+  }
+
+  /**
+   * Adds the intact entries to {@code entries}, stopping at the first one that is cut short or
+   * fails its checksum, and returns the offset where they end.
+   */
+  private long scan(List<Entry> entries) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    long size = Files.size(file);
+    long offset = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      while (offset + ENTRY_HEADER <= size) {
+        int length = in.readInt();
+        long first = in.readLong();
+        long last = in.readLong();
+        int crc = in.readInt();
+        if (length < 0 || offset + ENTRY_HEADER + length > size) {
+          break;
+        }
+        byte[] body = in.readNBytes(length);
+        if (body.length != length || checksum(length, first, last, body) != crc) {
+          break;
+        }
+        entries.add(new Entry(offset + ENTRY_HEADER, length, first, last));
+        offset += ENTRY_HEADER + length;
+      }
+    }
+    return offset;
+  }
+
+  private static int checksum(int length, long first, long last, byte[] body) {
+    CRC32C crc = new CRC32C();
+    crc.update(ByteBuffer.allocate(Integer.BYTES + 2 * Long.BYTES).putInt(length).putLong(first).putLong(last).flip());
+    crc.update(body);
+    return (int) crc.getValue();
+  }
+
+  public synchronized CompressedBlock read(Entry entry) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      in.skipNBytes(entry.offset);
+      return CompressedBlock.readFrom(new DataInputStream(new BufferedInputStream(in, Math.max(1, entry.length))));
+    } catch (EOFException e) {
+      throw new IOException("Archive entry at " + entry.offset + " is truncated", e);
+    }
+  }
+
+  /**
+   * One block in the archive.
+   */
+  @Getter
+  public static final class Entry {
+    private final long offset;
+    private final int length;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    Entry(long offset, int length, long firstTimestamp, long lastTimestamp) {
+      this.offset = offset;
+      this.length = length;
+      this.firstTimestamp = firstTimestamp;
+      this.lastTimestamp = lastTimestamp;
+    }
+
+    public boolean overlaps(long fromMillis, long toMillis) {
+      return firstTimestamp < toMillis && lastTimestamp >= fromMillis;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold tier for one site: samples are encoded as they arrive into an open {@link GorillaEncoder}
+ * block, which is sealed every {@code blockRows} rows. The newest {@code maxBlocks} sealed blocks
+ * stay in memory; with an archive, every sealed block is also appended to it, and the newest
+ * blocks are loaded back from it on start.
+ */
+public class SiteCompressedStore {
+  @Getter
+  private final String siteAddress;
+  private final int blockRows;
+  private final int maxBlocks;
+  @Getter
+  private final SeriesArchive archive;
+  private final GorillaEncoder encoder = new GorillaEncoder();
+  private final List<CompressedBlock> blocks = new ArrayList<>();
+  // Rows up to here are already in a sealed block; replaying them again would duplicate them
+  private long sealedUntil = Long.MIN_VALUE;
+
+  public SiteCompressedStore(String siteAddress, int blockRows, int maxBlocks, SeriesArchive archive) {
+    this.siteAddress = siteAddress;
+    this.blockRows = blockRows;
+    this.maxBlocks = maxBlocks;
+    this.archive = archive;
+    if (archive != null) {
+      loadArchive();
+    }
+  }
+
+  private void loadArchive() {
+    try {
+      List<SeriesArchive.Entry> entries = archive.index();
+      for (int i = Math.max(0, entries.size() - maxBlocks); i < entries.size(); i++) {
+        blocks.add(archive.read(entries.get(i)));
+      }
+      if (!entries.isEmpty()) {
+        sealedUntil = entries.get(entries.size() - 1).getLastTimestamp();
+      }
+    } catch (IOException | RuntimeException e) {
+      // Start without history rather than from a partial or garbled one
+      blocks.clear();
+      sealedUntil = Long.MIN_VALUE;
+      System.err.println("Cannot load archive " + archive.getFile() + ": " + e);
+    }
+  }
+
+  public synchronized void append(long timestampMillis, NetworkMetrics metrics) {
+    if (timestampMillis > sealedUntil) {
+      encoder.append(timestampMillis, metrics);
+      sealIfFull();
+    }
+  }
+
+  /**
+   * Appends a row given in {@link MetricColumn} order.
+   */
+  public synchronized void append(long timestampMillis, double[] values) {
+    if (timestampMillis > sealedUntil) {
+      encoder.append(timestampMillis, values);
+      sealIfFull();
+    }
+  }
+
+  private void sealIfFull() {
+    if (encoder.size() >= blockRows) {
+      seal();
+    }
+  }
+
+  /**
+   * Seals the open block, if it has any rows, and archives it.
+   */
+  public synchronized void seal() {
+    if (encoder.size() == 0) {
+      return;
+    }
+    CompressedBlock block = encoder.finish();
+    sealedUntil = block.getLastTimestamp();
+    blocks.add(block);
+    if (blocks.size() > maxBlocks) {
+      blocks.remove(0);
+    }
+    if (archive != null) {
+      try {
+        archive.append(block);
+      } catch (IOException e) {
+        System.err.println("Cannot archive block for " + siteAddress + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Blocks in memory with rows in {@code [fromMillis, toMillis)}, oldest first, including a copy
+   * of the open block.
+   */
+  public synchronized List<CompressedBlock> blocks(long fromMillis, long toMillis) {
+    List<CompressedBlock> result = new ArrayList<>();
+    for (CompressedBlock block : blocks) {
+      if (block.overlaps(fromMillis, toMillis)) {
+        result.add(block);
+      }
+    }
+    if (encoder.size() > 0 && encoder.getFirstTimestamp() < toMillis) {
+      CompressedBlock open = encoder.snapshot();
+      if (open.overlaps(fromMillis, toMillis)) {
+        result.add(open);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Decodes one column over {@code [fromMillis, toMillis)}, oldest first. Failed samples are
+   * passed as NaN.
+   */
+  public void scan(long fromMillis, long toMillis, MetricColumn column, ValueConsumer consumer) {
+    for (CompressedBlock block : blocks(fromMillis, toMillis)) {
+      GorillaDecoder decoder = new GorillaDecoder(block, column);
+      while (decoder.next()) {
+        long timestamp = decoder.getTimestamp();
+        if (timestamp >= fromMillis && timestamp < toMillis) {
+          consumer.accept(timestamp, decoder.getValue(column));
+        }
+      }
+    }
+  }
+
+  /**
+   * Oldest timestamp held in memory, or {@code Long.MAX_VALUE} if there is none.
+   */
+  public synchronized long getOldestTimestamp() {
+    if (!blocks.isEmpty()) {
+      return blocks.get(0).getFirstTimestamp();
+    }
+    return encoder.size() > 0 ? encoder.getFirstTimestamp() : Long.MAX_VALUE;
+  }
+
+  /**
+   * Encoded bytes held in memory.
+   */
+  public synchronized long getSizeBytes() {
+    long bytes = encoder.getSizeBytes();
+    for (CompressedBlock block : blocks) {
+      bytes += block.getSizeBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Receives decoded values.
+   */
+  @FunctionalInterface
+  public interface ValueConsumer {
+    void accept(long timestampMillis, double value);
+  }
+}
@@ -0,0 +1,195 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+
+/**
+ * Fixed-capacity ring of samples for one site, stored column-wise: a {@code long[]} of timestamps
+ * and one {@code double[]} per {@link MetricColumn}. Appending copies the sample's fields into the
+ * next row and allocates nothing; once the ring is full the oldest row is overwritten. A failed
+ * sample keeps its timestamp and stores NaN in every column.
+ *
+ * <p>Appends are serialised; reads take no lock. A reader gets a {@link SeriesView} over the rows
+ * that existed when the view was taken. It reads straight from the column arrays, so a view that
+ * outlives a full lap of the ring sees newer rows; {@link SeriesView#isIntact()} reports that.
+ */
+public final class SiteMetricsStore {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+  private static final int DEFAULT_CAPACITY = 600;
+
+  private final String siteAddress;
+  private final int capacity;
+  private final long[] timestamps;
+  private final double[][] columns;
+  private volatile long written;
+
+  public SiteMetricsStore(String siteAddress) {
+    this(siteAddress, Math.max(1, Integer.getInteger("monitor.store.capacity", DEFAULT_CAPACITY)));
+  }
+
+  public SiteMetricsStore(String siteAddress, int capacity) {
+    this.siteAddress = siteAddress;
+    this.capacity = capacity;
+    this.timestamps = new long[capacity];
+    this.columns = new double[COLUMNS.length][capacity];
+  }
+
+  public synchronized void append(long timestampMillis, NetworkMetrics metrics) {
+    long row = written;
+    int slot = (int) (row % capacity);
+    timestamps[slot] = timestampMillis;
+    boolean successful = metrics.isSuccessful();
+    for (int c = 0; c < COLUMNS.length; c++) {
+      columns[c][slot] = successful ? COLUMNS[c].extract(metrics) : Double.NaN;
+    }
+    // The volatile write publishes the row to readers
+    written = row + 1;
+  }
+
+  /**
+   * Appends a row whose values are given in {@link MetricColumn} order.
+   */
+  public synchronized void append(long timestampMillis, double[] values) {
+    long row = written;
+    int slot = (int) (row % capacity);
+    timestamps[slot] = timestampMillis;
+    for (int c = 0; c < COLUMNS.length; c++) {
+      columns[c][slot] = values[c];
+    }
+    written = row + 1;
+  }
+
+  /**
+   * View of one column over every row currently held.
+   */
+  public SeriesView view(MetricColumn column) {
+    long end = written;
+    return new SeriesView(column, Math.max(0, end - capacity), end);
+  }
+
+  /**
+   * View of one column over the newest {@code maxRows} rows.
+   */
+  public SeriesView viewLatest(MetricColumn column, int maxRows) {
+    long end = written;
+    return new SeriesView(column, Math.max(0, end - Math.min(capacity, maxRows)), end);
+  }
+
+  /**
+   * Rebuilds the sample at {@code index} (0 = oldest row held) as a {@code NetworkMetrics}.
+   * Meant for occasional use such as restoring a view; regular readers should use a {@link SeriesView}.
+   */
+  public NetworkMetrics getMetrics(int index) {
+    return getMetrics(index, NetworkMetrics.builder());
+  }
+
+  /**
+   * Same as {@link #getMetrics(int)}, reusing {@code builder} so rebuilding many rows allocates
+   * only the samples.
+   */
+  public NetworkMetrics getMetrics(int index, NetworkMetrics.Builder builder) {
+    long end = written;
+    long start = Math.max(0, end - capacity);
+    if (index < 0 || index >= end - start) {
+      throw new IndexOutOfBoundsException("Index " + index + " outside store of " + (end - start));
+    }
+    int slot = (int) ((start + index) % capacity);
+    if (Double.isNaN(columns[MetricColumn.LATENCY.ordinal()][slot])) {
+      return NetworkMetrics.error("No data");
+    }
+    builder.reset().successful(true);
+    for (int c = 0; c < COLUMNS.length; c++) {
+      COLUMNS[c].apply(builder, columns[c][slot]);
+    }
+    return builder.build();
+  }
+
+  public String getSiteAddress() {
+    return siteAddress;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Number of rows currently held.
+   */
+  public int size() {
+    return (int) Math.min(written, capacity);
+  }
+
+  /**
+   * Total number of rows ever appended.
+   */
+  public long getWrittenCount() {
+    return written;
+  }
+
+  /**
+   * Read-only window over one column. Index 0 is the oldest row in the window.
+   */
+  public final class SeriesView {
+    private final MetricColumn column;
+    private final double[] values;
+    private final long start;
+    private final long end;
+
+    private SeriesView(MetricColumn column, long start, long end) {
+      this.column = column;
+      this.values = columns[column.ordinal()];
+      this.start = start;
+      this.end = end;
+    }
+
+    public MetricColumn getColumn() {
+      return column;
+    }
+
+    public int size() {
+      return (int) (end - start);
+    }
+
+    public long getTimestamp(int index) {
+      return timestamps[slot(index)];
+    }
+
+    /**
+     * Value at {@code index}, NaN for a failed sample.
+     */
+    public double get(int index) {
+      return values[slot(index)];
+    }
+
+    /**
+     * Index of the first row at or after {@code timestampMillis}, or {@link #size()} if there is
+     * none. Rows are appended in time order, so this is a binary search.
+     */
+    public int indexOf(long timestampMillis) {
+      int low = 0;
+      int high = size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (getTimestamp(mid) < timestampMillis) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * False once the writer has overwritten rows this view covers.
+     */
+    public boolean isIntact() {
+      return written - start <= capacity;
+    }
+
+    private int slot(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException("Index " + index + " outside view of " + size());
+      }
+      return (int) ((start + index) % capacity);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Minute, hour and day rollups of one site. Every tier is fed from every raw sample rather than
+ * a coarser tier from finished finer buckets: min, max, sum, count and the sketches all compose,
+ * so the result is the same and there is no half-finished bucket to carry over.
+ *
+ * <p>Tier sizes come from {@code monitor.rollup.minutes} (360, six hours),
+ * {@code monitor.rollup.hours} (336, two weeks) and {@code monitor.rollup.days} (366). Buckets
+ * take about 1.1 KB each and tiers grow as they fill, so a site costs about 110 KB after its
+ * first hour, 430 KB after six hours, 800 KB after two weeks and at most 1.2 MB after a year.
+ */
+public class SiteRollups {
+  static final long MINUTE_MILLIS = 60_000;
+  static final long HOUR_MILLIS = 3_600_000;
+  static final long DAY_MILLIS = 86_400_000;
+  private static final int DEFAULT_MINUTE_BUCKETS = 6 * 60;
+  private static final int DEFAULT_HOUR_BUCKETS = 14 * 24;
+  private static final int DEFAULT_DAY_BUCKETS = 366;
+
+  @Getter
+  private final String siteAddress;
+  @Getter
+  private final RollupTier minutes;
+  @Getter
+  private final RollupTier hours;
+  @Getter
+  private final RollupTier days;
+  private final RollupTier[] coarsestFirst;
+
+  public SiteRollups(String siteAddress) {
+    this.siteAddress = siteAddress;
+    this.minutes = new RollupTier(MINUTE_MILLIS,
+        Math.max(1, Integer.getInteger("monitor.rollup.minutes", DEFAULT_MINUTE_BUCKETS)));
+    this.hours = new RollupTier(HOUR_MILLIS,
+        Math.max(1, Integer.getInteger("monitor.rollup.hours", DEFAULT_HOUR_BUCKETS)));
+    this.days = new RollupTier(DAY_MILLIS,
+        Math.max(1, Integer.getInteger("monitor.rollup.days", DEFAULT_DAY_BUCKETS)));
+    this.coarsestFirst = new RollupTier[]{days, hours, minutes};
+  }
+
+  public void add(long timestampMillis, NetworkMetrics metrics) {
+    minutes.add(timestampMillis, metrics);
+    hours.add(timestampMillis, metrics);
+    days.add(timestampMillis, metrics);
+  }
+
+  public void add(long timestampMillis, double[] values) {
+    minutes.add(timestampMillis, values);
+    hours.add(timestampMillis, values);
+    days.add(timestampMillis, values);
+  }
+
+  /**
+   * The tiers from coarsest to finest.
+   */
+  RollupTier[] coarsestFirst() {
+    return coarsestFirst;
+  }
+
+  /**
+   * The finest tier that still holds buckets back to {@code fromMillis}.
+   */
+  public RollupTier tierFor(long fromMillis, long nowMillis) {
+    for (int i = coarsestFirst.length - 1; i > 0; i--) {
+      if (coarsestFirst[i].getRetainedFrom(nowMillis) <= fromMillis) {
+        return coarsestFirst[i];
+      }
+    }
+    return days;
+  }
+
+  /**
+   * Buckets for {@code [fromMillis, toMillis)} from {@link #tierFor}, so even a year costs at
+   * most a few hundred buckets however many raw samples it covered.
+   */
+  public List<RollupBucket> query(long fromMillis, long toMillis) {
+    return tierFor(fromMillis, System.currentTimeMillis()).query(fromMillis, toMillis);
+  }
+}
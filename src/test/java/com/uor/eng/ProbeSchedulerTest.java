@@ -0,0 +1,115 @@
+package com.uor.eng;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProbeSchedulerTest {
+  private static final long TICK_MS = 10;
+
+  private final ProbeScheduler scheduler = new ProbeScheduler(Executors.newSingleThreadExecutor());
+
+  @AfterEach
+  void close() {
+    scheduler.close();
+  }
+
+  @Test
+  void firesAtAFixedRateOnEveryWheelLevel() {
+    // Intervals in ticks around each level boundary: 256 ticks per level-0 turn, 65536 per level-1 turn
+    long[] intervals = {1, 7, 255, 256, 257, 3000, 65_535, 65_536, 72_000};
+    Map<Long, RecordingTask> tasks = new LinkedHashMap<>();
+    for (long interval : intervals) {
+      RecordingTask task = new RecordingTask("site-" + interval);
+      tasks.put(interval, task);
+      scheduler.schedule(task.address, task, interval * TICK_MS);
+    }
+
+    long end = 6 * 72_000;
+    scheduler.advanceTo(end);
+
+    tasks.forEach((interval, task) -> {
+      List<Long> ticks = task.ticks;
+      assertTrue(ticks.size() >= 5, interval + " ticks: fired " + ticks.size() + " times");
+      assertTrue(ticks.get(0) >= 1 && ticks.get(0) <= interval + 1000, interval + " ticks: first at " + ticks.get(0));
+      for (int i = 1; i < ticks.size(); i++) {
+        assertEquals(interval, ticks.get(i) - ticks.get(i - 1), interval + " ticks: period " + i);
+      }
+      // No deadline left behind: the next one is still ahead
+      assertTrue(ticks.get(ticks.size() - 1) + interval > end, interval + " ticks: stopped early");
+      assertEquals(0, scheduler.getMissedDeadlines(task.address));
+    });
+    assertEquals(0, scheduler.getTotalMissedDeadlines());
+  }
+
+  @Test
+  void skipsAndCountsDeadlinesWhileAProbeIsStillRunning() {
+    RecordingTask task = new RecordingTask("slow");
+    task.pending = new CompletableFuture<>();
+    scheduler.schedule(task.address, task, 100 * TICK_MS);
+
+    scheduler.advanceTo(2000);
+    assertEquals(1, task.ticks.size());
+    long first = task.ticks.get(0);
+    long missed = (2000 - first) / 100;
+    assertEquals(missed, scheduler.getMissedDeadlines(task.address));
+    assertEquals(missed, scheduler.getTotalMissedDeadlines());
+
+    // Once the probe finishes, the next deadline on the original grid fires again
+    CompletableFuture<Void> slowProbe = task.pending;
+    task.pending = null;
+    slowProbe.complete(null);
+    scheduler.advanceTo(2400);
+    assertEquals(first + (missed + 1) * 100, task.ticks.get(1));
+    assertEquals(missed, scheduler.getMissedDeadlines(task.address));
+  }
+
+  @Test
+  void cancelledSitesStopFiring() {
+    RecordingTask task = new RecordingTask("cancelled");
+    scheduler.schedule(task.address, task, 300 * TICK_MS);
+    scheduler.advanceTo(700);
+    int fired = task.ticks.size();
+    assertTrue(fired >= 2);
+
+    scheduler.cancel(task.address);
+    scheduler.advanceTo(70_000);
+    assertEquals(fired, task.ticks.size());
+  }
+
+  /**
+   * Records the tick it was dispatched on instead of probing anything.
+   */
+  private final class RecordingTask extends MonitoringTask {
+    final String address;
+    final List<Long> ticks = new ArrayList<>();
+    // Returned by the next dispatch when set, to keep the probe running
+    CompletableFuture<Void> pending;
+
+    RecordingTask(String address) {
+      super(address, null, null);
+      this.address = address;
+    }
+
+    @Override
+    public CompletableFuture<Void> runAsync(Executor executor) {
+      ticks.add(scheduler.getCurrentTick());
+      return pending != null ? pending : CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.uor.eng.probe;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadProbeTest {
+  private static final long PAYLOAD_BYTES = 3 * 1024 * 1024 + 17;
+
+  private final UploadSink sink = new UploadSink(0);
+  private final DnsCache dnsCache = new DnsCache();
+
+  UploadProbeTest() throws IOException {
+  }
+
+  @AfterEach
+  void close() {
+    sink.close();
+    dnsCache.close();
+  }
+
+  @Test
+  void uploadsOverHttp() throws IOException {
+    UploadResult result = probe("http://127.0.0.1:" + sink.getPort() + "/upload");
+    assertEquals(200, result.getStatusCode());
+    assertMeasured(result);
+  }
+
+  @Test
+  void uploadsOverRawTcp() throws IOException {
+    UploadResult result = probe("tcp://127.0.0.1:" + sink.getPort());
+    assertEquals(0, result.getStatusCode());
+    assertMeasured(result);
+  }
+
+  @Test
+  void sinkRejectsMalformedContentLength() throws IOException {
+    try (Socket socket = new Socket("127.0.0.1", sink.getPort())) {
+      socket.setSoTimeout(5000);
+      OutputStream out = socket.getOutputStream();
+      out.write("POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: lots\r\n\r\n"
+          .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      InputStream in = socket.getInputStream();
+      String reply = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+      assertTrue(reply.startsWith("HTTP/1.1 400 Bad Request\r\n"), reply);
+    }
+  }
+
+  private UploadResult probe(String url) throws IOException {
+    try (UploadProbe probe = new UploadProbe(URI.create(url), dnsCache, 5000, PAYLOAD_BYTES, 0)) {
+      return probe.probe();
+    }
+  }
+
+  private static void assertMeasured(UploadResult result) {
+    assertEquals(PAYLOAD_BYTES, result.getBytesSent());
+    assertTrue(result.getWarmupBytes() <= PAYLOAD_BYTES);
+    assertTrue(result.getTransferTime() >= 0);
+    assertTrue(result.getGoodput() >= 0);
+  }
+}
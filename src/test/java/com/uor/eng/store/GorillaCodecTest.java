@@ -0,0 +1,110 @@
+package com.uor.eng.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaCodecTest {
+  private static final MetricColumn[] COLUMNS = MetricColumn.values();
+
+  @Test
+  void roundTripsSteadyCadenceAndNoisyValues() {
+    Random random = new Random(42);
+    int rows = 3600;
+    long[] timestamps = new long[rows];
+    double[][] values = new double[rows][COLUMNS.length];
+    long t = 1_700_000_000_000L;
+    for (int i = 0; i < rows; i++) {
+      t += 1000 + random.nextInt(7) - 3;
+      timestamps[i] = t;
+      for (int c = 0; c < COLUMNS.length; c++) {
+        values[i][c] = c % 3 == 0 ? 42.0 : 20 + random.nextGaussian() * 5;
+      }
+    }
+    assertRoundTrip(timestamps, values);
+  }
+
+  @Test
+  void roundTripsFailedRowsIrregularGapsAndExtremeValues() {
+    long[] timestamps = {
+        0L,
+        1,                                    // tiny delta
+        1001,                                 // delta of delta needs 12 bits
+        1001 + 86_400_000L,                   // day-long gap, 64-bit delta of delta
+        1002 + 86_400_000L,
+        Long.MAX_VALUE / 2,                   // huge jump forward
+        Long.MAX_VALUE / 2 - 5000,            // and backwards
+        Long.MAX_VALUE / 2 - 5000,            // repeated timestamp
+    };
+    double[][] values = new double[timestamps.length][COLUMNS.length];
+    double[] specials = {Double.NaN, 0.0, -0.0, Double.MIN_VALUE, Double.MAX_VALUE,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e-300};
+    for (int i = 0; i < timestamps.length; i++) {
+      for (int c = 0; c < COLUMNS.length; c++) {
+        values[i][c] = specials[(i + c) % specials.length];
+      }
+    }
+    // A whole failed sample is a row of NaN
+    Arrays.fill(values[2], Double.NaN);
+    assertRoundTrip(timestamps, values);
+  }
+
+  @Test
+  void decodesOnlySelectedColumnsAndSealsBlocksIndependently() {
+    GorillaEncoder encoder = new GorillaEncoder();
+    double[] row = new double[COLUMNS.length];
+    for (int i = 0; i < 10; i++) {
+      Arrays.fill(row, i);
+      encoder.append(1000L * i, row);
+    }
+    CompressedBlock first = encoder.finish();
+    assertEquals(0, encoder.size());
+    for (int i = 0; i < 5; i++) {
+      Arrays.fill(row, -i);
+      encoder.append(50_000L + i, row);
+    }
+    CompressedBlock second = encoder.finish();
+
+    GorillaDecoder decoder = new GorillaDecoder(first, MetricColumn.TTFB);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(decoder.next());
+      assertEquals(1000L * i, decoder.getTimestamp());
+      assertEquals(i, decoder.getValue(MetricColumn.TTFB));
+    }
+    assertFalse(decoder.next());
+
+    decoder = new GorillaDecoder(second, MetricColumn.LATENCY);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(decoder.next());
+      assertEquals(50_000L + i, decoder.getTimestamp());
+      assertEquals(-i, decoder.getValue(MetricColumn.LATENCY));
+    }
+    assertFalse(decoder.next());
+  }
+
+  private static void assertRoundTrip(long[] timestamps, double[][] values) {
+    GorillaEncoder encoder = new GorillaEncoder();
+    for (int i = 0; i < timestamps.length; i++) {
+      encoder.append(timestamps[i], values[i]);
+    }
+    CompressedBlock block = encoder.finish();
+    assertEquals(timestamps.length, block.getCount());
+
+    GorillaDecoder decoder = new GorillaDecoder(block, COLUMNS);
+    for (int i = 0; i < timestamps.length; i++) {
+      assertTrue(decoder.next(), "row " + i);
+      assertEquals(timestamps[i], decoder.getTimestamp(), "timestamp of row " + i);
+      for (int c = 0; c < COLUMNS.length; c++) {
+        // Bit for bit, so NaN and -0.0 count too
+        assertEquals(Double.doubleToRawLongBits(values[i][c]),
+            Double.doubleToRawLongBits(decoder.getValue(COLUMNS[c])), COLUMNS[c] + " of row " + i);
+      }
+    }
+    assertFalse(decoder.next());
+  }
+}
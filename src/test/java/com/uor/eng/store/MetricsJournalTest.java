@@ -0,0 +1,132 @@
+package com.uor.eng.store;
+
+import com.uor.eng.NetworkMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsJournalTest {
+  private static final int RECORD = MetricsJournal.RECORD_SIZE;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void replaysRecordsAcrossRolloversAndDropsOldSegments() throws IOException {
+    // Four records per segment, at most three segments kept
+    try (MetricsJournal journal = new MetricsJournal(dir, 4L * RECORD, 3)) {
+      for (int i = 1; i <= 20; i++) {
+        journal.onSample(i % 2 == 0 ? "a" : "b", 1000L * i, sample(i));
+      }
+    }
+
+    List<Long> timestamps = new ArrayList<>();
+    List<String> sites;
+    try (MetricsJournal journal = new MetricsJournal(dir, 4L * RECORD, 3)) {
+      sites = journal.replay((site, timestamp, values) -> {
+        timestamps.add(timestamp);
+        assertEquals(timestamp / 1000.0, values[MetricColumn.LATENCY.ordinal()]);
+        assertEquals(timestamp % 2000 == 0 ? "a" : "b", site);
+      });
+    }
+    // Only the newest three full segments are left, besides the empty one mapped ahead
+    assertEquals(List.of(9000L, 10000L, 11000L, 12000L, 13000L, 14000L, 15000L, 16000L,
+        17000L, 18000L, 19000L, 20000L), timestamps);
+    assertEquals(List.of("b", "a"), sites);
+  }
+
+  @Test
+  void trimsTornTailAndAppendsAfterTheLastIntactRecord() throws IOException {
+    try (MetricsJournal journal = new MetricsJournal(dir, 1024L * RECORD, 4)) {
+      for (int i = 1; i <= 10; i++) {
+        journal.onSample("site", 1000L * i, sample(i));
+      }
+    }
+    // Tear the last record: its header made it to disk, part of its values did not. The empty
+    // segment mapped ahead stays where it is
+    List<Path> segments = segments();
+    assertEquals(2, segments.size());
+    try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{0x5a, 0x5a, 0x5a}), 9L * RECORD + 40);
+    }
+
+    try (MetricsJournal journal = new MetricsJournal(dir, 1024L * RECORD, 4)) {
+      assertEquals(List.of(1000L, 2000L, 3000L, 4000L, 5000L, 6000L, 7000L, 8000L, 9000L), replay(journal));
+      journal.onSample("site", 11_000L, sample(11));
+      journal.onSample("site", 12_000L, sample(12));
+    }
+
+    // The first new record took the torn one's place
+    try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ)) {
+      ByteBuffer timestamp = ByteBuffer.allocate(Long.BYTES);
+      channel.read(timestamp, 9L * RECORD);
+      assertEquals(11_000L, timestamp.flip().getLong());
+    }
+    try (MetricsJournal journal = new MetricsJournal(dir, 1024L * RECORD, 4)) {
+      assertEquals(List.of(1000L, 2000L, 3000L, 4000L, 5000L, 6000L, 7000L, 8000L, 9000L, 11_000L, 12_000L),
+          replay(journal));
+    }
+  }
+
+  @Test
+  void replayForgetsRemovedSites() throws IOException {
+    try (MetricsJournal journal = new MetricsJournal(dir, 64L * RECORD, 2)) {
+      journal.onSample("kept", 1000, sample(1));
+      journal.onSample("removed", 1000, sample(1));
+      journal.onSample("failed", 2000, NetworkMetrics.error("timeout"));
+      journal.markRemoved("removed");
+    }
+
+    List<String> removed = new ArrayList<>();
+    List<double[]> failedRows = new ArrayList<>();
+    try (MetricsJournal journal = new MetricsJournal(dir, 64L * RECORD, 2)) {
+      List<String> sites = journal.replay(new RowListener() {
+        @Override
+        public void onRow(String siteAddress, long timestampMillis, double[] values) {
+          if (siteAddress.equals("failed")) {
+            failedRows.add(values.clone());
+          }
+        }
+
+        @Override
+        public void onRemoved(String siteAddress) {
+          removed.add(siteAddress);
+        }
+      });
+      assertEquals(List.of("kept", "failed"), sites);
+    }
+    assertEquals(List.of("removed"), removed);
+    assertEquals(1, failedRows.size());
+    for (double value : failedRows.get(0)) {
+      assertTrue(Double.isNaN(value));
+    }
+  }
+
+  private static NetworkMetrics sample(int i) {
+    return NetworkMetrics.builder().successful(true).latency(i).ttfb(i * 2).build();
+  }
+
+  private static List<Long> replay(MetricsJournal journal) throws IOException {
+    List<Long> timestamps = new ArrayList<>();
+    journal.replay((site, timestamp, values) -> timestamps.add(timestamp));
+    return timestamps;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(p -> p.getFileName().toString().endsWith(".dat")).sorted().toList();
+    }
+  }
+}
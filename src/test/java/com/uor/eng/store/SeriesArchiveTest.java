@@ -0,0 +1,93 @@
+package com.uor.eng.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SeriesArchiveTest {
+  private static final int BLOCK_ROWS = 10;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void appendsAfterATornTailAndReloadsEveryIntactBlock() throws IOException {
+    SiteCompressedStore store = new SiteCompressedStore("site", BLOCK_ROWS, 100, new SeriesArchive(dir, "site"));
+    appendRows(store, 0, 30);
+    Path file = store.getArchive().getFile();
+    assertEquals(3, new SeriesArchive(dir, "site").index().size());
+
+    // Crash halfway through writing the third block
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - 7);
+    }
+
+    // The reloaded store has the first two blocks and takes the lost rows again when replayed
+    store = new SiteCompressedStore("site", BLOCK_ROWS, 100, new SeriesArchive(dir, "site"));
+    assertEquals(seconds(0, 20), timestamps(store));
+    appendRows(store, 20, 40);
+
+    store = new SiteCompressedStore("site", BLOCK_ROWS, 100, new SeriesArchive(dir, "site"));
+    assertEquals(seconds(0, 40), timestamps(store));
+    List<SeriesArchive.Entry> entries = store.getArchive().index();
+    assertEquals(4, entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals(i * BLOCK_ROWS * 1000L, entries.get(i).getFirstTimestamp());
+      assertEquals(BLOCK_ROWS, store.getArchive().read(entries.get(i)).getCount());
+    }
+  }
+
+  @Test
+  void stopsAtAnEntryThatFailsItsChecksum() throws IOException {
+    SiteCompressedStore store = new SiteCompressedStore("site", BLOCK_ROWS, 100, new SeriesArchive(dir, "site"));
+    appendRows(store, 0, 30);
+    List<SeriesArchive.Entry> entries = store.getArchive().index();
+
+    // Flip a byte in the second block's body; it and everything after it are dropped
+    Path file = store.getArchive().getFile();
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[(int) entries.get(1).getOffset() + 5] ^= 0x40;
+    Files.write(file, bytes);
+
+    SeriesArchive archive = new SeriesArchive(dir, "site");
+    assertEquals(1, archive.index().size());
+    assertEquals(entries.get(0).getOffset() + entries.get(0).getLength(), Files.size(file));
+  }
+
+  private static void appendRows(SiteCompressedStore store, int from, int to) {
+    double[] values = new double[MetricColumn.values().length];
+    for (int i = from; i < to; i++) {
+      values[MetricColumn.LATENCY.ordinal()] = i;
+      store.append(i * 1000L, values);
+    }
+  }
+
+  private static List<Long> seconds(int from, int to) {
+    List<Long> timestamps = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      timestamps.add(i * 1000L);
+    }
+    return timestamps;
+  }
+
+  /**
+   * Timestamps of the rows the store holds, checking each latency matches its row.
+   */
+  private static List<Long> timestamps(SiteCompressedStore store) {
+    List<Long> timestamps = new ArrayList<>();
+    store.scan(Long.MIN_VALUE, Long.MAX_VALUE, MetricColumn.LATENCY, (timestamp, value) -> {
+      assertEquals(timestamp / 1000.0, value);
+      timestamps.add(timestamp);
+    });
+    return timestamps;
+  }
+}